@@ -0,0 +1,116 @@
+package ca.bc.gov.gbasites.export;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.revolsys.record.Record;
+import com.revolsys.record.code.CodeTable;
+import com.revolsys.record.schema.RecordDefinition;
+
+/**
+ * Decode the code or id in a field of a source record to the value from the code table and set
+ * it on a field of the target record.
+ *
+ * The values are cached the first time each code is used. Small integer ids are cached in an
+ * array indexed by the id, other codes in a map. After the first lookup, decoding doesn't use the
+ * generic {@link CodeTable} lookup or create an Identifier. The field indexes are resolved once.
+ * Only the codes that are in the code table are cached, so the cache can't be larger than the
+ * code table.
+ *
+ * If the field doesn't have a code table the value is copied without decoding, the same as
+ * {@link Record#setCodeValue(String, Record, String)}.
+ *
+ * A decoder is not thread safe. Each process must create its own decoders.
+ */
+public class CodeValueDecoder {
+
+  private static final int MAX_ARRAY_ID = 1 << 16;
+
+  private final CodeTable codeTable;
+
+  private final int sourceFieldIndex;
+
+  private final int targetFieldIndex;
+
+  private Object[] valuesById = new Object[0];
+
+  private final Map<Object, Object> valuesByCode = new HashMap<>();
+
+  public CodeValueDecoder(final RecordDefinition sourceRecordDefinition,
+    final String sourceFieldName, final RecordDefinition targetRecordDefinition,
+    final String targetFieldName) {
+    this.codeTable = sourceRecordDefinition.getCodeTableByFieldName(sourceFieldName);
+    this.sourceFieldIndex = sourceRecordDefinition.getFieldIndex(sourceFieldName);
+    this.targetFieldIndex = targetRecordDefinition.getFieldIndex(targetFieldName);
+  }
+
+  /**
+   * Set the value for the code in the source record's field on the target record.
+   *
+   * @param source The source record.
+   * @param target The target record.
+   */
+  public void decode(final Record source, final Record target) {
+    final Object code = source.getValue(this.sourceFieldIndex);
+    final Object value = getValue(code);
+    target.setValue(this.targetFieldIndex, value);
+  }
+
+  private int getArrayId(final Object code) {
+    if (code instanceof Integer || code instanceof Long || code instanceof Short) {
+      final long id = ((Number)code).longValue();
+      if (id >= 0 && id < MAX_ARRAY_ID) {
+        return (int)id;
+      }
+    }
+    return -1;
+  }
+
+  public Object getValue(final Object code) {
+    if (code == null) {
+      return null;
+    } else if (this.codeTable == null) {
+      return code;
+    } else {
+      final int id = getArrayId(code);
+      Object value;
+      if (id == -1) {
+        value = this.valuesByCode.get(code);
+        if (value == null) {
+          value = this.codeTable.getValue(code);
+          if (value != null) {
+            this.valuesByCode.put(code, value);
+          }
+        }
+      } else {
+        if (id < this.valuesById.length) {
+          value = this.valuesById[id];
+        } else {
+          value = null;
+        }
+        if (value == null) {
+          value = this.codeTable.getValue(code);
+          if (value != null) {
+            if (id >= this.valuesById.length) {
+              final int length = Math.min(MAX_ARRAY_ID,
+                Math.max(id + 1, this.valuesById.length * 2));
+              this.valuesById = Arrays.copyOf(this.valuesById, length);
+            }
+            this.valuesById[id] = value;
+          }
+        }
+      }
+      return value;
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (this.codeTable == null) {
+      return "No code table";
+    } else {
+      return this.codeTable.toString();
+    }
+  }
+}
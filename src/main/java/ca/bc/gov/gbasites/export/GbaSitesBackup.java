@@ -1,28 +1,78 @@
 package ca.bc.gov.gbasites.export;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 
+import org.jeometry.common.exception.Exceptions;
 import org.jeometry.common.io.PathName;
+import org.jeometry.common.logging.Logs;
 
 import ca.bc.gov.gba.controller.GbaConfig;
 import ca.bc.gov.gba.core.model.CountNames;
 import ca.bc.gov.gba.itn.model.GbaItnTables;
 import ca.bc.gov.gba.ui.BatchUpdateDialog;
 import ca.bc.gov.gbasites.controller.GbaSiteDatabase;
+import ca.bc.gov.gbasites.load.common.FileDigest;
 import ca.bc.gov.gbasites.model.type.SiteTables;
 import ca.bc.gov.gbasites.model.type.code.CommunityPoly;
 
+import com.revolsys.io.IoFactory;
 import com.revolsys.io.file.Paths;
 import com.revolsys.parallel.process.ProcessNetwork;
 import com.revolsys.record.Record;
 import com.revolsys.record.io.RecordReader;
 import com.revolsys.record.io.RecordWriter;
+import com.revolsys.record.io.RecordWriterFactory;
+import com.revolsys.record.query.Condition;
+import com.revolsys.record.query.Q;
 import com.revolsys.record.query.Query;
 import com.revolsys.record.schema.RecordDefinition;
 import com.revolsys.record.schema.RecordStore;
 import com.revolsys.transaction.Transaction;
 
+/**
+ * Backup the GBA sites tables to gzip compressed TSV files.
+ *
+ * SITE_POINT is split into {@link #siteShardCount} id range shards that are written in parallel
+ * with the other tables. The SHA-256 hash of each file is written to {@link #MANIFEST} in the
+ * sha256sum format.
+ *
+ * The backup is written to a temporary directory (GBA.tmp) and only replaces the previous backup
+ * after all the files have been written. If {@link #verify} is true the new backup is read back
+ * using {@link GbaSitesBackupReader} first, checking the hashes and the record count of each
+ * table. The previous backup is renamed to GBA.old while the new
+ * backup is moved into place. If the move fails the previous backup is moved back. If the process
+ * stopped between the two renames, the next run (and {@link GbaSitesBackupReader}) uses GBA.old.
+ *
+ * Use {@link GbaSitesBackupReader} to read the backup. It also reads the previous layout of a
+ * plain TSV file for each table.
+ */
 public class GbaSitesBackup implements GbaItnTables {
+  public static final String MANIFEST = "MANIFEST.sha256";
+
+  private static final RecordWriterFactory TSV_FACTORY = IoFactory
+    .factoryByFileExtension(RecordWriterFactory.class, "tsv");
+
+  static Path getOldDirectory(final Path backupDirectory) {
+    return backupDirectory.resolveSibling(backupDirectory.getFileName() + ".old");
+  }
+
+  static String getShardBaseName(final String tableName, final int shard) {
+    return String.format("%s-%02d", tableName, shard + 1);
+  }
+
   public static void main(final String[] args) {
     final GbaSitesBackup process = new GbaSitesBackup();
     BatchUpdateDialog.start(process::batchUpdate, "GBA Sites Backup", CountNames.READ,
@@ -32,32 +82,103 @@ public class GbaSitesBackup implements GbaItnTables {
   private final Path backupDirectory = Paths.getPath(GbaConfig.getDataDirectory(),
     "exports/BACKUP/gba_sites_export/GBA/");
 
+  private final Path tempDirectory = this.backupDirectory
+    .resolveSibling(this.backupDirectory.getFileName() + ".tmp");
+
   private BatchUpdateDialog dialog;
 
+  private volatile Throwable error;
+
+  private final Map<String, String> hashByFileName = new TreeMap<>();
+
   private final RecordStore gbaRecordStore = GbaSiteDatabase.getRecordStore();
 
-  private void backupRecords(final PathName... typePaths) {
-    final ProcessNetwork processNetwork = new ProcessNetwork();
-    for (final PathName typePath : typePaths) {
-      processNetwork.addProcess(() -> backupRecords(typePath));
-    }
-    processNetwork.startAndWait();
-  }
+  private final Map<String, Integer> recordCountByTableName = new TreeMap<>();
+
+  private int siteShardCount = 8;
 
-  private void backupRecords(final PathName typePath) {
+  private boolean verify = true;
+
+  private void backupRecords(final PathName typePath, final String baseName,
+    final Condition where) {
     final RecordDefinition recordDefinition = this.gbaRecordStore.getRecordDefinition(typePath);
     if (recordDefinition != null) {
       final Query query = new Query(recordDefinition) //
         .addOrderById();
+      if (where != null) {
+        query.setWhereCondition(where);
+      }
 
-      final Path tsvPath = Paths.getPath(this.backupDirectory, typePath.getName() + ".tsv");
+      final String fileName = baseName + ".tsv.gz";
+      final Path tsvPath = this.tempDirectory.resolve(fileName);
+      int recordCount = 0;
+      final MessageDigest digest = FileDigest.newSha256();
       try (
+        OutputStream fileOut = Files.newOutputStream(tsvPath);
+        DigestOutputStream digestOut = new DigestOutputStream(new BufferedOutputStream(fileOut),
+          digest);
+        GZIPOutputStream gzipOut = new GZIPOutputStream(digestOut, 65536);
         RecordReader gbaReader = this.gbaRecordStore.getRecords(query);
-        RecordWriter tsvWriter = RecordWriter.newRecordWriter(recordDefinition, tsvPath);) {
+        RecordWriter tsvWriter = TSV_FACTORY.newRecordWriter(baseName, recordDefinition, gzipOut,
+          StandardCharsets.UTF_8);) {
         for (final Record record : this.dialog.cancellable(gbaReader)) {
+          if (this.error != null) {
+            return;
+          }
           this.dialog.addLabelCount(CountNames.COUNTS, typePath, CountNames.READ);
           this.dialog.addLabelCount(CountNames.COUNTS, typePath, CountNames.WRITE);
           tsvWriter.write(record);
+          recordCount++;
+        }
+      } catch (final IOException e) {
+        throw Exceptions.wrap("Unable to write: " + tsvPath, e);
+      }
+      synchronized (this.hashByFileName) {
+        this.hashByFileName.put(fileName, FileDigest.toHex(digest));
+        this.recordCountByTableName.merge(typePath.getName(), recordCount, Integer::sum);
+      }
+    }
+  }
+
+  private void backupRecords(final ProcessNetwork processNetwork, final PathName typePath,
+    final String baseName, final Condition where) {
+    processNetwork.addProcess(baseName, () -> {
+      try {
+        backupRecords(typePath, baseName, where);
+      } catch (final Throwable e) {
+        setError(e);
+      }
+    });
+  }
+
+  private void backupRecords(final ProcessNetwork processNetwork, final PathName... typePaths) {
+    for (final PathName typePath : typePaths) {
+      backupRecords(processNetwork, typePath, typePath.getName(), null);
+    }
+  }
+
+  /**
+   * Add a process for each of the id range shards of the table.
+   */
+  private void backupRecordShards(final ProcessNetwork processNetwork, final PathName typePath) {
+    final RecordDefinition recordDefinition = this.gbaRecordStore.getRecordDefinition(typePath);
+    if (recordDefinition != null) {
+      final String idFieldName = recordDefinition.getIdFieldName();
+      final Integer minId = getFirstId(recordDefinition, true);
+      final Integer maxId = getFirstId(recordDefinition, false);
+      if (minId == null || maxId == null || this.siteShardCount < 2) {
+        backupRecords(processNetwork, typePath);
+      } else {
+        final long shardSize = ((long)maxId - minId) / this.siteShardCount + 1;
+        for (int shard = 0; shard < this.siteShardCount; shard++) {
+          final long fromId = minId + shard * shardSize;
+          final long toId = fromId + shardSize;
+          final Condition where = Q.and( //
+            Q.greaterThanEqual(idFieldName, fromId), //
+            Q.lessThan(idFieldName, toId) //
+          );
+          final String baseName = getShardBaseName(typePath.getName(), shard);
+          backupRecords(processNetwork, typePath, baseName, where);
         }
       }
     }
@@ -65,9 +186,11 @@ public class GbaSitesBackup implements GbaItnTables {
 
   private boolean batchUpdate(final BatchUpdateDialog dialog, final Transaction transaction) {
     this.dialog = dialog;
-    Paths.deleteDirectories(this.backupDirectory);
-    Paths.createDirectories(this.backupDirectory);
-    backupRecords( //
+    recoverBackupDirectory();
+    Paths.deleteDirectories(this.tempDirectory);
+    Paths.createDirectories(this.tempDirectory);
+    final ProcessNetwork processNetwork = new ProcessNetwork();
+    backupRecords(processNetwork, //
       INTEGRATION_SESSION_POLY, //
 
       DATA_CAPTURE_METHOD_CODE, //
@@ -89,9 +212,138 @@ public class GbaSitesBackup implements GbaItnTables {
 
       // SITE_POINT
       SiteTables.SITE_LOCATION_CODE, //
-      SiteTables.SITE_TYPE_CODE, //
-      SiteTables.SITE_POINT //
+      SiteTables.SITE_TYPE_CODE //
     );
+    backupRecordShards(processNetwork, SiteTables.SITE_POINT);
+    processNetwork.startAndWait();
+
+    if (this.error != null) {
+      Paths.deleteDirectories(this.tempDirectory);
+      throw Exceptions.wrap("Error backing up to: " + this.backupDirectory, this.error);
+    } else if (dialog.isCancelled()) {
+      Paths.deleteDirectories(this.tempDirectory);
+    } else {
+      writeManifest();
+      if (this.verify) {
+        verifyBackup();
+      }
+      replaceBackupDirectory();
+    }
     return true;
   }
+
+  private Integer getFirstId(final RecordDefinition recordDefinition, final boolean ascending) {
+    final String idFieldName = recordDefinition.getIdFieldName();
+    final Query query = new Query(recordDefinition) //
+      .select(idFieldName);
+    query.addOrderBy(idFieldName, ascending);
+    query.setLimit(1);
+    try (
+      RecordReader reader = this.gbaRecordStore.getRecords(query)) {
+      for (final Record record : reader) {
+        return record.getInteger(idFieldName);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * If the last run stopped after the previous backup was renamed to GBA.old but before the new
+   * backup was moved into place, move the previous backup back.
+   */
+  private void recoverBackupDirectory() {
+    final Path oldDirectory = getOldDirectory(this.backupDirectory);
+    if (!Files.exists(this.backupDirectory) && Files.exists(oldDirectory)) {
+      try {
+        Files.move(oldDirectory, this.backupDirectory, StandardCopyOption.ATOMIC_MOVE);
+        Logs.info(this, "Restored previous backup from: " + oldDirectory);
+      } catch (final IOException e) {
+        throw Exceptions.wrap("Unable to restore previous backup: " + oldDirectory, e);
+      }
+    }
+  }
+
+  /**
+   * Replace the previous backup with the new backup. The previous backup is only deleted after
+   * the new backup has been moved into place. If the new backup can't be moved into place the
+   * previous backup is moved back.
+   */
+  private void replaceBackupDirectory() {
+    final Path oldDirectory = getOldDirectory(this.backupDirectory);
+    Paths.deleteDirectories(oldDirectory);
+    boolean oldMoved = false;
+    try {
+      if (Files.exists(this.backupDirectory)) {
+        Files.move(this.backupDirectory, oldDirectory, StandardCopyOption.ATOMIC_MOVE);
+        oldMoved = true;
+      }
+      Files.move(this.tempDirectory, this.backupDirectory, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      if (oldMoved && !Files.exists(this.backupDirectory)) {
+        try {
+          Files.move(oldDirectory, this.backupDirectory, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e2) {
+          e.addSuppressed(e2);
+        }
+      }
+      throw Exceptions.wrap("Unable to replace backup: " + this.backupDirectory, e);
+    }
+    Paths.deleteDirectories(oldDirectory);
+  }
+
+  private void setError(final Throwable e) {
+    if (this.error == null) {
+      this.error = e;
+      Logs.error(this, "Error writing backup", e);
+    }
+  }
+
+  public void setSiteShardCount(final int siteShardCount) {
+    this.siteShardCount = siteShardCount;
+  }
+
+  public void setVerify(final boolean verify) {
+    this.verify = verify;
+  }
+
+  /**
+   * Read the new backup to check the hashes in the manifest and that each table has the number of
+   * records written. The new backup is deleted if it isn't valid so it can't replace the previous
+   * backup.
+   */
+  private void verifyBackup() {
+    final GbaSitesBackupReader reader = new GbaSitesBackupReader(this.tempDirectory);
+    try {
+      for (final Entry<String, Integer> entry : this.recordCountByTableName.entrySet()) {
+        final String tableName = entry.getKey();
+        final int expectedCount = entry.getValue();
+        final int recordCount = reader.forEachRecord(tableName, record -> {
+        });
+        if (recordCount != expectedCount) {
+          throw new IllegalStateException("Backup of " + tableName + " has " + recordCount
+            + " records, expected " + expectedCount + ": " + this.tempDirectory);
+        }
+      }
+    } catch (final RuntimeException e) {
+      Paths.deleteDirectories(this.tempDirectory);
+      throw e;
+    }
+  }
+
+  private void writeManifest() {
+    final Path manifestPath = this.tempDirectory.resolve(MANIFEST);
+    try (
+      BufferedWriter writer = Files.newBufferedWriter(manifestPath, StandardCharsets.UTF_8)) {
+      for (final Entry<String, String> entry : this.hashByFileName.entrySet()) {
+        final String fileName = entry.getKey();
+        final String hash = entry.getValue();
+        writer.write(hash);
+        writer.write("  ");
+        writer.write(fileName);
+        writer.write('\n');
+      }
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to write: " + manifestPath, e);
+    }
+  }
 }
@@ -0,0 +1,180 @@
+package ca.bc.gov.gbasites.export;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.jeometry.common.exception.Exceptions;
+
+import ca.bc.gov.gbasites.load.common.FileDigest;
+
+import com.revolsys.io.IoFactory;
+import com.revolsys.record.Record;
+import com.revolsys.record.io.RecordReader;
+import com.revolsys.record.io.RecordReaderFactory;
+import com.revolsys.spring.resource.InputStreamResource;
+
+/**
+ * Read the tables from a backup written by {@link GbaSitesBackup} to restore them. Both backup
+ * layouts can be read.
+ *
+ * <ul>
+ * <li>The current layout has a gzip compressed TSV file for each table (TABLE.tsv.gz). SITE_POINT
+ * is split into id range shards (SITE_POINT-01.tsv.gz, SITE_POINT-02.tsv.gz ...) that are read in
+ * order. The hash of each file is checked against MANIFEST.sha256 before it is read.</li>
+ * <li>The previous layout has a TSV file for each table (TABLE.tsv) and no manifest.</li>
+ * </ul>
+ *
+ * The gzip files are decompressed while they are read. If the backup directory doesn't exist
+ * because a backup stopped while it was replacing the previous backup, the previous backup
+ * (GBA.old) is read. {@link GbaSitesBackup} uses this class to verify a new backup before it
+ * replaces the previous backup.
+ *
+ * To restore a backup by hand, run {@code sha256sum -c MANIFEST.sha256} in the backup directory
+ * and {@code gunzip} the files. Each SITE_POINT shard starts with the header line, so skip the
+ * first line of all but the first shard when combining them.
+ */
+public class GbaSitesBackupReader {
+
+  private static final RecordReaderFactory TSV_FACTORY = IoFactory
+    .factoryByFileExtension(RecordReaderFactory.class, "tsv");
+
+  private final Path directory;
+
+  private final Map<String, String> hashByFileName = new HashMap<>();
+
+  public GbaSitesBackupReader(final Path backupDirectory) {
+    final Path oldDirectory = GbaSitesBackup.getOldDirectory(backupDirectory);
+    if (!Files.exists(backupDirectory) && Files.exists(oldDirectory)) {
+      this.directory = oldDirectory;
+    } else {
+      this.directory = backupDirectory;
+    }
+    final Path manifestPath = this.directory.resolve(GbaSitesBackup.MANIFEST);
+    if (Files.exists(manifestPath)) {
+      try {
+        for (final String line : Files.readAllLines(manifestPath, StandardCharsets.UTF_8)) {
+          final int index = line.indexOf("  ");
+          if (index != -1) {
+            final String hash = line.substring(0, index);
+            final String fileName = line.substring(index + 2);
+            this.hashByFileName.put(fileName, hash);
+          }
+        }
+      } catch (final IOException e) {
+        throw Exceptions.wrap("Unable to read: " + manifestPath, e);
+      }
+    }
+  }
+
+  private void checkHash(final Path file) {
+    if (!this.hashByFileName.isEmpty()) {
+      final String fileName = file.getFileName().toString();
+      final String hash = this.hashByFileName.get(fileName);
+      if (hash == null) {
+        throw new IllegalStateException("File not in " + GbaSitesBackup.MANIFEST + ": " + file);
+      } else if (!hash.equals(FileDigest.sha256(file))) {
+        throw new IllegalStateException("File doesn't match the hash in "
+          + GbaSitesBackup.MANIFEST + ": " + file);
+      }
+    }
+  }
+
+  /**
+   * Read the records for the table from all of its files.
+   *
+   * @param tableName The table name (e.g. SITE_POINT).
+   * @param action The action to call for each record.
+   * @return The number of records read.
+   */
+  public int forEachRecord(final String tableName, final Consumer<? super Record> action) {
+    int recordCount = 0;
+    for (final Path file : getFiles(tableName)) {
+      checkHash(file);
+      recordCount += forEachRecord(file, action);
+    }
+    return recordCount;
+  }
+
+  private int forEachRecord(final Path file, final Consumer<? super Record> action) {
+    String fileName = file.getFileName().toString();
+    if (fileName.endsWith(".gz")) {
+      fileName = fileName.substring(0, fileName.length() - 3);
+    }
+    int recordCount = 0;
+    try (
+      InputStream in = newInputStream(file);
+      RecordReader reader = TSV_FACTORY.newRecordReader(new InputStreamResource(fileName, in))) {
+      for (final Record record : reader) {
+        action.accept(record);
+        recordCount++;
+      }
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to read: " + file, e);
+    }
+    return recordCount;
+  }
+
+  public Path getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * Get the files for the table in the order they must be read.
+   *
+   * @param tableName The table name (e.g. SITE_POINT).
+   * @return The files, empty if the table isn't in the backup.
+   */
+  public List<Path> getFiles(final String tableName) {
+    final List<Path> files = new ArrayList<>();
+    final Path gzipFile = this.directory.resolve(tableName + ".tsv.gz");
+    final Path tsvFile = this.directory.resolve(tableName + ".tsv");
+    if (Files.exists(gzipFile)) {
+      files.add(gzipFile);
+    } else if (Files.exists(tsvFile)) {
+      files.add(tsvFile);
+    } else {
+      for (int shard = 0;; shard++) {
+        final String shardName = GbaSitesBackup.getShardBaseName(tableName, shard);
+        final Path shardFile = this.directory.resolve(shardName + ".tsv.gz");
+        if (Files.exists(shardFile)) {
+          files.add(shardFile);
+        } else {
+          return files;
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Open the file, decompressing it while it is read if it is a gzip file.
+   */
+  private InputStream newInputStream(final Path file) throws IOException {
+    final InputStream in = new BufferedInputStream(Files.newInputStream(file), 65536);
+    if (file.getFileName().toString().endsWith(".gz")) {
+      try {
+        return new GZIPInputStream(in, 65536);
+      } catch (final IOException e) {
+        in.close();
+        throw e;
+      }
+    } else {
+      return in;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.directory.toString();
+  }
+}
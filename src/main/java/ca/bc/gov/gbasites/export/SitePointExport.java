@@ -4,10 +4,13 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jeometry.common.data.identifier.Identifier;
 import org.jeometry.common.data.type.DataTypes;
+import org.jeometry.common.exception.Exceptions;
 import org.jeometry.common.io.PathName;
 
 import ca.bc.gov.gba.controller.GbaController;
@@ -21,6 +24,7 @@ import ca.bc.gov.gbasites.model.type.SiteTables;
 
 import com.revolsys.geometry.model.GeometryDataTypes;
 import com.revolsys.gis.esri.gdb.file.FileGdbWriterProcess;
+import com.revolsys.io.file.Paths;
 import com.revolsys.parallel.channel.Channel;
 import com.revolsys.parallel.process.AbstractOutProcess;
 import com.revolsys.parallel.process.ConsumerOutProcess;
@@ -29,6 +33,8 @@ import com.revolsys.record.Record;
 import com.revolsys.record.code.CodeTable;
 import com.revolsys.record.code.SingleValueCodeTable;
 import com.revolsys.record.io.RecordReader;
+import com.revolsys.record.io.RecordWriter;
+import com.revolsys.record.query.Q;
 import com.revolsys.record.query.Query;
 import com.revolsys.record.schema.FieldDefinition;
 import com.revolsys.record.schema.RecordDefinition;
@@ -38,8 +44,28 @@ import com.revolsys.transaction.Transaction;
 import com.revolsys.util.Cancellable;
 import com.revolsys.util.count.LabelCounters;
 
+/**
+ * Export the SITE_POINT records to a FileGDB with the codes and ids replaced by their values.
+ *
+ * The SITE_POINT records are read in SITE_ID ranges of {@link #PARTITION_SIZE} ids by
+ * {@link #readThreadCount} processes, each with its own database connection. The processes also
+ * convert the records to the export records. The partitions are written in SITE_ID order and
+ * only a limited number of partitions are read ahead of the partition being written.
+ *
+ * In incremental mode, if there is a previous export, only the changes since that export are
+ * written to exports/site_point_delta/&lt;lastSessionId&gt;_&lt;sessionId&gt;. SITE_POINT.tsv has
+ * the records with a MODIFY_INTEGRATION_SESSION_ID after the last export and
+ * SITE_POINT_DELETED.tsv the SITE_IDs of the records that were deleted. A full export writes the
+ * compacted snapshot site_point.gdb. Both save the {@link SitePointExportState} for the next
+ * incremental export.
+ */
 public class SitePointExport implements SitePoint, Cancellable {
 
+  private static final int PARTITION_SIZE = 10000;
+
+  private static final PathName SITE_POINT_DELETED = PathName
+    .newPathName("/GBA/SITE_POINT_DELETED");
+
   private static final String SITE_TYPE = "SITE_TYPE";
 
   private static final String SITE_LOCATION = "SITE_LOCATION";
@@ -68,23 +94,147 @@ public class SitePointExport implements SitePoint, Cancellable {
 
   private static final String DATA_CAPTURE_METHOD = "DATA_CAPTURE_METHOD";
 
+  /**
+   * Pairs of SITE_POINT code/id field name and the export field name for the value.
+   */
+  private static final String[] DECODE_FIELD_NAMES = {
+    LOCALITY_ID, LOCALITY, //
+    REGIONAL_DISTRICT_ID, REGIONAL_DISTRICT, //
+    COMMUNITY_ID, COMMUNITY, //
+    STREET_NAME_ALIAS_1_ID, STREET_NAME_ALIAS_1, //
+    FEATURE_STATUS_CODE, FEATURE_STATUS, //
+    CREATE_PARTNER_ORG_ID, CREATE_PARTNER_ORG, //
+    MODIFY_PARTNER_ORG_ID, MODIFY_PARTNER_ORG, //
+    CUSTODIAN_PARTNER_ORG_ID, CUSTODIAN_PARTNER_ORG, //
+    CREATE_INTEGRATION_SESSION_ID, CREATE_INTEGRATION_DATE, //
+    MODIFY_INTEGRATION_SESSION_ID, MODIFY_INTEGRATION_DATE, //
+    CUSTODIAN_SESSION_ID, CUSTODIAN_INTEGRATION_DATE, //
+    DATA_CAPTURE_METHOD_CODE, DATA_CAPTURE_METHOD, //
+    SITE_TYPE_CODE, SITE_TYPE, //
+    SITE_LOCATION_CODE, SITE_LOCATION //
+  };
+
   public static void main(final String[] args) {
     final SitePointExport process = new SitePointExport();
+    process.setIncremental(Arrays.asList(args).contains("incremental"));
     BatchUpdateDialog.start(process::batchUpdate, "Site Point Export", CountNames.READ,
       CountNames.WRITE);
   }
 
   private BatchUpdateDialog dialog;
 
+  private final SitePointExportState exportState = new SitePointExportState(
+    GbaController.getDataPath("exports/site_point_export.properties"),
+    GbaController.getDataPath("exports/site_point_ids.bin"));
+
+  private boolean incremental;
+
   private final RecordStore recordStore = GbaItnDatabase.getRecordStore();
 
   private RecordDefinition sitePointExportRecordDefinition;
 
+  private int readThreadCount = 4;
+
+  private final Map<Integer, List<Record>> recordsByPartition = new HashMap<>();
+
+  private int partitionCount;
+
+  private int nextReadPartition;
+
+  private int nextWritePartition;
+
+  private Throwable error;
+
+  private int[] siteIds = new int[0];
+
+  private int siteIdCount;
+
   public SitePointExport() {
   }
 
+  private void addSiteId(final int siteId) {
+    if (this.siteIdCount == this.siteIds.length) {
+      this.siteIds = Arrays.copyOf(this.siteIds, Math.max(1024, this.siteIdCount * 2));
+    }
+    this.siteIds[this.siteIdCount++] = siteId;
+  }
+
   protected boolean batchUpdate(final BatchUpdateDialog dialog, final Transaction transaction) {
     this.dialog = dialog;
+    reset();
+    final Integer maxSessionId = getFirstValue(MODIFY_INTEGRATION_SESSION_ID, false);
+    final int modifyIntegrationSessionId = maxSessionId == null ? 0 : maxSessionId;
+    if (this.incremental && this.exportState.isExported()) {
+      exportDelta(modifyIntegrationSessionId);
+    } else {
+      exportSnapshot();
+    }
+    if (this.error == null && !isCancelled()) {
+      this.exportState.save(modifyIntegrationSessionId, this.siteIds, this.siteIdCount);
+    }
+    return true;
+  }
+
+  /**
+   * Write the SITE_POINT records modified since the last export and the SITE_IDs of the records
+   * deleted since the last export to TSV files in a delta directory.
+   *
+   * @param modifyIntegrationSessionId The maximum MODIFY_INTEGRATION_SESSION_ID to export.
+   */
+  private void exportDelta(final int modifyIntegrationSessionId) {
+    final int lastModifyIntegrationSessionId = this.exportState.getModifyIntegrationSessionId();
+    final Path deltaDirectory = GbaController.getDataPath("exports/site_point_delta/"
+      + lastModifyIntegrationSessionId + "_" + modifyIntegrationSessionId);
+    Paths.deleteDirectories(deltaDirectory);
+    Paths.createDirectories(deltaDirectory);
+
+    this.sitePointExportRecordDefinition = newSitePointExportRecordDefinition();
+    final Query query = newQuery(SiteTables.SITE_POINT);
+    query.setWhereCondition(Q.and( //
+      Q.greaterThan(MODIFY_INTEGRATION_SESSION_ID, lastModifyIntegrationSessionId), //
+      Q.lessThanEqual(MODIFY_INTEGRATION_SESSION_ID, modifyIntegrationSessionId) //
+    ));
+    final List<CodeValueDecoder> decoders = newCodeValueDecoders();
+    final Path modifiedPath = deltaDirectory.resolve("SITE_POINT.tsv");
+    try (
+      RecordReader sitePointReader = this.recordStore.getRecords(query);
+      RecordWriter tsvWriter = RecordWriter.newRecordWriter(this.sitePointExportRecordDefinition,
+        modifiedPath)) {
+      for (final Record record : cancellable(sitePointReader)) {
+        final Record exportRecord = newExportRecord(record, decoders);
+        tsvWriter.write(exportRecord);
+        this.dialog.addLabelCount(CountNames.COUNTS, SiteTables.SITE_POINT, CountNames.WRITE);
+      }
+    }
+
+    readSiteIds();
+    final RecordDefinitionImpl deletedRecordDefinition = new RecordDefinitionImpl(
+      SITE_POINT_DELETED);
+    deletedRecordDefinition.addField(SITE_ID, DataTypes.INT, true);
+    final Path deletedPath = deltaDirectory.resolve("SITE_POINT_DELETED.tsv");
+    final int[] lastSiteIds = this.exportState.readSiteIds();
+    try (
+      RecordWriter tsvWriter = RecordWriter.newRecordWriter(deletedRecordDefinition,
+        deletedPath)) {
+      int index = 0;
+      for (final int siteId : lastSiteIds) {
+        while (index < this.siteIdCount && this.siteIds[index] < siteId) {
+          index++;
+        }
+        if (index == this.siteIdCount || this.siteIds[index] != siteId) {
+          final Record deletedRecord = deletedRecordDefinition.newRecord();
+          deletedRecord.setValue(SITE_ID, siteId);
+          tsvWriter.write(deletedRecord);
+          this.dialog.addLabelCount(CountNames.COUNTS, SITE_POINT_DELETED, CountNames.WRITE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write all the SITE_POINT records to the FileGDB.
+   */
+  private void exportSnapshot() {
     ProcessNetwork.startAndWait(() -> {
 
       final AbstractOutProcess<Record> readProcess = new ConsumerOutProcess<>(this::readRecords) //
@@ -93,7 +243,9 @@ public class SitePointExport implements SitePoint, Cancellable {
       final Path sitePointFile = GbaController.getDataPath("exports/site_point.gdb");
 
       final FileGdbWriterProcess writerProcess = new FileGdbWriterProcess(sitePointFile);
-      newSitePointExportRecordDefinition(writerProcess);
+      final RecordStore exportRecordStore = writerProcess.getRecordStore();
+      this.sitePointExportRecordDefinition = exportRecordStore
+        .getRecordDefinition(newSitePointExportRecordDefinition());
 
       final LabelCounters writeCounts = this.dialog.getLabelCountMap(CountNames.COUNTS,
         CountNames.WRITE);
@@ -103,7 +255,20 @@ public class SitePointExport implements SitePoint, Cancellable {
         .setIn(readProcess) //
       ;
     });
-    return true;
+  }
+
+  private Integer getFirstValue(final String fieldName, final boolean ascending) {
+    final Query query = new Query(SiteTables.SITE_POINT) //
+      .select(fieldName);
+    query.addOrderBy(fieldName, ascending);
+    query.setLimit(1);
+    try (
+      RecordReader reader = this.recordStore.getRecords(query)) {
+      for (final Record record : reader) {
+        return record.getInteger(fieldName);
+      }
+    }
+    return null;
   }
 
   private CodeTable getIntegrationSessionCodeTable() {
@@ -124,6 +289,33 @@ public class SitePointExport implements SitePoint, Cancellable {
     return this.dialog.isCancelled();
   }
 
+  /**
+   * Create the decoders for the code and id fields. Each read process has its own decoders.
+   */
+  private List<CodeValueDecoder> newCodeValueDecoders() {
+    final RecordDefinition recordDefinition = this.recordStore
+      .getRecordDefinition(SiteTables.SITE_POINT);
+    final RecordDefinition exportRecordDefinition = this.sitePointExportRecordDefinition;
+    final List<CodeValueDecoder> decoders = new ArrayList<>();
+    for (int i = 0; i < DECODE_FIELD_NAMES.length; i += 2) {
+      final String fieldName = DECODE_FIELD_NAMES[i];
+      final String exportFieldName = DECODE_FIELD_NAMES[i + 1];
+      final CodeValueDecoder decoder = new CodeValueDecoder(recordDefinition, fieldName,
+        exportRecordDefinition, exportFieldName);
+      decoders.add(decoder);
+    }
+    return decoders;
+  }
+
+  private Record newExportRecord(final Record record, final List<CodeValueDecoder> decoders) {
+    final Record exportRecord = this.sitePointExportRecordDefinition.newRecord(record);
+    exportRecord.setGeometryValue(record);
+    for (final CodeValueDecoder decoder : decoders) {
+      decoder.decode(record, exportRecord);
+    }
+    return exportRecord;
+  }
+
   private Query newQuery(final PathName pathName) {
     final Query query;
     final RecordDefinition recordDefinition = this.recordStore.getRecordDefinition(pathName);
@@ -139,7 +331,7 @@ public class SitePointExport implements SitePoint, Cancellable {
     return query;
   }
 
-  private void newSitePointExportRecordDefinition(final FileGdbWriterProcess writerProcess) {
+  private RecordDefinitionImpl newSitePointExportRecordDefinition() {
     final RecordDefinition recordDefinition = this.recordStore
       .getRecordDefinition(SiteTables.SITE_POINT);
 
@@ -202,10 +394,73 @@ public class SitePointExport implements SitePoint, Cancellable {
     }
     exportRecordDefinition.addField("POINT", GeometryDataTypes.POINT, true);
     exportRecordDefinition.setGeometryFactory(recordDefinition.getGeometryFactory());
+    return exportRecordDefinition;
+  }
 
-    final RecordStore exportRecordStore = writerProcess.getRecordStore();
-    this.sitePointExportRecordDefinition = exportRecordStore
-      .getRecordDefinition(exportRecordDefinition);
+  private synchronized int nextReadPartition() {
+    final int maxPartitionsAhead = this.readThreadCount * 2;
+    while (this.error == null && !isCancelled() && this.nextReadPartition < this.partitionCount) {
+      if (this.nextReadPartition < this.nextWritePartition + maxPartitionsAhead) {
+        return this.nextReadPartition++;
+      } else {
+        try {
+          wait(1000);
+        } catch (final InterruptedException e) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Wait for the next partition to be read.
+   *
+   * @return The records or null if there are no more partitions.
+   */
+  private synchronized List<Record> nextWritePartition() {
+    while (this.error == null && !isCancelled() && this.nextWritePartition < this.partitionCount) {
+      final List<Record> records = this.recordsByPartition.remove(this.nextWritePartition);
+      if (records == null) {
+        try {
+          wait(1000);
+        } catch (final InterruptedException e) {
+          return null;
+        }
+      } else {
+        this.nextWritePartition++;
+        notifyAll();
+        return records;
+      }
+    }
+    return null;
+  }
+
+  private void readPartitions(final int minSiteId) {
+    final List<CodeValueDecoder> decoders = newCodeValueDecoders();
+    for (int partition = nextReadPartition(); partition != -1; partition = nextReadPartition()) {
+      final int fromSiteId = minSiteId + partition * PARTITION_SIZE;
+      final Query query = newQuery(SiteTables.SITE_POINT);
+      query.setWhereCondition(Q.and( //
+        Q.greaterThanEqual(SITE_ID, fromSiteId), //
+        Q.lessThan(SITE_ID, fromSiteId + PARTITION_SIZE) //
+      ));
+      final List<Record> records = new ArrayList<>();
+      try (
+        RecordReader sitePointReader = this.recordStore.getRecords(query)) {
+        for (final Record record : cancellable(sitePointReader)) {
+          final Record exportRecord = newExportRecord(record, decoders);
+          records.add(exportRecord);
+        }
+      } catch (final Throwable e) {
+        setError(e);
+        return;
+      }
+      synchronized (this) {
+        this.recordsByPartition.put(partition, records);
+        notifyAll();
+      }
+    }
   }
 
   private void readRecords(final Channel<Record> out) {
@@ -225,30 +480,77 @@ public class SitePointExport implements SitePoint, Cancellable {
         out.write(record);
       }
     }
-    final Query sitePointQuery = newQuery(SiteTables.SITE_POINT);
+    readSitePoints(out);
+  }
+
+  /**
+   * Read the SITE_IDs of all the SITE_POINT records in SITE_ID order.
+   */
+  private void readSiteIds() {
+    final Query query = Query.orderBy(SiteTables.SITE_POINT, SITE_ID) //
+      .select(SITE_ID);
     try (
-      RecordReader sitePointReader = this.recordStore.getRecords(sitePointQuery)) {
-      final RecordDefinition sitePointExportRecordDefinition = this.sitePointExportRecordDefinition;
-      for (final Record record : cancellable(sitePointReader)) {
-        final Record exportRecord = sitePointExportRecordDefinition.newRecord(record);
-        exportRecord.setGeometryValue(record);
-        exportRecord.setCodeValue(LOCALITY, record, LOCALITY_ID);
-        exportRecord.setCodeValue(REGIONAL_DISTRICT, record, REGIONAL_DISTRICT_ID);
-        exportRecord.setCodeValue(COMMUNITY, record, COMMUNITY_ID);
-        exportRecord.setCodeValue(STREET_NAME_ALIAS_1, record, STREET_NAME_ALIAS_1_ID);
-        exportRecord.setCodeValue(FEATURE_STATUS, record, FEATURE_STATUS_CODE);
-        exportRecord.setCodeValue(CREATE_PARTNER_ORG, record, CREATE_PARTNER_ORG_ID);
-        exportRecord.setCodeValue(MODIFY_PARTNER_ORG, record, MODIFY_PARTNER_ORG_ID);
-        exportRecord.setCodeValue(CUSTODIAN_PARTNER_ORG, record, CUSTODIAN_PARTNER_ORG_ID);
-
-        exportRecord.setCodeValue(CREATE_INTEGRATION_DATE, record, CREATE_INTEGRATION_SESSION_ID);
-        exportRecord.setCodeValue(MODIFY_INTEGRATION_DATE, record, MODIFY_INTEGRATION_SESSION_ID);
-        exportRecord.setCodeValue(CUSTODIAN_INTEGRATION_DATE, record, CUSTODIAN_SESSION_ID);
-        exportRecord.setCodeValue(DATA_CAPTURE_METHOD, record, DATA_CAPTURE_METHOD_CODE);
-        exportRecord.setCodeValue(SITE_TYPE, record, SITE_TYPE_CODE);
-        exportRecord.setCodeValue(SITE_LOCATION, record, SITE_LOCATION_CODE);
-        out.write(exportRecord);
+      RecordReader reader = this.recordStore.getRecords(query)) {
+      for (final Record record : cancellable(reader)) {
+        addSiteId(record.getInteger(SITE_ID));
+      }
+    }
+  }
+
+  private void readSitePoints(final Channel<Record> out) {
+    final Integer minSiteId = getFirstValue(SITE_ID, true);
+    final Integer maxSiteId = getFirstValue(SITE_ID, false);
+    if (minSiteId != null && maxSiteId != null) {
+      this.partitionCount = (maxSiteId - minSiteId) / PARTITION_SIZE + 1;
+      final ProcessNetwork processes = new ProcessNetwork();
+      for (int i = 0; i < Math.min(this.readThreadCount, this.partitionCount); i++) {
+        processes.addProcess("SITE_POINT Read " + (i + 1), () -> readPartitions(minSiteId));
+      }
+      processes.addProcess("SITE_POINT Write", () -> {
+        try {
+          for (List<Record> records = nextWritePartition(); records != null; //
+            records = nextWritePartition()) {
+            for (final Record record : records) {
+              addSiteId(record.getInteger(SITE_ID));
+              out.write(record);
+            }
+          }
+        } catch (final Throwable e) {
+          setError(e);
+        }
+      });
+      processes.startAndWait();
+      if (this.error != null) {
+        throw Exceptions.wrap("Error reading " + SiteTables.SITE_POINT, this.error);
       }
     }
   }
+
+  /**
+   * Reset the partitions, error and SITE_IDs from the last export so the process can be run more
+   * than once.
+   */
+  private synchronized void reset() {
+    this.recordsByPartition.clear();
+    this.partitionCount = 0;
+    this.nextReadPartition = 0;
+    this.nextWritePartition = 0;
+    this.error = null;
+    this.siteIdCount = 0;
+  }
+
+  private synchronized void setError(final Throwable e) {
+    if (this.error == null) {
+      this.error = e;
+    }
+    notifyAll();
+  }
+
+  public void setIncremental(final boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public void setReadThreadCount(final int readThreadCount) {
+    this.readThreadCount = readThreadCount;
+  }
 }
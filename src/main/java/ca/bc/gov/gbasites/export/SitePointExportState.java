@@ -0,0 +1,145 @@
+package ca.bc.gov.gbasites.export;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.jeometry.common.exception.Exceptions;
+import org.jeometry.common.logging.Logs;
+
+import com.revolsys.io.file.Paths;
+
+/**
+ * The state of the last SITE_POINT export, the maximum MODIFY_INTEGRATION_SESSION_ID included in
+ * the export and the sorted SITE_IDs that were exported. An incremental export only reads the
+ * records modified in later sessions. The SITE_IDs are used to find the records that were
+ * deleted.
+ *
+ * The properties are deleted first and written last, so that a failed save leaves no state and
+ * the next export is a full export.
+ */
+public class SitePointExportState {
+
+  private static final String MODIFY_INTEGRATION_SESSION_ID = "modifyIntegrationSessionId";
+
+  private static final String SITE_COUNT = "siteCount";
+
+  private final Path file;
+
+  private final Path siteIdsFile;
+
+  private final Properties properties = new Properties();
+
+  public SitePointExportState(final Path file, final Path siteIdsFile) {
+    this.file = file;
+    this.siteIdsFile = siteIdsFile;
+    if (Files.exists(file)) {
+      try (
+        InputStream in = Files.newInputStream(file)) {
+        this.properties.load(in);
+      } catch (final IOException e) {
+        Logs.error(this, "Unable to read site point export state: " + file, e);
+        this.properties.clear();
+      }
+    }
+  }
+
+  /**
+   * @return The maximum MODIFY_INTEGRATION_SESSION_ID from the last export, -1 if there isn't a
+   *         last export.
+   */
+  public int getModifyIntegrationSessionId() {
+    final String sessionId = this.properties.getProperty(MODIFY_INTEGRATION_SESSION_ID);
+    if (sessionId != null && Files.exists(this.siteIdsFile)) {
+      try {
+        return Integer.parseInt(sessionId);
+      } catch (final NumberFormatException e) {
+      }
+    }
+    return -1;
+  }
+
+  public boolean isExported() {
+    return getModifyIntegrationSessionId() != -1;
+  }
+
+  /**
+   * Read the sorted SITE_IDs from the last export.
+   *
+   * @return The SITE_IDs.
+   */
+  public int[] readSiteIds() {
+    try (
+      InputStream in = Files.newInputStream(this.siteIdsFile);
+      DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in))) {
+      final int count = dataIn.readInt();
+      final int[] siteIds = new int[count];
+      for (int i = 0; i < count; i++) {
+        siteIds[i] = dataIn.readInt();
+      }
+      return siteIds;
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to read: " + this.siteIdsFile, e);
+    }
+  }
+
+  /**
+   * Save the state after a successful export.
+   *
+   * @param modifyIntegrationSessionId The maximum MODIFY_INTEGRATION_SESSION_ID in the export.
+   * @param siteIds The sorted SITE_IDs of all the SITE_POINT records.
+   * @param siteCount The number of SITE_IDs.
+   */
+  public void save(final int modifyIntegrationSessionId, final int[] siteIds,
+    final int siteCount) {
+    this.properties.clear();
+    Paths.createParentDirectories(this.file);
+    try {
+      Files.deleteIfExists(this.file);
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to delete: " + this.file, e);
+    }
+    final Path tempFile = this.siteIdsFile.resolveSibling(this.siteIdsFile.getFileName() + ".tmp");
+    try (
+      OutputStream out = Files.newOutputStream(tempFile);
+      DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out))) {
+      dataOut.writeInt(siteCount);
+      for (int i = 0; i < siteCount; i++) {
+        dataOut.writeInt(siteIds[i]);
+      }
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to write: " + tempFile, e);
+    }
+    try {
+      Files.move(tempFile, this.siteIdsFile, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to rename " + tempFile + " to " + this.siteIdsFile, e);
+    }
+
+    final Properties properties = new Properties();
+    properties.setProperty(MODIFY_INTEGRATION_SESSION_ID,
+      Integer.toString(modifyIntegrationSessionId));
+    properties.setProperty(SITE_COUNT, Integer.toString(siteCount));
+    try (
+      OutputStream out = Files.newOutputStream(this.file)) {
+      properties.store(out, "Site point export state");
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to write: " + this.file, e);
+    }
+    this.properties.putAll(properties);
+  }
+
+  @Override
+  public String toString() {
+    return this.file.toString();
+  }
+}
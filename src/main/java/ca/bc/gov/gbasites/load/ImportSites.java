@@ -33,6 +33,7 @@ import ca.bc.gov.gba.process.AbstractTaskByLocality;
 import ca.bc.gov.gba.ui.StatisticsDialog;
 import ca.bc.gov.gbasites.controller.GbaSiteDatabase;
 import ca.bc.gov.gbasites.load.common.DirectorySuffixAndExtension;
+import ca.bc.gov.gbasites.load.common.ProviderDownloadScheduler;
 import ca.bc.gov.gbasites.load.common.ProviderSitePointConverter;
 import ca.bc.gov.gbasites.load.convert.AbstractSiteConverter;
 import ca.bc.gov.gbasites.load.convert.SiteConverterAddress;
@@ -120,6 +121,9 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
   public static final DirectorySuffixAndExtension SITE_POINT = new DirectorySuffixAndExtension(
     "SitePoint", "_SITE_POINT", ".tsv");
 
+  public static final DirectorySuffixAndExtension SITE_POINT_MANIFEST = new DirectorySuffixAndExtension(
+    "SitePointManifest", "_SITE_POINT_MANIFEST", ".properties");
+
   public static final DirectorySuffixAndExtension SITE_POINT_TO_DELETE = new DirectorySuffixAndExtension(
     "SitePointToDelete", "_SITE_POINT_TO_DELETE", ".tsv");
 
@@ -138,12 +142,17 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
   public static final DirectorySuffixAndExtension SOURCE_BY_PROVIDER = new DirectorySuffixAndExtension(
     "SourceByProvider", "_SOURCE", ".tsv");
 
+  public static final DirectorySuffixAndExtension SOURCE_METADATA_BY_PROVIDER = new DirectorySuffixAndExtension(
+    "SourceMetadataByProvider", "_SOURCE_METADATA", ".properties");
+
   public static final String PROVIDER_SPLIT = "P Split";
 
   public static final String ABC_SPLIT = AddressBC.COUNT_PREFIX + "Split";
 
   public static final String TO_DELETE = "To Delete";
 
+  public static final String UNCHANGED = "Unchanged";
+
   public static final String PROVIDER_READ = "P Read";
 
   public static void deleteTempFiles(final Path directory) {
@@ -266,10 +275,25 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
   private final List<ProviderSitePointConverter> dataProvidersToProcess = Collections
     .synchronizedList(new LinkedList<>());
 
+  /**
+   * The maximum number of provider downloads at the same time from one server.
+   */
+  private int downloadHostConnectionCount = 2;
+
+  /**
+   * The maximum number of provider downloads at the same time. Downloads are network bound so
+   * more threads are used than for the other steps.
+   */
+  private int downloadThreadCount = 24;
+
   private final CheckBox fgdbCheckbox = new CheckBox("fgdb", true);
 
   private final CheckBox mergeCheckbox = new CheckBox("merge", true);
 
+  private final CheckBox mergeIncrementalCheckbox = new CheckBox("mergeIncremental", true);
+
+  private final CheckBox mergeStreamingCheckbox = new CheckBox("mergeStreaming", false);
+
   private final Map<String, Identifier> partnerOrganizationIdByShortName = new HashMap<>();
 
   private ComboBox<ProviderSitePointConverter> providerComboBox;
@@ -291,14 +315,14 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
   }
 
   private void action1Download() {
-    final Consumer<ProviderSitePointConverter> providerAction = converter -> {
-      converter.downloadData(this, true);
-    };
-
     final boolean downloadData = this.providerDownloadCheckbox.isSelected();
     final ProcessNetwork processes = new ProcessNetwork();
-    if (downloadData) {
-      addConverterProcesses("Downloading", processes, providerAction);
+    if (downloadData && !this.dataProvidersToProcess.isEmpty()) {
+      final ProviderDownloadScheduler downloadScheduler = new ProviderDownloadScheduler(this,
+        new ArrayList<>(this.dataProvidersToProcess));
+      downloadScheduler.setThreadCount(this.downloadThreadCount);
+      downloadScheduler.setHostConnectionCount(this.downloadHostConnectionCount);
+      downloadScheduler.addProcesses(processes, "Downloading");
     }
     processes.addProcess("Download and Split " + AddressBC.NAME, () -> {
       final boolean download = this.addressBcDownloadCheckbox.isSelected();
@@ -433,6 +457,7 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
       SITE_POINT.createDirectory(baseDirectory);
       SITE_POINT_BY_PROVIDER.createDirectory(baseDirectory);
       SOURCE_BY_PROVIDER.createDirectory(baseDirectory);
+      SOURCE_METADATA_BY_PROVIDER.createDirectory(baseDirectory);
     }
     loadCodes();
 
@@ -445,6 +470,7 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
         setSelectedTab(ProviderSitePointConverter.LOCALITY);
         SITE_POINT.createDirectory(SITES_DIRECTORY);
         SITE_POINT_TO_DELETE.createDirectory(SITES_DIRECTORY);
+        SITE_POINT_MANIFEST.createDirectory(SITES_DIRECTORY);
         super.batchUpdate(transaction);
       }
     }
@@ -458,6 +484,14 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
     return !isCancelled();
   }
 
+  public int getDownloadHostConnectionCount() {
+    return this.downloadHostConnectionCount;
+  }
+
+  public int getDownloadThreadCount() {
+    return this.downloadThreadCount;
+  }
+
   public Identifier getPartnerOrganizationByShortName(final String shortName) {
     return this.partnerOrganizationIdByShortName.get(shortName);
   }
@@ -488,6 +522,26 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
     // }
   }
 
+  /**
+   * Skip merging localities where the input files and the merged file are the same as the last
+   * merge.
+   *
+   * @return True if unchanged localities are skipped.
+   */
+  public boolean isMergeIncremental() {
+    return this.mergeIncrementalCheckbox.isSelected();
+  }
+
+  /**
+   * Merge each locality one civic number at a time from sorted files instead of loading all the
+   * records for the locality into memory.
+   *
+   * @return True if the streaming merge is used.
+   */
+  public boolean isMergeStreaming() {
+    return this.mergeStreamingCheckbox.isSelected();
+  }
+
   private void loadCodes() {
 
     final StructuredNames structuredNames = GbaItnCodeTables.getStructuredNames();
@@ -612,7 +666,11 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
     final BasePanel optionsPanel = super.newPanelOptions();
     optionsPanel.addComponents(//
       SwingUtil.newLabel("Merge"), //
-      this.mergeCheckbox);
+      this.mergeCheckbox, //
+      SwingUtil.newLabel("Skip Unchanged"), //
+      this.mergeIncrementalCheckbox, //
+      SwingUtil.newLabel("Streaming Merge"), //
+      this.mergeStreamingCheckbox);
     GroupLayouts.makeColumns(optionsPanel, 2, true);
     optionsPanel.setBorder(BorderFactory.createTitledBorder("Merge Sites"));
     return optionsPanel;
@@ -641,6 +699,14 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
     return panel;
   }
 
+  public void setDownloadHostConnectionCount(final int downloadHostConnectionCount) {
+    this.downloadHostConnectionCount = downloadHostConnectionCount;
+  }
+
+  public void setDownloadThreadCount(final int downloadThreadCount) {
+    this.downloadThreadCount = downloadThreadCount;
+  }
+
   @Override
   protected void setOptions(final BasePanel optionsPanel) {
     super.setOptions(optionsPanel);
@@ -682,6 +748,7 @@ public class ImportSites extends AbstractTaskByLocality implements SitePoint, Co
       TOTAL_USED, //
 
       MERGED_READ, //
+      UNCHANGED, //
 
       MATCHED, //
       INSERTED, //
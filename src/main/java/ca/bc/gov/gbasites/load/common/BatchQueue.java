@@ -0,0 +1,185 @@
+package ca.bc.gov.gbasites.load.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jeometry.common.exception.Exceptions;
+import org.jeometry.common.logging.Logs;
+
+/**
+ * Bounded queue of batches sent from a producer process to a consumer process in a
+ * {@link com.revolsys.parallel.process.ProcessNetwork}. The queue is bounded so the producer
+ * can't get too far ahead of the consumer.
+ *
+ * The queues created by {@link #newQueues(int, String)} share the first error from any of the
+ * processes. Once there is an error the producers stop, the consumers take the remaining batches
+ * without processing them and {@link #throwError()} rethrows the error on the thread that started
+ * the processes.
+ */
+public class BatchQueue<B> {
+
+  private static class Errors {
+    private volatile Throwable error;
+
+    private final String message;
+
+    private Errors(final String message) {
+      this.message = message;
+    }
+  }
+
+  public static final int BATCH_SIZE = 1000;
+
+  private static final Object END = new Object();
+
+  private static final int QUEUE_SIZE = 8;
+
+  /**
+   * Create queues that share the error.
+   *
+   * @param count The number of queues.
+   * @param errorMessage The message for the exception thrown if there was an error.
+   * @return The queues.
+   */
+  public static <V> List<BatchQueue<V>> newQueues(final int count, final String errorMessage) {
+    final Errors errors = new Errors(errorMessage);
+    final List<BatchQueue<V>> queues = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      queues.add(new BatchQueue<>(errors));
+    }
+    return Collections.unmodifiableList(queues);
+  }
+
+  private final Errors errors;
+
+  private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+  public BatchQueue(final String errorMessage) {
+    this(new Errors(errorMessage));
+  }
+
+  private BatchQueue(final Errors errors) {
+    this.errors = errors;
+  }
+
+  /**
+   * Take the batches until the end of the queue and process them. If processing fails the error
+   * is set and the remaining batches are taken without processing them so the producer can
+   * finish.
+   *
+   * @param action The action to process each batch.
+   */
+  public void consume(final Consumer<? super B> action) {
+    for (B batch = take(); batch != null; batch = take()) {
+      if (!isError()) {
+        try {
+          action.accept(batch);
+        } catch (final Throwable e) {
+          setError(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Mark the end of the queue. Must be called from a finally block by the producer, even if
+   * there was an error, so the consumer finishes.
+   */
+  public void finish() {
+    try {
+      this.queue.put(END);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public Throwable getError() {
+    return this.errors.error;
+  }
+
+  public boolean isError() {
+    return this.errors.error != null;
+  }
+
+  /**
+   * Run the producer and {@link #finish()} the queue. An exception from the producer is set as
+   * the error.
+   *
+   * @param producer The producer.
+   */
+  public void produce(final Runnable producer) {
+    try {
+      producer.run();
+    } catch (final Throwable e) {
+      setError(e);
+    } finally {
+      finish();
+    }
+  }
+
+  /**
+   * Add a batch to the queue, waiting if the queue is full.
+   *
+   * @param batch The batch.
+   * @throws RuntimeException If there was an error in one of the processes.
+   */
+  public void put(final B batch) {
+    try {
+      while (!this.queue.offer(batch, 1, TimeUnit.SECONDS)) {
+        throwError();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Exceptions.wrap("Interrupted: " + this.errors.message, e);
+    }
+  }
+
+  /**
+   * Set the error if there isn't already an error.
+   *
+   * @param e The error.
+   */
+  public void setError(final Throwable e) {
+    synchronized (this.errors) {
+      if (this.errors.error == null) {
+        this.errors.error = e;
+        Logs.error(this, this.errors.message, e);
+      }
+    }
+  }
+
+  /**
+   * Take the next batch, waiting for the producer if the queue is empty.
+   *
+   * @return The batch or null at the end of the queue.
+   */
+  @SuppressWarnings("unchecked")
+  public B take() {
+    try {
+      final Object batch = this.queue.take();
+      if (batch == END) {
+        return null;
+      } else {
+        return (B)batch;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Exceptions.wrap("Interrupted: " + this.errors.message, e);
+    }
+  }
+
+  /**
+   * Throw the error if there was an error in one of the processes.
+   */
+  public void throwError() {
+    final Throwable error = this.errors.error;
+    if (error != null) {
+      throw Exceptions.wrap(this.errors.message, error);
+    }
+  }
+}
@@ -0,0 +1,492 @@
+package ca.bc.gov.gbasites.load.common;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Hand written matchers for the shapes of the civic number, civic number suffix and postal code
+ * strings from the providers. Each matcher makes a single pass over the characters and has the
+ * same result and groups as the regular expression in its comment. The groups are numbered from
+ * 1 like a {@link java.util.regex.Matcher} and are only created as strings when they are used.
+ */
+public class CivicNumberTokenizer {
+
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * {@code \d+}
+   */
+  public static boolean isDigits(final String text) {
+    final int length = text.length();
+    return length > 0 && skipDigits(text, 0) == length;
+  }
+
+  /**
+   * {@code \d*\.0*}
+   */
+  public static boolean isDecimalWithZeroFraction(final String text) {
+    final int length = text.length();
+    int i = skipDigits(text, 0);
+    if (i < length && text.charAt(i) == '.') {
+      i++;
+      while (i < length && text.charAt(i) == '0') {
+        i++;
+      }
+      return i == length;
+    }
+    return false;
+  }
+
+  /**
+   * {@code [+-]?\d+}, the strings that {@link Integer#parseInt(String)} can parse if they are in
+   * range.
+   */
+  public static boolean isInteger(final String text) {
+    final int length = text.length();
+    int i = 0;
+    if (length > 0) {
+      final char c = text.charAt(0);
+      if (c == '+' || c == '-') {
+        i++;
+      }
+    }
+    return i < length && skipDigits(text, i) == length;
+  }
+
+  private static boolean isLetter(final char c) {
+    return c >= 'A' && c <= 'Z';
+  }
+
+  /**
+   * Check if the character is matched by {@code .}, any character except a line terminator.
+   */
+  private static boolean isNotLineTerminator(final char c) {
+    return c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+  }
+
+  private static boolean isNotLineTerminator(final String text, final int startIndex) {
+    for (int i = startIndex; i < text.length(); i++) {
+      if (!isNotLineTerminator(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * {@code \(\d+\)}
+   */
+  public static boolean isNumberInParentheses(final String text) {
+    final int length = text.length();
+    return length > 2 && text.charAt(0) == '(' && text.charAt(length - 1) == ')'
+      && skipDigits(text, 1) == length - 1;
+  }
+
+  /**
+   * {@code \(.+\)}
+   */
+  public static boolean isInParentheses(final String text) {
+    final int length = text.length();
+    if (length > 2 && text.charAt(0) == '(' && text.charAt(length - 1) == ')') {
+      for (int i = 1; i < length - 1; i++) {
+        if (!isNotLineTerminator(text.charAt(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * {@code [A-Z]\d[A-Z]\d[A-Z]\d} or {@code [A-Z]\d[A-Z] \d[A-Z]\d} if the postal code has a
+   * space.
+   */
+  public static boolean isPostalCode(final String text, final boolean space) {
+    int i = 0;
+    if (space) {
+      if (text.length() != 7 || text.charAt(3) != ' ') {
+        return false;
+      }
+    } else if (text.length() != 6) {
+      return false;
+    }
+    for (int j = 0; j < 6; j++) {
+      if (space && j == 3) {
+        i++;
+      }
+      final char c = text.charAt(i++);
+      if (j % 2 == 0) {
+        if (!isLetter(c)) {
+          return false;
+        }
+      } else if (!isDigit(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * {@code [A-Z]|1/2}
+   */
+  public static boolean isSuffix(final String text) {
+    final int length = text.length();
+    if (length == 1) {
+      return isLetter(text.charAt(0));
+    } else {
+      return length == 3 && "1/2".equals(text);
+    }
+  }
+
+  /**
+   * {@code [A-Z0-9]+-[A-Z0-9]+}
+   */
+  public static boolean isUnitRange(final String text) {
+    final int length = text.length();
+    final int hyphenIndex = skipLettersOrDigits(text, 0);
+    return hyphenIndex > 0 && hyphenIndex < length - 1 && text.charAt(hyphenIndex) == '-'
+      && skipLettersOrDigits(text, hyphenIndex + 1) == length;
+  }
+
+  /**
+   * {@code \w}
+   */
+  private static boolean isWordChar(final char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+  }
+
+  /**
+   * {@code \s}
+   */
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static int skipDigits(final String text, int i) {
+    final int length = text.length();
+    while (i < length && isDigit(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipLettersOrDigits(final String text, int i) {
+    final int length = text.length();
+    while (i < length) {
+      final char c = text.charAt(i);
+      if (isLetter(c) || isDigit(c)) {
+        i++;
+      } else {
+        return i;
+      }
+    }
+    return i;
+  }
+
+  private static int skipWhitespace(final String text, int i) {
+    final int length = text.length();
+    while (i < length && isWhitespace(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private final int[] groupEnds = new int[5];
+
+  private final int[] groupStarts = new int[5];
+
+  private final int length;
+
+  private final String text;
+
+  public CivicNumberTokenizer(final String text) {
+    this.text = text;
+    this.length = text.length();
+  }
+
+  /**
+   * The number of characters at the index that match the single whitespace {@code \s?}.
+   */
+  private int optionalWhitespace(final int i) {
+    if (i < this.length && isWhitespace(this.text.charAt(i))) {
+      return 1;
+    } else {
+      return 0;
+    }
+  }
+
+  public String group(final int group) {
+    return this.text.substring(this.groupStarts[group], this.groupEnds[group]);
+  }
+
+  public int groupInt(final int group) {
+    return Integer.parseInt(group(group));
+  }
+
+  /**
+   * Get the numbers after {@link #matchesNumberList()} returned true.
+   *
+   * @return The sorted distinct numbers.
+   */
+  public Set<Integer> getNumbers() {
+    final Set<Integer> numbers = new TreeSet<>();
+    int i = 0;
+    while (i < this.length) {
+      final int end = skipDigits(this.text, i);
+      if (end > i) {
+        numbers.add(Integer.valueOf(this.text.substring(i, end)));
+        i = end;
+      } else {
+        i++;
+      }
+    }
+    return numbers;
+  }
+
+  /**
+   * {@code (\d+)(?:[- ])?([A-Z]|\d+[A-Z]?| UT|\(?[A-Z].+)}
+   */
+  public boolean matchesCivicNumberSuffix() {
+    final int numberEnd = skipDigits(this.text, 0);
+    if (numberEnd == 0) {
+      return false;
+    } else if (numberEnd == this.length) {
+      // Only an all digit number, \d+ gives up the last digit to the second group
+      if (this.length > 1) {
+        setGroup(1, 0, this.length - 1);
+        setGroup(2, this.length - 1, this.length);
+        return true;
+      } else {
+        return false;
+      }
+    } else {
+      setGroup(1, 0, numberEnd);
+      final char separator = this.text.charAt(numberEnd);
+      if (separator == '-' || separator == ' ') {
+        return matchesSuffixPart(numberEnd + 1);
+      } else {
+        return matchesSuffixPart(numberEnd);
+      }
+    }
+  }
+
+  /**
+   * {@code (\d+)(?: ?-|/| #|-#)?(\d+)}
+   */
+  public boolean matchesCivicNumberUnit() {
+    final int numberEnd = skipDigits(this.text, 0);
+    if (numberEnd == 0) {
+      return false;
+    } else if (numberEnd == this.length) {
+      // Only an all digit number, \d+ gives up the last digit to the second group
+      if (this.length > 1) {
+        setGroup(1, 0, this.length - 1);
+        setGroup(2, this.length - 1, this.length);
+        return true;
+      } else {
+        return false;
+      }
+    } else {
+      final int unitStart;
+      if (this.text.startsWith(" -", numberEnd) || this.text.startsWith(" #", numberEnd)
+        || this.text.startsWith("-#", numberEnd)) {
+        unitStart = numberEnd + 2;
+      } else {
+        final char separator = this.text.charAt(numberEnd);
+        if (separator == '-' || separator == '/') {
+          unitStart = numberEnd + 1;
+        } else {
+          return false;
+        }
+      }
+      if (unitStart < this.length && skipDigits(this.text, unitStart) == this.length) {
+        setGroup(1, 0, numberEnd);
+        setGroup(2, unitStart, this.length);
+        return true;
+      } else {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * {@code (\d+)([A-Z])\s*-\s*(\d+)([A-Z])}
+   */
+  public boolean matchesCivicNumberUnitRange() {
+    final int number1End = skipDigits(this.text, 0);
+    if (number1End > 0 && number1End < this.length && isLetter(this.text.charAt(number1End))) {
+      int i = skipWhitespace(this.text, number1End + 1);
+      if (i < this.length && this.text.charAt(i) == '-') {
+        i = skipWhitespace(this.text, i + 1);
+        final int number2End = skipDigits(this.text, i);
+        if (number2End > i && number2End == this.length - 1
+          && isLetter(this.text.charAt(number2End))) {
+          setGroup(1, 0, number1End);
+          setGroup(2, number1End, number1End + 1);
+          setGroup(3, i, number2End);
+          setGroup(4, number2End, this.length);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * {@code \d+(\s*[,/]\s*\d+)+}
+   */
+  public boolean matchesNumberList() {
+    int i = skipDigits(this.text, 0);
+    if (i == 0) {
+      return false;
+    } else {
+      int count = 1;
+      while (i < this.length) {
+        i = skipWhitespace(this.text, i);
+        if (i < this.length) {
+          final char separator = this.text.charAt(i);
+          if (separator == ',' || separator == '/') {
+            final int numberStart = skipWhitespace(this.text, i + 1);
+            i = skipDigits(this.text, numberStart);
+            if (i == numberStart) {
+              return false;
+            }
+            count++;
+          } else {
+            return false;
+          }
+        } else {
+          return false;
+        }
+      }
+      return count > 1;
+    }
+  }
+
+  /**
+   * {@code (\d+)\s*[,]\s*(\d+)[-]?([A-Z])}
+   */
+  public boolean matchesNumberListWithSuffix() {
+    final int number1End = skipDigits(this.text, 0);
+    if (number1End > 0) {
+      int i = skipWhitespace(this.text, number1End);
+      if (i < this.length && this.text.charAt(i) == ',') {
+        final int number2Start = skipWhitespace(this.text, i + 1);
+        final int number2End = skipDigits(this.text, number2Start);
+        if (number2End > number2Start) {
+          i = number2End;
+          if (i < this.length && this.text.charAt(i) == '-') {
+            i++;
+          }
+          if (i == this.length - 1 && isLetter(this.text.charAt(i))) {
+            setGroup(1, 0, number1End);
+            setGroup(2, number2Start, number2End);
+            setGroup(3, i, this.length);
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * {@code (\d+)\s?([,-/])\s?(\d+)}, the separator is the range of characters {@code ,-./}.
+   */
+  public boolean matchesNumberRange() {
+    final int number1End = skipDigits(this.text, 0);
+    if (number1End > 0) {
+      final int separatorIndex = number1End + optionalWhitespace(number1End);
+      if (separatorIndex < this.length) {
+        final char separator = this.text.charAt(separatorIndex);
+        if (separator >= ',' && separator <= '/') {
+          final int number2Start = separatorIndex + 1 + optionalWhitespace(separatorIndex + 1);
+          if (number2Start < this.length && skipDigits(this.text, number2Start) == this.length) {
+            setGroup(1, 0, number1End);
+            setGroup(2, separatorIndex, separatorIndex + 1);
+            setGroup(3, number2Start, this.length);
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The second group of {@link #matchesCivicNumberSuffix()},
+   * {@code [A-Z]|\d+[A-Z]?| UT|\(?[A-Z].+}.
+   */
+  private boolean matchesSuffixPart(final int start) {
+    final int partLength = this.length - start;
+    boolean matches = false;
+    if (partLength > 0) {
+      final char c = this.text.charAt(start);
+      if (isDigit(c)) {
+        int i = skipDigits(this.text, start);
+        if (i < this.length && isLetter(this.text.charAt(i))) {
+          i++;
+        }
+        matches = i == this.length;
+      } else if (isLetter(c)) {
+        matches = partLength == 1 || isNotLineTerminator(this.text, start + 1);
+      } else if (c == '(') {
+        matches = partLength > 2 && isLetter(this.text.charAt(start + 1))
+          && isNotLineTerminator(this.text, start + 2);
+      } else if (c == ' ') {
+        matches = this.text.startsWith(" UT", start) && partLength == 3;
+      }
+    }
+    if (matches) {
+      setGroup(2, start, this.length);
+    }
+    return matches;
+  }
+
+  /**
+   * {@code (\w+|1/2) ?- ?(\d+)}
+   */
+  public boolean matchesUnitCivicNumber() {
+    int unitEnd = 0;
+    while (unitEnd < this.length && isWordChar(this.text.charAt(unitEnd))) {
+      unitEnd++;
+    }
+    if (unitEnd > 0 && matchesUnitCivicNumberNumber(unitEnd)) {
+      return true;
+    } else {
+      return this.text.startsWith("1/2") && matchesUnitCivicNumberNumber(3);
+    }
+  }
+
+  private boolean matchesUnitCivicNumberNumber(final int unitEnd) {
+    int i = unitEnd;
+    if (i < this.length && this.text.charAt(i) == ' ') {
+      i++;
+    }
+    if (i < this.length && this.text.charAt(i) == '-') {
+      i++;
+      if (i < this.length && this.text.charAt(i) == ' ') {
+        i++;
+      }
+      if (i < this.length && skipDigits(this.text, i) == this.length) {
+        setGroup(1, 0, unitEnd);
+        setGroup(2, i, this.length);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void setGroup(final int group, final int start, final int end) {
+    this.groupStarts[group] = start;
+    this.groupEnds[group] = end;
+  }
+
+  @Override
+  public String toString() {
+    return this.text;
+  }
+}
@@ -0,0 +1,52 @@
+package ca.bc.gov.gbasites.load.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.jeometry.common.exception.Exceptions;
+
+/**
+ * Calculate the SHA-256 hash of a file's content, used to check if a file has changed since the
+ * last run.
+ */
+public class FileDigest {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  public static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw Exceptions.wrap("SHA-256 not supported", e);
+    }
+  }
+
+  public static String sha256(final Path file) {
+    final MessageDigest digest = newSha256();
+    final byte[] buffer = new byte[65536];
+    try (
+      InputStream in = Files.newInputStream(file)) {
+      for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+        digest.update(buffer, 0, count);
+      }
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to calculate hash for: " + file, e);
+    }
+    return toHex(digest);
+  }
+
+  public static String toHex(final MessageDigest digest) {
+    final byte[] bytes = digest.digest();
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      final int value = bytes[i] & 0xff;
+      chars[i * 2] = HEX_DIGITS[value >>> 4];
+      chars[i * 2 + 1] = HEX_DIGITS[value & 0x0f];
+    }
+    return new String(chars);
+  }
+}
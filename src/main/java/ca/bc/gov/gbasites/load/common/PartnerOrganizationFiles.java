@@ -7,6 +7,7 @@ import ca.bc.gov.gba.itn.model.code.PartnerOrganizationProxy;
 import ca.bc.gov.gba.ui.StatisticsDialog;
 
 import com.revolsys.io.file.AtomicPathUpdator;
+import com.revolsys.util.Cancellable;
 
 public class PartnerOrganizationFiles implements CharSequence, PartnerOrganizationProxy {
 
@@ -59,11 +60,19 @@ public class PartnerOrganizationFiles implements CharSequence, PartnerOrganizati
     return this.partnerOrganization.length();
   }
 
-  public AtomicPathUpdator newPathUpdator(final DirectorySuffixAndExtension dirAndSuffix) {
-    return dirAndSuffix.newPathUpdator(this.dialog, this.baseDirectory, this.partnerOrganization,
+  /**
+   * Create a path updator that doesn't replace the target file if the cancellable was cancelled.
+   */
+  public AtomicPathUpdator newPathUpdator(final Cancellable cancellable,
+    final DirectorySuffixAndExtension dirAndSuffix) {
+    return dirAndSuffix.newPathUpdator(cancellable, this.baseDirectory, this.partnerOrganization,
       this.providerSuffix);
   }
 
+  public AtomicPathUpdator newPathUpdator(final DirectorySuffixAndExtension dirAndSuffix) {
+    return newPathUpdator(this.dialog, dirAndSuffix);
+  }
+
   @Override
   public CharSequence subSequence(final int start, final int end) {
     return this.partnerOrganization.subSequence(start, end);
@@ -0,0 +1,260 @@
+package ca.bc.gov.gbasites.load.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jeometry.common.logging.Logs;
+
+import ca.bc.gov.gba.ui.StatisticsDialog;
+import ca.bc.gov.gbasites.load.readsource.AbstractSourceReader;
+
+import com.revolsys.io.file.Paths;
+import com.revolsys.parallel.process.ProcessNetwork;
+
+/**
+ * Download the source data for the providers using a pool of download processes. The downloads
+ * are network bound so more processes are used than for converting.
+ *
+ * <ul>
+ * <li>The providers are downloaded in order of the duration of their last download (longest
+ * first) so that the slow providers don't start at the end of the run.</li>
+ * <li>Only {@link #setHostConnectionCount(int)} downloads are run at the same time for a server.
+ * If all the servers for the remaining providers are busy the process waits for a download to
+ * finish. Otherwise it takes the next provider for a server that isn't busy.</li>
+ * <li>Downloads that fail with an exception are retried with an exponential back-off. The
+ * previously downloaded file is only used if the last attempt fails.</li>
+ * </ul>
+ */
+public class ProviderDownloadScheduler {
+
+  private static final Path DURATIONS_FILE = ProviderSitePointConverter.PROVIDER_DIRECTORY
+    .resolve("ProviderDownloadDurations.properties");
+
+  private static final Object NO_HOST = new Object();
+
+  private final StatisticsDialog dialog;
+
+  private final List<ProviderSitePointConverter> converters = new ArrayList<>();
+
+  private final Map<Object, Integer> activeCountByHost = new HashMap<>();
+
+  private final Map<ProviderSitePointConverter, Object> hostByConverter = new HashMap<>();
+
+  private final Properties durations = new Properties();
+
+  private int threadCount = 24;
+
+  private int hostConnectionCount = 2;
+
+  private int retryCount = 3;
+
+  private long retryDelayMillis = 5000;
+
+  private int runningCount;
+
+  public ProviderDownloadScheduler(final StatisticsDialog dialog,
+    final Collection<ProviderSitePointConverter> converters) {
+    this.dialog = dialog;
+    readDurations();
+    for (final ProviderSitePointConverter converter : converters) {
+      this.converters.add(converter);
+      Object host = converter.getDownloadHost();
+      if (host == null) {
+        host = NO_HOST;
+      }
+      this.hostByConverter.put(converter, host);
+    }
+    this.converters.sort((converter1, converter2) -> {
+      final long duration1 = getDuration(converter1);
+      final long duration2 = getDuration(converter2);
+      return Long.compare(duration2, duration1);
+    });
+  }
+
+  /**
+   * Add the download processes to the process network.
+   *
+   * @param processes The process network.
+   * @param label The label for the process names.
+   */
+  public void addProcesses(final ProcessNetwork processes, final String label) {
+    if (!this.converters.isEmpty()) {
+      final int threadCount = Math.min(this.threadCount, this.converters.size());
+      this.runningCount = threadCount;
+      for (int i = 0; i < threadCount; i++) {
+        processes.addProcess("Provider " + label + " " + (i + 1), () -> {
+          try {
+            run(label);
+          } finally {
+            processFinished();
+          }
+        });
+      }
+    }
+  }
+
+  private void download(final ProviderSitePointConverter converter, final String label) {
+    final long startTime = System.currentTimeMillis();
+    for (int attempt = 1; !this.dialog.isCancelled(); attempt++) {
+      try {
+        final AbstractSourceReader reader = converter.newSourceReader(this.dialog);
+        if (reader != null) {
+          reader.setUseCachedFileOnError(attempt > this.retryCount);
+          reader.downloadData(true);
+        }
+        setDuration(converter, System.currentTimeMillis() - startTime);
+        return;
+      } catch (final Throwable e) {
+        if (attempt > this.retryCount) {
+          Logs.error(ProviderSitePointConverter.class,
+            "Error " + label + "\n" + converter.getPartnerOrganizationFileName(), e);
+          return;
+        } else {
+          final long delay = this.retryDelayMillis << attempt - 1;
+          Logs.warn(ProviderSitePointConverter.class,
+            "Retry " + label + " in " + delay / 1000 + "s\n"
+              + converter.getPartnerOrganizationFileName() + "\n" + e.getMessage());
+          try {
+            Thread.sleep(delay);
+          } catch (final InterruptedException e1) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  private long getDuration(final ProviderSitePointConverter converter) {
+    final String duration = this.durations
+      .getProperty(converter.getPartnerOrganizationFileName());
+    if (duration == null) {
+      // Download providers with no duration first as they may be slow
+      return Long.MAX_VALUE;
+    } else {
+      try {
+        return Long.parseLong(duration);
+      } catch (final NumberFormatException e) {
+        return Long.MAX_VALUE;
+      }
+    }
+  }
+
+  private Object getHost(final ProviderSitePointConverter converter) {
+    return this.hostByConverter.get(converter);
+  }
+
+  private synchronized void processFinished() {
+    this.runningCount--;
+    if (this.runningCount == 0) {
+      writeDurations();
+    }
+  }
+
+  private void readDurations() {
+    if (Files.exists(DURATIONS_FILE)) {
+      try (
+        InputStream in = Files.newInputStream(DURATIONS_FILE)) {
+        this.durations.load(in);
+      } catch (final IOException e) {
+        Logs.error(this, "Unable to read download durations: " + DURATIONS_FILE, e);
+      }
+    }
+  }
+
+  private synchronized void release(final Object host) {
+    final int activeCount = this.activeCountByHost.get(host);
+    if (activeCount == 1) {
+      this.activeCountByHost.remove(host);
+    } else {
+      this.activeCountByHost.put(host, activeCount - 1);
+    }
+    notifyAll();
+  }
+
+  private void run(final String label) {
+    while (!this.dialog.isCancelled()) {
+      final ProviderSitePointConverter converter = take();
+      if (converter == null) {
+        return;
+      } else {
+        final Object host = getHost(converter);
+        try {
+          download(converter, label);
+        } finally {
+          release(host);
+        }
+      }
+    }
+  }
+
+  private void setDuration(final ProviderSitePointConverter converter, final long duration) {
+    this.durations.setProperty(converter.getPartnerOrganizationFileName(),
+      Long.toString(duration));
+  }
+
+  public void setHostConnectionCount(final int hostConnectionCount) {
+    this.hostConnectionCount = hostConnectionCount;
+  }
+
+  public void setRetryCount(final int retryCount) {
+    this.retryCount = retryCount;
+  }
+
+  public void setRetryDelayMillis(final long retryDelayMillis) {
+    this.retryDelayMillis = retryDelayMillis;
+  }
+
+  public void setThreadCount(final int threadCount) {
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Take the next provider whose server has less than the maximum number of active downloads.
+   * Waits if all the remaining providers are for busy servers.
+   *
+   * @return The provider or null if there are no more providers or the dialog was cancelled.
+   */
+  private synchronized ProviderSitePointConverter take() {
+    while (!this.converters.isEmpty() && !this.dialog.isCancelled()) {
+      for (final Iterator<ProviderSitePointConverter> iterator = this.converters
+        .iterator(); iterator.hasNext();) {
+        final ProviderSitePointConverter converter = iterator.next();
+        final Object host = getHost(converter);
+        final int activeCount = this.activeCountByHost.getOrDefault(host, 0);
+        if (host == NO_HOST || activeCount < this.hostConnectionCount) {
+          iterator.remove();
+          this.activeCountByHost.put(host, activeCount + 1);
+          return converter;
+        }
+      }
+      try {
+        wait(1000);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private void writeDurations() {
+    Paths.createParentDirectories(DURATIONS_FILE);
+    try (
+      OutputStream out = Files.newOutputStream(DURATIONS_FILE)) {
+      this.durations.store(out, "Provider download durations (ms)");
+    } catch (final IOException e) {
+      Logs.error(this, "Unable to write download durations: " + DURATIONS_FILE, e);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package ca.bc.gov.gbasites.load.common;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
@@ -7,10 +8,15 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.jeometry.common.data.type.DataType;
+import org.jeometry.common.exception.Exceptions;
 import org.jeometry.common.logging.Logs;
 
 import ca.bc.gov.gba.controller.GbaConfig;
@@ -22,6 +28,7 @@ import ca.bc.gov.gbasites.controller.GbaSiteDatabase;
 import ca.bc.gov.gbasites.load.ImportSites;
 import ca.bc.gov.gbasites.load.convert.AbstractSiteConverter;
 import ca.bc.gov.gbasites.load.readsource.AbstractSourceReader;
+import ca.bc.gov.gbasites.load.readsource.SourceReaderFactory;
 import ca.bc.gov.gbasites.model.type.SitePoint;
 import ca.bc.gov.gbasites.model.type.code.FeatureStatus;
 
@@ -50,6 +57,8 @@ public class ProviderSitePointConverter extends BaseObjectWithProperties
 
   public static boolean calculateBoundary;
 
+  private static final int CONVERT_THREAD_COUNT = 4;
+
   public static final Map<String, Map<String, FeatureStatus>> featureStatusByLocalityAndFullAddress = new LinkedHashMap<>();
 
   public static final String LOCALITY = "Locality";
@@ -181,6 +190,10 @@ public class ProviderSitePointConverter extends BaseObjectWithProperties
   }
 
   public void convertData(final StatisticsDialog dialog) {
+    convertData(dialog, CONVERT_THREAD_COUNT);
+  }
+
+  private void convertData(final StatisticsDialog dialog, final int convertThreadCount) {
     if (this.converter == null) {
       Logs.error(this, "No site point converter for: " + this.partnerOrganization);
     } else {
@@ -191,24 +204,43 @@ public class ProviderSitePointConverter extends BaseObjectWithProperties
         .add("countPrefix", "P ") //
         .add("dialog", dialog) //
         .add("openData", this.openData) //
+        .add("convertThreadCount", convertThreadCount) //
       ;
       final AbstractSiteConverter converter = this.converter.apply(properties);
       converter.convertSourceRecords();
     }
   }
 
+  /**
+   * Convert the data and get the SHA-256 hash of each file in the {@link #PROVIDER_DIRECTORY}
+   * written by the conversion.
+   */
+  private Map<Path, String> convertDataHashes(final StatisticsDialog dialog,
+    final int convertThreadCount) {
+    // Whole seconds as some file systems only store the modified time in seconds
+    final long startTime = System.currentTimeMillis() / 1000 * 1000;
+    convertData(dialog, convertThreadCount);
+    final Map<Path, String> hashByPath = new TreeMap<>();
+    try (
+      Stream<Path> paths = Files.walk(PROVIDER_DIRECTORY)) {
+      paths.filter(Files::isRegularFile).forEach(path -> {
+        try {
+          if (Files.getLastModifiedTime(path).toMillis() >= startTime) {
+            hashByPath.put(PROVIDER_DIRECTORY.relativize(path), FileDigest.sha256(path));
+          }
+        } catch (final IOException e) {
+          throw Exceptions.wrap("Unable to read: " + path, e);
+        }
+      });
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to list: " + PROVIDER_DIRECTORY, e);
+    }
+    return hashByPath;
+  }
+
   public void downloadData(final StatisticsDialog dialog, final boolean downloadData) {
-    if (this.sourceReader == null) {
-      Logs.error(this, "No source reader for: " + this.partnerOrganization);
-    } else {
-      final PartnerOrganizationFiles partnerOrganizationFiles = newPartnerOrganizationFiles(dialog);
-      final MapEx properties = new LinkedHashMapEx() //
-        .add("baseDirectory", PROVIDER_DIRECTORY) //
-        .add("partnerOrganizationFiles", partnerOrganizationFiles) //
-        .add("countPrefix", "P ") //
-        .add("dialog", dialog) //
-      ;
-      final AbstractSourceReader readerProcess = this.sourceReader.apply(properties);
+    final AbstractSourceReader readerProcess = newSourceReader(dialog);
+    if (readerProcess != null) {
       readerProcess.downloadData(downloadData);
     }
   }
@@ -222,6 +254,20 @@ public class ProviderSitePointConverter extends BaseObjectWithProperties
     return this.partnerOrganization;
   }
 
+  /**
+   * Get the host name of the server the source data is downloaded from. The host is read from the
+   * serverUrl in the source reader config so a reader doesn't need to be created.
+   *
+   * @return The host name or null if the data isn't downloaded from a server.
+   */
+  public String getDownloadHost() {
+    if (this.sourceReader instanceof SourceReaderFactory) {
+      return ((SourceReaderFactory<?>)this.sourceReader).getDownloadHost();
+    } else {
+      return null;
+    }
+  }
+
   public boolean isEnabled() {
     return this.enabled;
   }
@@ -234,6 +280,22 @@ public class ProviderSitePointConverter extends BaseObjectWithProperties
     return new PartnerOrganizationFiles(dialog, this.partnerOrganization, PROVIDER_DIRECTORY, "");
   }
 
+  public AbstractSourceReader newSourceReader(final StatisticsDialog dialog) {
+    if (this.sourceReader == null) {
+      Logs.error(this, "No source reader for: " + this.partnerOrganization);
+      return null;
+    } else {
+      final PartnerOrganizationFiles partnerOrganizationFiles = newPartnerOrganizationFiles(dialog);
+      final MapEx properties = new LinkedHashMapEx() //
+        .add("baseDirectory", PROVIDER_DIRECTORY) //
+        .add("partnerOrganizationFiles", partnerOrganizationFiles) //
+        .add("countPrefix", "P ") //
+        .add("dialog", dialog) //
+      ;
+      return this.sourceReader.apply(properties);
+    }
+  }
+
   public void setConverter(final Function<MapEx, AbstractSiteConverter> converter) {
     this.converter = converter;
   }
@@ -259,4 +321,31 @@ public class ProviderSitePointConverter extends BaseObjectWithProperties
   public String toString() {
     return this.dataProvider;
   }
+
+  /**
+   * Check that converting the data with {@link #CONVERT_THREAD_COUNT} convert threads writes the
+   * same files as converting it with one thread. The data is converted with one thread and then
+   * with {@link #CONVERT_THREAD_COUNT} threads and the SHA-256 hash of each file written is
+   * compared. No other provider can be converted at the same time.
+   *
+   * @param dialog The dialog.
+   * @return True if the files are the same, the differences are logged.
+   */
+  public boolean verifyConvertThreadCount(final StatisticsDialog dialog) {
+    final Map<Path, String> sequentialHashByPath = convertDataHashes(dialog, 1);
+    final Map<Path, String> parallelHashByPath = convertDataHashes(dialog, CONVERT_THREAD_COUNT);
+    if (sequentialHashByPath.equals(parallelHashByPath)) {
+      return true;
+    } else {
+      final Set<Path> paths = new TreeSet<>(sequentialHashByPath.keySet());
+      paths.addAll(parallelHashByPath.keySet());
+      for (final Path path : paths) {
+        if (!Objects.equals(sequentialHashByPath.get(path), parallelHashByPath.get(path))) {
+          Logs.error(this, "Different output with " + CONVERT_THREAD_COUNT
+            + " convert threads than 1 thread: " + path);
+        }
+      }
+      return false;
+    }
+  }
 }
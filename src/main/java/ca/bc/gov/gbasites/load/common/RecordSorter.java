@@ -0,0 +1,220 @@
+package ca.bc.gov.gbasites.load.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.jeometry.common.exception.Exceptions;
+
+import com.revolsys.io.BaseCloseable;
+import com.revolsys.io.file.Paths;
+import com.revolsys.record.Record;
+import com.revolsys.record.io.RecordReader;
+import com.revolsys.record.io.RecordWriter;
+import com.revolsys.record.schema.RecordDefinition;
+import com.revolsys.record.schema.RecordDefinitionProxy;
+
+/**
+ * Bounded memory sort of records. Records are buffered in memory until the maximum record count
+ * is reached, then the sorted buffer is written to a temporary file. The sorted runs are merged
+ * when the records are iterated. The sort is stable, records that compare equal are returned in
+ * the order they were added.
+ */
+public class RecordSorter implements BaseCloseable, Iterable<Record> {
+
+  private static class Run {
+
+    private final int index;
+
+    private final Iterator<Record> iterator;
+
+    private Record record;
+
+    private Run(final int index, final Iterator<Record> iterator) {
+      this.index = index;
+      this.iterator = iterator;
+    }
+
+    private boolean next() {
+      if (this.iterator.hasNext()) {
+        this.record = this.iterator.next();
+        return true;
+      } else {
+        this.record = null;
+        return false;
+      }
+    }
+  }
+
+  private final List<Record> records = new ArrayList<>();
+
+  private final List<Path> runFiles = new ArrayList<>();
+
+  private final List<RecordReader> readers = new ArrayList<>();
+
+  private final RecordDefinitionProxy recordDefinition;
+
+  private final Comparator<Record> comparator;
+
+  private final int maxRecordCount;
+
+  private final Path tempDirectory;
+
+  private int recordCount;
+
+  private RecordDefinition runRecordDefinition;
+
+  public RecordSorter(final RecordDefinitionProxy recordDefinition,
+    final Comparator<Record> comparator, final int maxRecordCount, final Path tempDirectory) {
+    this.recordDefinition = recordDefinition;
+    this.comparator = comparator;
+    this.maxRecordCount = Math.max(1, maxRecordCount);
+    this.tempDirectory = tempDirectory;
+  }
+
+  public void addRecord(final Record record) {
+    this.records.add(record);
+    this.recordCount++;
+    if (this.records.size() >= this.maxRecordCount) {
+      writeRun();
+    }
+  }
+
+  public void addRecords(final Iterable<? extends Record> records) {
+    for (final Record record : records) {
+      addRecord(record);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.records.clear();
+    for (final RecordReader reader : this.readers) {
+      reader.close();
+    }
+    this.readers.clear();
+    for (final Path runFile : this.runFiles) {
+      Paths.deleteDirectories(runFile);
+      Paths.deleteDirectories(runFile.resolveSibling(Paths.getBaseName(runFile) + ".prj"));
+    }
+    this.runFiles.clear();
+  }
+
+  /**
+   * Get the number of records in memory that haven't been written to a run file.
+   */
+  public int getMemoryRecordCount() {
+    return this.records.size();
+  }
+
+  public int getRecordCount() {
+    return this.recordCount;
+  }
+
+  public int getRunCount() {
+    return this.runFiles.size();
+  }
+
+  /**
+   * Iterate over the records in sorted order. No more records can be added once the iteration
+   * has started.
+   */
+  @Override
+  public Iterator<Record> iterator() {
+    this.records.sort(this.comparator);
+    if (this.runFiles.isEmpty()) {
+      return this.records.iterator();
+    } else {
+      final PriorityQueue<Run> runs = new PriorityQueue<>((run1, run2) -> {
+        final int compare = this.comparator.compare(run1.record, run2.record);
+        if (compare == 0) {
+          return Integer.compare(run1.index, run2.index);
+        } else {
+          return compare;
+        }
+      });
+      for (final Path runFile : this.runFiles) {
+        final RecordReader reader = RecordReader.newRecordReader(runFile);
+        this.readers.add(reader);
+        Iterator<Record> iterator = reader.iterator();
+        final RecordDefinition runRecordDefinition = this.runRecordDefinition;
+        if (runRecordDefinition != null) {
+          final Iterator<Record> runIterator = iterator;
+          iterator = new Iterator<Record>() {
+            @Override
+            public boolean hasNext() {
+              return runIterator.hasNext();
+            }
+
+            @Override
+            public Record next() {
+              return runRecordDefinition.newRecord(runIterator.next());
+            }
+          };
+        }
+        final Run run = new Run(this.readers.size(), iterator);
+        if (run.next()) {
+          runs.add(run);
+        }
+      }
+      final Run memoryRun = new Run(this.readers.size() + 1, this.records.iterator());
+      if (memoryRun.next()) {
+        runs.add(memoryRun);
+      }
+      return new Iterator<Record>() {
+        @Override
+        public boolean hasNext() {
+          return !runs.isEmpty();
+        }
+
+        @Override
+        public Record next() {
+          final Run run = runs.poll();
+          if (run == null) {
+            throw new NoSuchElementException();
+          } else {
+            final Record record = run.record;
+            if (run.next()) {
+              runs.add(run);
+            }
+            return record;
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * Set the record definition used to convert the records read from the run files. The values
+   * are converted to the field types so they compare the same as the records kept in memory.
+   */
+  public void setRunRecordDefinition(final RecordDefinition runRecordDefinition) {
+    this.runRecordDefinition = runRecordDefinition;
+  }
+
+  /**
+   * Write the records in memory to a new sorted run file.
+   */
+  public void writeRun() {
+    if (!this.records.isEmpty()) {
+      this.records.sort(this.comparator);
+      try {
+        final Path runFile = Files.createTempFile(this.tempDirectory, "_sort", ".tsv");
+        this.runFiles.add(runFile);
+        try (
+          RecordWriter writer = RecordWriter.newRecordWriter(this.recordDefinition, runFile)) {
+          writer.writeAll(this.records);
+        }
+      } catch (final IOException e) {
+        throw Exceptions.wrap("Unable to create sort file in: " + this.tempDirectory, e);
+      }
+      this.records.clear();
+    }
+  }
+}
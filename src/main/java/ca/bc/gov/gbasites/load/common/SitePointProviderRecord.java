@@ -1,7 +1,6 @@
 package ca.bc.gov.gbasites.load.common;
 
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,23 +47,6 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
     "GOLF COURSE", "(PARK)", "COMRD", "GREENSPACE", "RC GARNETT", "FUTURE RM", "GREEN", "GREENWAY",
     "TBA", "CORNER");
 
-  private static final Pattern NUMBER_RANGE_PATTERN = Pattern
-    .compile("(\\d+)\\s?([,-/])\\s?(\\d+)");
-
-  private static final Pattern NUMBER_AND_SUFFIX_PATTERN = Pattern
-    .compile("(\\d+)\\s*[,]\\s*(\\d+)[-]?([A-Z])");
-
-  private static final Pattern CIVIC_NUMBER_UNIT_PATTERN = Pattern
-    .compile("(\\d+)(?: ?-|/| #|-#)?(\\d+)");
-
-  private static final Pattern CIVIC_NUMBER_UNIT_RANGE_CIVIC_NUMBER_UNIT_RANGE_PATTERN = Pattern
-    .compile("(\\d+)([A-Z])\\s*-\\s*(\\d+)([A-Z])");
-
-  private static final Pattern UNIT_CIVIC_NUMBER_PATTERN = Pattern.compile("(\\w+|1/2) ?- ?(\\d+)");
-
-  private static final Pattern CIVIC_NUMBER_SUFFIX_PATTERN = Pattern
-    .compile("(\\d+)(?:[- ])?([A-Z]|\\d+[A-Z]?| UT|\\(?[A-Z].+)");
-
   public static final char[] WORD_SEPARATORS = new char[] {
     ' ', '-'
   };
@@ -194,23 +176,23 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
 
   private boolean fixCivicNumber(String streetNumber, final boolean hasUnitField,
     final boolean civicNumberIncludesUnitPrefix) {
-    if (streetNumber.matches("\\d*\\.0*")) {
+    if (CivicNumberTokenizer.isDecimalWithZeroFraction(streetNumber)) {
       final Integer civicNumber = Integer
         .valueOf(streetNumber.substring(0, streetNumber.indexOf('.')));
       return setCivicNumber(civicNumber);
-    } else if (streetNumber.matches("\\(\\d+\\)")) {
+    } else if (CivicNumberTokenizer.isNumberInParentheses(streetNumber)) {
       final Integer civicNumber = Integer
         .valueOf(streetNumber.substring(1, streetNumber.length() - 1));
       return setCivicNumber(civicNumber);
     } else {
-      if (streetNumber.matches("\\(.+\\)")) {
+      if (CivicNumberTokenizer.isInParentheses(streetNumber)) {
         streetNumber = streetNumber.substring(1, streetNumber.length() - 1);
       }
-      final Matcher numberRangeMatcher = NUMBER_RANGE_PATTERN.matcher(streetNumber);
-      if (numberRangeMatcher.matches()) {
-        final int number1 = Integer.parseInt(numberRangeMatcher.group(1));
-        String separator = numberRangeMatcher.group(2);
-        final int number2 = Integer.parseInt(numberRangeMatcher.group(3));
+      final CivicNumberTokenizer tokenizer = new CivicNumberTokenizer(streetNumber);
+      if (tokenizer.matchesNumberRange()) {
+        final int number1 = tokenizer.groupInt(1);
+        String separator = tokenizer.group(2);
+        final int number2 = tokenizer.groupInt(3);
         if (civicNumberIncludesUnitPrefix) {
           addUnitDescriptor(number1);
           return setCivicNumber(number2);
@@ -256,15 +238,10 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
           }
         }
       } else {
-        if (fixCivicNumberListWithSuffix(streetNumber)) {
+        if (fixCivicNumberListWithSuffix(tokenizer)) {
           return true;
-        } else if (streetNumber.matches("\\d+(\\s*[,/]\\s*\\d+)+")) {
-          final String[] parts = streetNumber.split("\\s*[,/]\\s*");
-          final Set<Integer> numbers = new TreeSet<>();
-          for (final String part : parts) {
-            final Integer number = Integer.valueOf(part);
-            numbers.add(number);
-          }
+        } else if (tokenizer.matchesNumberList()) {
+          final Set<Integer> numbers = tokenizer.getNumbers();
           if (numbers.size() == 1) {
             addError("CIVIC_NUMBER has duplicate value in list");
             final Integer civicNumber = CollectionUtil.get(numbers, 0);
@@ -276,90 +253,56 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
             return setCivicNumberRange(civicNumberRange);
           }
         } else {
-          final Matcher civicUnitNumberMatcher = CIVIC_NUMBER_UNIT_PATTERN.matcher(streetNumber);
-          if (civicUnitNumberMatcher.matches()) {
+          if (tokenizer.matchesCivicNumberUnit()) {
             addWarningOrError(CIVIC_NUMBER_INCLUDES_UNIT_DESCRIPTOR_SUFFIX, hasUnitField);
-            addUnitDescriptor(civicUnitNumberMatcher.group(2));
-            return setCivicNumber(Integer.valueOf(civicUnitNumberMatcher.group(1)));
-          } else {
-            final Matcher unitCivicNumberMatcher = UNIT_CIVIC_NUMBER_PATTERN.matcher(streetNumber);
-            if (unitCivicNumberMatcher.matches()) {
-              addWarningOrError(CIVIC_NUMBER_INCLUDES_UNIT_DESCRIPTOR_PREFIX, hasUnitField);
-              addUnitDescriptor(unitCivicNumberMatcher.group(1));
-              final Integer civicNumber = Integer.valueOf(unitCivicNumberMatcher.group(2));
-              return setCivicNumber(civicNumber);
+            addUnitDescriptor(tokenizer.group(2));
+            return setCivicNumber(Integer.valueOf(tokenizer.group(1)));
+          } else if (tokenizer.matchesUnitCivicNumber()) {
+            addWarningOrError(CIVIC_NUMBER_INCLUDES_UNIT_DESCRIPTOR_PREFIX, hasUnitField);
+            addUnitDescriptor(tokenizer.group(1));
+            final Integer civicNumber = Integer.valueOf(tokenizer.group(2));
+            return setCivicNumber(civicNumber);
+          } else if (tokenizer.matchesCivicNumberSuffix()) {
+            final String suffixPart = tokenizer.group(2);
+            if (Numbers.isNumber(suffixPart) || suffixPart.length() > 1) {
+              addUnitDescriptor(suffixPart);
             } else {
-              final Matcher civicNumberSuffixMatcher = CIVIC_NUMBER_SUFFIX_PATTERN
-                .matcher(streetNumber);
-              if (civicNumberSuffixMatcher.matches()) {
-                final String numberGroup = civicNumberSuffixMatcher.group(1);
-                if (numberGroup == null) {
-                  return false;
-                } else {
-                  final String suffixPart = civicNumberSuffixMatcher.group(2);
-                  if (Numbers.isNumber(suffixPart) || suffixPart.length() > 1) {
-                    addUnitDescriptor(suffixPart);
-                  } else {
-                    if (hasValue(CIVIC_NUMBER_SUFFIX)) {
-                      throw IgnoreSiteException
-                        .error("Ignore CIVIC_NUMBER_SUFFIX != null and CIVIC_NUMBER has a suffix");
-                    }
-                    setCivicNumberSuffix(suffixPart);
-                  }
-                  return setCivicNumber(Integer.valueOf(numberGroup));
-                }
-              } else {
-                final Matcher civicNumberUnitcivicNumberUnitRangeMatcher = CIVIC_NUMBER_UNIT_RANGE_CIVIC_NUMBER_UNIT_RANGE_PATTERN
-                  .matcher(streetNumber);
-                if (civicNumberUnitcivicNumberUnitRangeMatcher.matches()) {
-                  final int civicNumber1 = Integer
-                    .valueOf(civicNumberUnitcivicNumberUnitRangeMatcher.group(1));
-                  final String civicNumberSuffix1 = civicNumberUnitcivicNumberUnitRangeMatcher
-                    .group(2);
-                  final int civicNumber2 = Integer
-                    .valueOf(civicNumberUnitcivicNumberUnitRangeMatcher.group(3));
-                  final String civicNumberSuffix2 = civicNumberUnitcivicNumberUnitRangeMatcher
-                    .group(4);
-                  if (civicNumber1 == civicNumber2) {
-                    addError("CIVIC_NUMBER includes unit range");
-                    addUnitDescriptor(civicNumberSuffix1 + "," + civicNumberSuffix2);
-                    return setCivicNumber(civicNumber1);
-                  } else {
-                    throw IgnoreSiteException.error("Ignore CIVIC_NUMBER is not numeric");
-                  }
-                } else {
-                  final Matcher civicNumberUnitRangeMatcher = CIVIC_NUMBER_UNIT_RANGE_CIVIC_NUMBER_UNIT_RANGE_PATTERN
-                    .matcher(streetNumber);
-                  if (civicNumberUnitRangeMatcher.matches()) {
-                    addError("CIVIC_NUMBER includes unit range");
-                    final String civicNumberSuffix1 = civicNumberUnitRangeMatcher.group(2);
-                    final String civicNumberSuffix2 = civicNumberUnitRangeMatcher.group(3);
-                    addUnitDescriptor(civicNumberSuffix1 + "," + civicNumberSuffix2);
-                    final Integer civicNumber = Integer
-                      .valueOf(civicNumberUnitRangeMatcher.group(1));
-                    return setCivicNumber(civicNumber);
-                  } else {
-                    throw IgnoreSiteException.error("Ignore CIVIC_NUMBER is not numeric");
-                  }
-                }
+              if (hasValue(CIVIC_NUMBER_SUFFIX)) {
+                throw IgnoreSiteException
+                  .error("Ignore CIVIC_NUMBER_SUFFIX != null and CIVIC_NUMBER has a suffix");
               }
+              setCivicNumberSuffix(suffixPart);
+            }
+            return setCivicNumber(Integer.valueOf(tokenizer.group(1)));
+          } else if (tokenizer.matchesCivicNumberUnitRange()) {
+            final int civicNumber1 = tokenizer.groupInt(1);
+            final String civicNumberSuffix1 = tokenizer.group(2);
+            final int civicNumber2 = tokenizer.groupInt(3);
+            final String civicNumberSuffix2 = tokenizer.group(4);
+            if (civicNumber1 == civicNumber2) {
+              addError("CIVIC_NUMBER includes unit range");
+              addUnitDescriptor(civicNumberSuffix1 + "," + civicNumberSuffix2);
+              return setCivicNumber(civicNumber1);
+            } else {
+              throw IgnoreSiteException.error("Ignore CIVIC_NUMBER is not numeric");
             }
+          } else {
+            throw IgnoreSiteException.error("Ignore CIVIC_NUMBER is not numeric");
           }
         }
       }
     }
   }
 
-  private boolean fixCivicNumberListWithSuffix(final String streetNumber) {
-    final Matcher matcher = NUMBER_AND_SUFFIX_PATTERN.matcher(streetNumber);
-    if (matcher.matches()) {
-      final int number1 = Integer.parseInt(matcher.group(1));
-      final int number2 = Integer.parseInt(matcher.group(2));
-      final String suffix = matcher.group(3);
+  private boolean fixCivicNumberListWithSuffix(final CivicNumberTokenizer tokenizer) {
+    if (tokenizer.matchesNumberListWithSuffix()) {
+      final int number1 = tokenizer.groupInt(1);
+      final int number2 = tokenizer.groupInt(2);
+      final String suffix = tokenizer.group(3);
 
       if (number1 == number2) {
         addWarningCount("CIVIC_NUMBER is a list with suffix");
-        replaceWordInFullAddress(streetNumber, "," + suffix + " " + number1);
+        replaceWordInFullAddress(tokenizer.toString(), "," + suffix + " " + number1);
         setCivicNumber(number1);
         setUnitDescriptor("," + suffix);
         return true;
@@ -405,7 +348,7 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
         Debug.noOp();
       }
     }
-    if (civicNumberSuffix.matches("([A-Z]|1/2)")) {
+    if (CivicNumberTokenizer.isSuffix(civicNumberSuffix)) {
       return setCivicNumberSuffix(civicNumberSuffix);
     } else if (civicNumberSuffix.equals("A&B")) {
       replaceWordInFullAddress("A&B", "A,B");
@@ -419,7 +362,7 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
       clearCivicNumberSuffix();
       addWarningCount("CIVIC_NUMBER_SUFFIX is UNIT_DESCRIPTOR");
       return true;
-    } else if (civicNumberSuffix.matches("[A-Z0-9]+-[A-Z0-9]+")) {
+    } else if (CivicNumberTokenizer.isUnitRange(civicNumberSuffix)) {
       addUnitDescriptor(civicNumberSuffix);
       clearCivicNumberSuffix();
       addWarningCount("CIVIC_NUMBER_SUFFIX is UNIT_DESCRIPTOR range");
@@ -532,12 +475,14 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
       if (streetNumber.charAt(0) == '(' && streetNumber.endsWith(")")) {
         streetNumber = streetNumber.substring(1, streetNumber.length() - 1);
       }
-      try {
-        final int number = Integer.parseInt(streetNumber);
-        return setCivicNumber(number);
-      } catch (final RuntimeException e) {
-        return fixCivicNumber(streetNumber, hasUnitField, civicNumberIncludesUnitPrefix);
+      if (CivicNumberTokenizer.isInteger(streetNumber)) {
+        try {
+          final int number = Integer.parseInt(streetNumber);
+          return setCivicNumber(number);
+        } catch (final RuntimeException e) {
+        }
       }
+      return fixCivicNumber(streetNumber, hasUnitField, civicNumberIncludesUnitPrefix);
     } else {
       return clearCivicNumber();
     }
@@ -549,7 +494,7 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
 
   public boolean setCivicNumberSuffix(final String civicNumberSuffix) {
     if (Property.hasValue(civicNumberSuffix)) {
-      if (civicNumberSuffix.matches("([A-Z]|1/2)")) {
+      if (CivicNumberTokenizer.isSuffix(civicNumberSuffix)) {
         return setValue(CIVIC_NUMBER_SUFFIX, civicNumberSuffix);
       } else {
         return fixCivicNumberSuffix(civicNumberSuffix);
@@ -593,10 +538,10 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
     if (Property.hasValue(postalCode)) {
       boolean valid = false;
       postalCode = postalCode.toUpperCase().trim();
-      if (postalCode.length() == 6 && postalCode.matches("[A-Z]\\d[A-Z]\\d[A-Z]\\d")) {
+      if (CivicNumberTokenizer.isPostalCode(postalCode, false)) {
         valid = true;
         postalCode = postalCode.substring(0, 3) + " " + postalCode.substring(3);
-      } else if (postalCode.length() == 7 && postalCode.matches("[A-Z]\\d[A-Z] \\d[A-Z]\\d")) {
+      } else if (CivicNumberTokenizer.isPostalCode(postalCode, true)) {
         valid = true;
       }
       if (valid) {
@@ -745,12 +690,10 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
                 }
               }
             } else if (hasValue(CIVIC_NUMBER)) {
-              final Matcher civicNumberSuffixMatcher = CIVIC_NUMBER_SUFFIX_PATTERN
-                .matcher(numberPart);
-              if (civicNumberSuffixMatcher.matches()) {
-                final String numberGroup = civicNumberSuffixMatcher.group(1);
-                if (getCivicNumber() == Integer.parseInt(numberGroup)) {
-                  final String suffixPart = civicNumberSuffixMatcher.group(2);
+              final CivicNumberTokenizer tokenizer = new CivicNumberTokenizer(numberPart);
+              if (tokenizer.matchesCivicNumberSuffix()) {
+                if (getCivicNumber() == tokenizer.groupInt(1)) {
+                  final String suffixPart = tokenizer.group(2);
                   if (Numbers.isNumber(suffixPart) || suffixPart.length() > 1) {
                     setUnitDescriptor(suffixPart);
                     addError("FULL_ADDRESS has extra UNIT_DESCRIPTOR");
@@ -873,7 +816,7 @@ public class SitePointProviderRecord extends DelegatingRecord implements SitePoi
         .equalsIgnoreCase(unitDescriptor + "-" + civicNumberString + " " + compareStreetName)) {
         return true;
       } else if (fullAddress.equals(civicNumberString + unitDescriptor + " " + compareStreetName)) {
-        if (unitDescriptor.matches("([A-Z]|1/2)")) {
+        if (CivicNumberTokenizer.isSuffix(unitDescriptor)) {
           setCivicNumberSuffix(unitDescriptor);
           clearUnitDescriptor();
         }
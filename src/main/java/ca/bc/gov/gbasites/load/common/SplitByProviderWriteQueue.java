@@ -0,0 +1,120 @@
+package ca.bc.gov.gbasites.load.common;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.revolsys.parallel.process.ProcessNetwork;
+import com.revolsys.record.Record;
+
+/**
+ * Write the records for the {@link SplitByProviderWriter}s using a fixed number of write
+ * processes. Each writer is assigned to one write process so the records for a provider are
+ * written in the order they were read. The records are sent to the write processes in batches
+ * through {@link BatchQueue}s so the reader can't get too far ahead of the writers.
+ */
+public class SplitByProviderWriteQueue {
+
+  private static class Batch {
+    private final SplitByProviderWriter writer;
+
+    private final List<Record> records;
+
+    private Batch(final SplitByProviderWriter writer, final List<Record> records) {
+      this.writer = writer;
+      this.records = records;
+    }
+  }
+
+  private final List<BatchQueue<Batch>> queues;
+
+  private final Map<SplitByProviderWriter, List<Record>> recordsByWriter = new IdentityHashMap<>();
+
+  private final Map<SplitByProviderWriter, BatchQueue<Batch>> queueByWriter = new IdentityHashMap<>();
+
+  public SplitByProviderWriteQueue(final int threadCount) {
+    this.queues = BatchQueue.newQueues(threadCount, "Error writing records");
+  }
+
+  /**
+   * Add a process to the network for each of the write threads.
+   *
+   * @param processNetwork The process network.
+   * @param name The prefix for the process names.
+   */
+  public void addProcesses(final ProcessNetwork processNetwork, final String name) {
+    for (int i = 0; i < this.queues.size(); i++) {
+      final BatchQueue<Batch> queue = this.queues.get(i);
+      processNetwork.addProcess(name + " Write " + (i + 1), () -> queue.consume(batch -> {
+        for (final Record record : batch.records) {
+          batch.writer.writeRecord(record);
+        }
+      }));
+    }
+  }
+
+  /**
+   * Send any remaining records and stop the write processes. Must be called from a finally block
+   * by the process that called {@link #writeRecord(SplitByProviderWriter, Record)}.
+   */
+  public void finish() {
+    try {
+      if (!isError()) {
+        for (final Entry<SplitByProviderWriter, List<Record>> entry : this.recordsByWriter
+          .entrySet()) {
+          final List<Record> records = entry.getValue();
+          if (!records.isEmpty()) {
+            final SplitByProviderWriter writer = entry.getKey();
+            this.queueByWriter.get(writer).put(new Batch(writer, records));
+          }
+        }
+      }
+    } finally {
+      this.recordsByWriter.clear();
+      for (final BatchQueue<Batch> queue : this.queues) {
+        queue.finish();
+      }
+    }
+  }
+
+  public Throwable getError() {
+    return this.queues.get(0).getError();
+  }
+
+  public boolean isError() {
+    return this.queues.get(0).isError();
+  }
+
+  /**
+   * Set the error from the read process so the write processes stop.
+   *
+   * @param e The error.
+   */
+  public void setError(final Throwable e) {
+    this.queues.get(0).setError(e);
+  }
+
+  /**
+   * Throw the error from the read or write processes if there was one.
+   */
+  public void throwError() {
+    this.queues.get(0).throwError();
+  }
+
+  public void writeRecord(final SplitByProviderWriter writer, final Record record) {
+    List<Record> records = this.recordsByWriter.get(writer);
+    if (records == null) {
+      records = new ArrayList<>(BatchQueue.BATCH_SIZE);
+      this.recordsByWriter.put(writer, records);
+      final int queueIndex = this.queueByWriter.size() % this.queues.size();
+      this.queueByWriter.put(writer, this.queues.get(queueIndex));
+    }
+    records.add(record);
+    if (records.size() >= BatchQueue.BATCH_SIZE) {
+      this.queueByWriter.get(writer).put(new Batch(writer, records));
+      this.recordsByWriter.put(writer, new ArrayList<>(BatchQueue.BATCH_SIZE));
+    }
+  }
+}
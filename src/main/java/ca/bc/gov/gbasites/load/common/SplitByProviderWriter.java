@@ -2,13 +2,13 @@ package ca.bc.gov.gbasites.load.common;
 
 import java.io.Closeable;
 
-import ca.bc.gov.gba.ui.StatisticsDialog;
 import ca.bc.gov.gbasites.load.ImportSites;
 
 import com.revolsys.io.file.AtomicPathUpdator;
 import com.revolsys.record.Record;
 import com.revolsys.record.io.RecordWriter;
 import com.revolsys.record.schema.RecordDefinitionProxy;
+import com.revolsys.util.Cancellable;
 import com.revolsys.util.Counter;
 
 public class SplitByProviderWriter implements Closeable {
@@ -21,12 +21,16 @@ public class SplitByProviderWriter implements Closeable {
 
   private final AtomicPathUpdator pathUpdator;
 
-  public SplitByProviderWriter(final StatisticsDialog dialog, final String dataProvider,
+  /**
+   * @param cancellable The file isn't replaced when the writer is closed if this was cancelled.
+   */
+  public SplitByProviderWriter(final Cancellable cancellable, final String dataProvider,
     final Counter counter, final PartnerOrganizationFiles partnerOrganizationFiles,
     final RecordDefinitionProxy recordDefinition) {
     this.dataProvider = dataProvider;
     this.counter = counter;
-    this.pathUpdator = partnerOrganizationFiles.newPathUpdator(ImportSites.SOURCE_BY_PROVIDER);
+    this.pathUpdator = partnerOrganizationFiles.newPathUpdator(cancellable,
+      ImportSites.SOURCE_BY_PROVIDER);
     this.recordWriter = RecordWriter.newRecordWriter(recordDefinition, this.pathUpdator.getPath());
     this.recordWriter.setProperty("useQuotes", false);
   }
@@ -1,7 +1,9 @@
 package ca.bc.gov.gbasites.load.common;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.jeometry.common.data.identifier.Identifier;
 
@@ -23,6 +25,12 @@ public class StructuredNameMapping {
 
   private String message = STREET_NAME_NOT_FOUND;
 
+  /**
+   * The names already looked up in {@link #STRUCTURED_NAMES} that didn't match. Many of the
+   * rewrites don't change the name, so the same name would be looked up again.
+   */
+  private Set<String> notFoundNames;
+
   public StructuredNameMapping(final String originalStructuredName, final String structuredName) {
     this.originalStructuredName = originalStructuredName;
     setStructuredName(STREET_NAME_NOT_FOUND, true, structuredName);
@@ -127,6 +135,17 @@ public class StructuredNameMapping {
     }
   }
 
+  /**
+   * Copy the result from the mapping for the same name.
+   *
+   * @param mapping The mapping.
+   */
+  public void setMapping(final StructuredNameMapping mapping) {
+    this.structuredName = mapping.structuredName;
+    this.structuredNameId = mapping.structuredNameId;
+    this.message = mapping.message;
+  }
+
   public boolean setStructuredName(final String message, final boolean forceName,
     final Object... nameParts) {
     final String name = Strings.toString(" ", nameParts);
@@ -142,8 +161,17 @@ public class StructuredNameMapping {
   public boolean setStructuredName(final String message, final boolean forceName,
     String structuredName) {
     structuredName = Strings.cleanWhitespace(structuredName);
-    final Identifier structuredNameId = STRUCTURED_NAMES
-      .getIdentifier(Collections.singletonList(structuredName), false);
+    Identifier structuredNameId = null;
+    if (this.notFoundNames == null || !this.notFoundNames.contains(structuredName)) {
+      structuredNameId = STRUCTURED_NAMES.getIdentifier(Collections.singletonList(structuredName),
+        false);
+      if (structuredNameId == null) {
+        if (this.notFoundNames == null) {
+          this.notFoundNames = new HashSet<>();
+        }
+        this.notFoundNames.add(structuredName);
+      }
+    }
     if (setStructuredNameId(structuredNameId, message)) {
       return true;
     } else {
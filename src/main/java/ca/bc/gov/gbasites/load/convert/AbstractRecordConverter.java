@@ -1,6 +1,8 @@
 package ca.bc.gov.gbasites.load.convert;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jeometry.common.data.identifier.Identifier;
 import org.jeometry.common.logging.Logs;
@@ -31,6 +33,22 @@ import com.revolsys.util.Counter;
 public abstract class AbstractRecordConverter<R extends Record> extends BaseObjectWithProperties
   implements Cancellable, MapSerializer, PartnerOrganizationProxy {
 
+  /**
+   * The source record and locality for the record being converted on a convert thread.
+   */
+  private static class ConvertState {
+    private Identifier localityId;
+
+    private String localityName;
+
+    private Record sourceRecord;
+  }
+
+  /**
+   * The actions recorded while converting a record on a convert thread.
+   */
+  private static final ThreadLocal<List<Runnable>> DEFERRED_ACTIONS = new ThreadLocal<>();
+
   protected PartnerOrganizationFiles partnerOrganizationFiles;
 
   protected Counter convertCounter;
@@ -57,25 +75,44 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
 
   protected Identifier localityId;
 
+  private final ThreadLocal<ConvertState> convertState = new ThreadLocal<>();
+
+  private int convertThreadCount = 1;
+
+  /**
+   * Run an action that changes the logs, counts or other shared state. When converting a record
+   * on a convert thread the action is recorded and run later in the order the records were read.
+   *
+   * @param action The action.
+   */
+  protected void addAction(final Runnable action) {
+    final List<Runnable> actions = DEFERRED_ACTIONS.get();
+    if (actions == null) {
+      action.run();
+    } else {
+      actions.add(action);
+    }
+  }
+
   public void addError(final Record record, final String message) {
-    this.dialog.addLabelCount(CountNames.ERROR, message, CountNames.ERROR);
+    addAction(() -> this.dialog.addLabelCount(CountNames.ERROR, message, CountNames.ERROR));
     log(this.errorLog, record, message);
   }
 
   public void addIgnore(final Record record, final String message) {
-    this.dialog.addLabelCount(CountNames.IGNORED, message, CountNames.IGNORED);
+    addAction(() -> this.dialog.addLabelCount(CountNames.IGNORED, message, CountNames.IGNORED));
     log(this.ignoreLog, record, message);
   }
 
   public void addWarning(final Record record, final String message) {
-    this.dialog.addLabelCount(ProviderSitePointConverter.WARNING, message,
-      ProviderSitePointConverter.WARNING);
+    addAction(() -> this.dialog.addLabelCount(ProviderSitePointConverter.WARNING, message,
+      ProviderSitePointConverter.WARNING));
     log(this.warningLog, record, message);
 
   }
 
   public void addWarning(final String message) {
-    addWarning(this.sourceRecord, message);
+    addWarning(getSourceRecord(), message);
   }
 
   @Override
@@ -96,14 +133,14 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
   }
 
   protected R convertRecord(final Record sourceRecord) {
-    this.localityName = null;
-    this.sourceRecord = sourceRecord;
+    setLocalityName(null);
+    setSourceRecord(sourceRecord);
     try {
       final R record = convertRecordDo(sourceRecord);
       if (record == null) {
         addIgnore(sourceRecord, "Converter returned null");
       } else {
-        this.convertCounter.add();
+        addAction(this.convertCounter::add);
         return record;
       }
     } catch (final IgnoreSiteException e) {
@@ -118,6 +155,28 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     return null;
   }
 
+  /**
+   * Convert the record on a convert thread. The changes to the logs, counts and other shared
+   * state are recorded in the result and made by {@link #finishConvertRecord(ConvertedRecord)}.
+   *
+   * @param sourceRecord The source record.
+   * @return The result.
+   */
+  ConvertedRecord<R> convertRecordDeferred(final Record sourceRecord) {
+    final ConvertState state = new ConvertState();
+    final List<Runnable> actions = new ArrayList<>();
+    this.convertState.set(state);
+    DEFERRED_ACTIONS.set(actions);
+    try {
+      final R record = convertRecord(sourceRecord);
+      return new ConvertedRecord<>(sourceRecord, record, state.localityId, state.localityName,
+        actions);
+    } finally {
+      this.convertState.remove();
+      DEFERRED_ACTIONS.remove();
+    }
+  }
+
   protected abstract R convertRecordDo(Record sourceRecord);
 
   public void convertSourceRecords() {
@@ -126,10 +185,15 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
       RecordReader sourceReader = newSourceRecordReader(providerRecordDefinition)) {
       final RecordDefinition recordDefinition = sourceReader.getRecordDefinition();
       setRecordDefinition(recordDefinition);
-      for (final Record sourceRecord : cancellable(sourceReader)) {
-        final R convertedRecord = convertRecord(sourceRecord);
-        if (convertedRecord != null) {
-          postConvertRecord(convertedRecord);
+      if (this.convertThreadCount > 1) {
+        new ParallelRecordConverter<>(this, cancellable(sourceReader), this.convertThreadCount)
+          .convertRecords();
+      } else {
+        for (final Record sourceRecord : cancellable(sourceReader)) {
+          final R convertedRecord = convertRecord(sourceRecord);
+          if (convertedRecord != null) {
+            postConvertRecord(convertedRecord);
+          }
         }
       }
       if (!isCancelled()) {
@@ -142,6 +206,23 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     }
   }
 
+  /**
+   * Run the actions recorded when the record was converted on a convert thread and add the
+   * converted record.
+   *
+   * @param convertedRecord The result from {@link #convertRecordDeferred(Record)}.
+   */
+  void finishConvertRecord(final ConvertedRecord<R> convertedRecord) {
+    this.sourceRecord = convertedRecord.getSourceRecord();
+    this.localityId = convertedRecord.getLocalityId();
+    this.localityName = convertedRecord.getLocalityName();
+    convertedRecord.runActions();
+    final R record = convertedRecord.getRecord();
+    if (record != null) {
+      postConvertRecord(record);
+    }
+  }
+
   private Counter getCounter(final String countName) {
     return this.dialog.getCounter("Provider", this.partnerOrganizationFiles,
       this.countPrefix + countName);
@@ -158,11 +239,38 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     return this.dialog;
   }
 
+  protected Identifier getLocalityId() {
+    final ConvertState state = this.convertState.get();
+    if (state == null) {
+      return this.localityId;
+    } else {
+      return state.localityId;
+    }
+  }
+
+  protected String getLocalityName() {
+    final ConvertState state = this.convertState.get();
+    if (state == null) {
+      return this.localityName;
+    } else {
+      return state.localityName;
+    }
+  }
+
   @Override
   public PartnerOrganization getPartnerOrganization() {
     return this.partnerOrganizationFiles.getPartnerOrganization();
   }
 
+  private Record getSourceRecord() {
+    final ConvertState state = this.convertState.get();
+    if (state == null) {
+      return this.sourceRecord;
+    } else {
+      return state.sourceRecord;
+    }
+  }
+
   protected void initFromParent(final AbstractSiteConverter parent) {
     this.errorLog = parent.errorLog;
     this.warningLog = parent.warningLog;
@@ -179,7 +287,16 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     if (geometry != null) {
       geometry = geometry.getPointWithin();
     }
-    recordLog.error(this.localityName, message, record, geometry);
+    final String localityName = getLocalityName();
+    final Geometry logGeometry = geometry;
+    final List<Runnable> actions = DEFERRED_ACTIONS.get();
+    if (actions == null) {
+      recordLog.error(localityName, message, record, logGeometry);
+    } else {
+      // Copy the values as the record can be changed before the action is run
+      final Record logRecord = record.getRecordDefinition().newRecord(record);
+      actions.add(() -> recordLog.error(localityName, message, logRecord, logGeometry));
+    }
   }
 
   private RecordLog newRecordLog(final String countName, final DirectorySuffixAndExtension fileType,
@@ -220,6 +337,10 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     this.baseDirectory = baseDirectory;
   }
 
+  public void setConvertThreadCount(final int convertThreadCount) {
+    this.convertThreadCount = convertThreadCount;
+  }
+
   public void setCountPrefix(final String countPrefix) {
     this.countPrefix = countPrefix;
   }
@@ -238,6 +359,24 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     this.fileSuffix = fileSuffix;
   }
 
+  protected void setLocalityId(final Identifier localityId) {
+    final ConvertState state = this.convertState.get();
+    if (state == null) {
+      this.localityId = localityId;
+    } else {
+      state.localityId = localityId;
+    }
+  }
+
+  protected void setLocalityName(final String localityName) {
+    final ConvertState state = this.convertState.get();
+    if (state == null) {
+      this.localityName = localityName;
+    } else {
+      state.localityName = localityName;
+    }
+  }
+
   public void setPartnerOrganizationFiles(final PartnerOrganizationFiles partnerOrganizationFiles) {
     this.partnerOrganizationFiles = partnerOrganizationFiles;
     setFileSuffix(partnerOrganizationFiles.getProviderSuffix());
@@ -253,6 +392,15 @@ public abstract class AbstractRecordConverter<R extends Record> extends BaseObje
     this.warningLog = newRecordLog("Warning", ImportSites.WARNING_BY_PROVIDER, recordDefinition);
   }
 
+  private void setSourceRecord(final Record sourceRecord) {
+    final ConvertState state = this.convertState.get();
+    if (state == null) {
+      this.sourceRecord = sourceRecord;
+    } else {
+      state.sourceRecord = sourceRecord;
+    }
+  }
+
   @Override
   public String toString() {
     return this.partnerOrganizationFiles.toString();
@@ -11,6 +11,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jeometry.common.compare.CompareUtil;
 import org.jeometry.common.data.identifier.Identifier;
@@ -29,14 +30,15 @@ import ca.bc.gov.gba.itn.model.code.StructuredNames;
 import ca.bc.gov.gbasites.load.ImportSites;
 import ca.bc.gov.gbasites.load.common.IgnoreSiteException;
 import ca.bc.gov.gbasites.load.common.ProviderSitePointConverter;
+import ca.bc.gov.gbasites.load.common.RecordSorter;
 import ca.bc.gov.gbasites.load.common.SitePointProviderRecord;
 import ca.bc.gov.gbasites.load.common.StructuredNameMapping;
 import ca.bc.gov.gbasites.model.type.SitePoint;
+import ca.bc.gov.gbasites.model.type.code.BoundaryCacheGrid;
 import ca.bc.gov.gbasites.model.type.code.CommunityPoly;
 import ca.bc.gov.gbasites.model.type.code.FeatureStatus;
 
 import com.revolsys.beans.Classes;
-import com.revolsys.collection.map.CollectionMap;
 import com.revolsys.collection.map.Maps;
 import com.revolsys.collection.set.Sets;
 import com.revolsys.geometry.model.Geometry;
@@ -61,6 +63,8 @@ import com.revolsys.util.Uuid;
 public abstract class AbstractSiteConverter extends AbstractRecordConverter<SitePointProviderRecord>
   implements SitePoint {
 
+  private static final int SORT_RECORD_COUNT = 200000;
+
   public static final StructuredNames STRUCTURED_NAMES = GbaItnCodeTables.getStructuredNames();
 
   private static final Map<String, Set<String>> nameSuffixCodeByAlias = new HashMap<>();
@@ -94,6 +98,13 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
 
   private static final BoundaryCache communities = CommunityPoly.getCommunities();
 
+  private static final BoundaryCacheGrid communityGrid = BoundaryCacheGrid.get(communities);
+
+  private static final BoundaryCacheGrid localityGrid = BoundaryCacheGrid.get(localities);
+
+  private static final BoundaryCacheGrid regionalDistrictGrid = BoundaryCacheGrid
+    .get(regionalDistricts);
+
   public static void init() {
     loadStructuredNameIdByCustodianAndAliasName();
   }
@@ -157,13 +168,27 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
 
   private Map<String, Set<String>> nameDifferentByLocality = new TreeMap<>();
 
-  // private final Map<String, List<Record>> recordsByLocalityName = new
-  // TreeMap<>();
-  private final CollectionMap<String, Record, List<Record>> recordsByLocalityName = CollectionMap
-    .treeArray();
+  /**
+   * The converted records for each locality. The records in memory for all the localities are
+   * limited to {@link #sortRecordCount}, when that is reached the records for the locality with
+   * the most records in memory are written to a sorted run file.
+   */
+  private final Map<String, RecordSorter> recordsByLocalityName = new TreeMap<>();
+
+  private int memoryRecordCount;
+
+  private Comparator<Record> sitePointComparator;
+
+  private int sortRecordCount = SORT_RECORD_COUNT;
 
   private final Map<String, List<Geometry>> sourceGeometryByLocality = new TreeMap<>();
 
+  /**
+   * The resolved structured name for the cleaned STREET_NAME values from this data provider that
+   * weren't an exact match.
+   */
+  private final Map<String, StructuredNameMapping> structuredNameMappingByName = new ConcurrentHashMap<>();
+
   private String openDataInd = "N";
 
   public void addProviderBoundary(final Map<String, List<Geometry>> sourceGeometryByLocality) {
@@ -206,30 +231,12 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
     final String dataProvider = getPartnerOrganizationShortName();
 
     if (!IGNORE_NAME_ERRORS.contains(message)) {
-      if (this.localityName == null) {
-        this.localityName = "Unknown";
-      }
-      if (Maps.addToSet(this.nameDifferentByLocality, this.localityName, originalName)) {
-        if (this.nameDifferentWriter == null) {
-          this.nameDifferentPathUpdator = this.partnerOrganizationFiles
-            .newPathUpdator(ImportSites.NAME_ERROR_BY_PROVIDER);
-          final Path path = this.nameDifferentPathUpdator.getPath();
-          final RecordDefinition nameErrorRecordDefinition = new RecordDefinitionBuilder(
-            Paths.getBaseName(path))//
-              .addField("DATA_PROVIDER", DataTypes.STRING, dataProvider.length()) //
-              .addField("LOCALITY", DataTypes.STRING, 30) //
-              .addField("STREET_NAME", DataTypes.STRING, 45) //
-              .addField("STRUCTURED_NAME", DataTypes.STRING, 45) //
-              .addField("STRUCTURED_NAME_ID", DataTypes.INT, 10) //
-              .addField("MESSAGE", DataTypes.STRING, 60) //
-              .getRecordDefinition();
-          this.nameDifferentWriter = RecordWriter.newRecordWriter(nameErrorRecordDefinition, path);
-        }
-        this.nameDifferentWriter.write(dataProvider, this.localityName, originalName,
-          structuredName, structuredNameId, message);
-        getDialog().addLabelCount(ProviderSitePointConverter.NAME_ERRORS, message,
-          CountNames.ERROR);
+      if (getLocalityName() == null) {
+        setLocalityName("Unknown");
       }
+      final String localityName = getLocalityName();
+      addAction(() -> writeStructuredNameError(dataProvider, localityName, message, originalName,
+        structuredName, structuredNameId));
     }
   }
 
@@ -238,12 +245,45 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
     record.setCivicNumber(civicNumber);
     record.setCivicNumberRange(null);
     record.updateFullAddress();
-    this.recordsByLocalityName.addValue(this.localityName, record);
+    addRecordForLocality(record);
+  }
+
+  private void addRecordForLocality(final Record record) {
+    final String localityName = getLocalityName();
+    RecordSorter sorter = this.recordsByLocalityName.get(localityName);
+    if (sorter == null) {
+      if (this.sitePointComparator == null) {
+        this.sitePointComparator = newSitePointComparator();
+        Paths.createDirectories(ImportSites.SITES_TEMP_DIRECTORY);
+      }
+      sorter = new RecordSorter(RECORD_DEFINITION, this.sitePointComparator, this.sortRecordCount,
+        ImportSites.SITES_TEMP_DIRECTORY);
+      sorter.setRunRecordDefinition(RECORD_DEFINITION);
+      this.recordsByLocalityName.put(localityName, sorter);
+    }
+    final int sorterRecordCount = sorter.getMemoryRecordCount();
+    sorter.addRecord(record);
+    this.memoryRecordCount += sorter.getMemoryRecordCount() - sorterRecordCount;
+    if (this.memoryRecordCount >= this.sortRecordCount) {
+      RecordSorter largestSorter = sorter;
+      for (final RecordSorter localitySorter : this.recordsByLocalityName.values()) {
+        if (localitySorter.getMemoryRecordCount() > largestSorter.getMemoryRecordCount()) {
+          largestSorter = localitySorter;
+        }
+      }
+      this.memoryRecordCount -= largestSorter.getMemoryRecordCount();
+      largestSorter.writeRun();
+    }
   }
 
   @Override
   public void close() {
     super.close();
+    for (final RecordSorter sorter : this.recordsByLocalityName.values()) {
+      sorter.close();
+    }
+    this.recordsByLocalityName.clear();
+    this.memoryRecordCount = 0;
     this.nameDifferentByLocality.clear();
     if (this.nameDifferentWriter != null) {
       this.nameDifferentWriter.close();
@@ -263,19 +303,22 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
 
       final Point point = convertedSourceGeometry.getPointWithin();
 
-      this.localityId = localities.getBoundaryId(point);
-      if (this.localityId == null) {
-        this.localityName = "Unknown";
+      final Identifier localityId = localityGrid.getBoundaryId(point);
+      final String localityName;
+      if (localityId == null) {
+        localityName = "Unknown";
       } else {
-        this.localityName = localities.getValue(this.localityId);
+        localityName = localities.getValue(localityId);
       }
+      setLocalityId(localityId);
+      setLocalityName(localityName);
       if (Property.isEmpty(point) || !point.isValid()) {
         throw IgnoreSiteException.warning("Ignore Record does not contain a point geometry");
       } else {
-        if (this.localityId != null) {
+        if (localityId != null) {
           if (ProviderSitePointConverter.isCalculateBoundary()) {
-            Maps.addToList(this.sourceGeometryByLocality, this.localityName,
-              convertedSourceGeometry);
+            addAction(() -> Maps.addToList(this.sourceGeometryByLocality, localityName,
+              convertedSourceGeometry));
           }
         }
         final SitePointProviderRecord sitePoint = convertRecordSite(sourceRecord, point);
@@ -283,8 +326,8 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
           return null;
         } else {
           sitePoint.setValue(OPEN_DATA_IND, this.openDataInd);
-          sitePoint.setValue(LOCALITY_ID, this.localityId);
-          sitePoint.setValue(LOCALITY_NAME, this.localityName);
+          sitePoint.setValue(LOCALITY_ID, localityId);
+          sitePoint.setValue(LOCALITY_NAME, localityName);
           if (sitePoint.equalValue(UNIT_DESCRIPTOR, "0")) {
             sitePoint.setValue(UNIT_DESCRIPTOR, null);
           }
@@ -593,8 +636,13 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
     }
   }
 
-  public List<Record> getRecordsForLocality(final String localityName) {
-    return this.recordsByLocalityName.getOrEmpty(localityName);
+  public Iterable<Record> getRecordsForLocality(final String localityName) {
+    final RecordSorter sorter = this.recordsByLocalityName.get(localityName);
+    if (sorter == null) {
+      return Collections.emptyList();
+    } else {
+      return sorter;
+    }
   }
 
   public String getStructuredNameFromAlias(final String dataProvider, final String nameAlias) {
@@ -644,8 +692,9 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
       RECORD_DEFINITION);
     sitePoint.setGeometryValue(point);
 
-    communities.setBoundaryIdAndName(sitePoint, point, COMMUNITY_NAME);
-    regionalDistricts.setBoundaryIdAndName(sitePoint, point, REGIONAL_DISTRICT_NAME);
+    communityGrid.setBoundaryIdAndName(sitePoint, point, COMMUNITY_ID, COMMUNITY_NAME);
+    regionalDistrictGrid.setBoundaryIdAndName(sitePoint, point, REGIONAL_DISTRICT_ID,
+      REGIONAL_DISTRICT_NAME);
 
     return sitePoint;
   }
@@ -709,7 +758,7 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
       addWithCivicNumber(sitePoint, civicNumber2);
 
     } else {
-      this.recordsByLocalityName.addValue(this.localityName, sitePoint);
+      addRecordForLocality(sitePoint);
     }
   }
 
@@ -719,8 +768,8 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
     addProviderBoundary(this.sourceGeometryByLocality);
   }
 
-  protected void postConvertRecordsWriteLocality(final String localityName,
-    final List<Record> localityRecords) {
+  protected void postConvertRecordsWriteLocality(final RecordWriter dataProviderWriter,
+    final String localityName, final Iterable<Record> localityRecords) {
     final PartnerOrganization partnerOrganization = this.partnerOrganizationFiles
       .getPartnerOrganization();
     try (
@@ -729,31 +778,27 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
           this.fileSuffix);
       RecordWriter localityWriter = RecordWriter.newRecordWriter(RECORD_DEFINITION,
         localityPathUpdator.getPath())) {
-      localityWriter.writeAll(localityRecords);
+      for (final Record record : cancellable(localityRecords)) {
+        dataProviderWriter.write(record);
+        localityWriter.write(record);
+      }
     }
   }
 
   protected void postConvertRecordsWriteSitePoints() {
     if (!this.recordsByLocalityName.isEmpty()) {
-      final Comparator<Record> comparator = newSitePointComparator();
-
       final Path dataProviderPath = this.pathUpdator.getPath();
       try (
         RecordWriter dataProviderWriter = RecordWriter.newRecordWriter(RECORD_DEFINITION,
           dataProviderPath)) {
 
-        for (final Entry<String, List<Record>> localityEntry : cancellable(
+        for (final Entry<String, RecordSorter> localityEntry : cancellable(
           this.recordsByLocalityName.entrySet())) {
           final String localityName = localityEntry.getKey();
-          final List<Record> localityRecords = localityEntry.getValue();
-
-          localityRecords.sort(comparator);
-
-          for (final Record record : cancellable(localityRecords)) {
-            dataProviderWriter.write(record);
+          try (
+            RecordSorter localityRecords = localityEntry.getValue()) {
+            postConvertRecordsWriteLocality(dataProviderWriter, localityName, localityRecords);
           }
-
-          postConvertRecordsWriteLocality(localityName, localityRecords);
         }
       }
     }
@@ -789,7 +834,7 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
 
   public void setFeatureStatusCodeByFullAddress(final Record sitePoint, String fullAddress) {
     if (fullAddress != null) {
-      final String localityName = Strings.upperCase(this.localityName);
+      final String localityName = Strings.upperCase(getLocalityName());
       fullAddress = Strings.upperCase(fullAddress);
       final FeatureStatus featureStatusCode = Maps.getMap(
         ProviderSitePointConverter.featureStatusByLocalityAndFullAddress, localityName, fullAddress,
@@ -827,6 +872,14 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
     setOpenData(openData);
   }
 
+  /**
+   * Set the maximum number of converted records kept in memory before the records for a locality
+   * are written to a sorted run file.
+   */
+  public void setSortRecordCount(final int sortRecordCount) {
+    this.sortRecordCount = sortRecordCount;
+  }
+
   public boolean setStructuredName(final Record sourceRecord, final Record sitePoint,
     final int nameIndex, String name, final String originalName) {
     final String partnerOrganizationShortName = getPartnerOrganizationShortName();
@@ -848,13 +901,19 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
       }
       if (structuredNameMapping.isNotMatched()) {
         name = Strings.cleanWhitespace(name);
-        final Identifier mappedStructuredNameId = Maps.getMap(
-          structuredNameIdByCustodianAndAliasName, Strings.upperCase(partnerOrganizationShortName),
-          name);
-        if (!structuredNameMapping.setStructuredNameId(mappedStructuredNameId,
-          "Mapped from STRUCTURED_NAME_ALIAS.xlsx")) {
-          fixStructuredName(partnerOrganizationShortName, sourceRecord, name, originalName,
-            structuredNameMapping);
+        final StructuredNameMapping resolvedMapping = this.structuredNameMappingByName.get(name);
+        if (resolvedMapping == null) {
+          final Identifier mappedStructuredNameId = Maps.getMap(
+            structuredNameIdByCustodianAndAliasName,
+            Strings.upperCase(partnerOrganizationShortName), name);
+          if (!structuredNameMapping.setStructuredNameId(mappedStructuredNameId,
+            "Mapped from STRUCTURED_NAME_ALIAS.xlsx")) {
+            fixStructuredName(partnerOrganizationShortName, sourceRecord, name, originalName,
+              structuredNameMapping);
+          }
+          this.structuredNameMappingByName.putIfAbsent(name, structuredNameMapping);
+        } else {
+          structuredNameMapping.setMapping(resolvedMapping);
         }
 
         final String message = structuredNameMapping.getMessage();
@@ -895,4 +954,30 @@ public abstract class AbstractSiteConverter extends AbstractRecordConverter<Site
     addToMap(map, "addressFieldName", this.addressFieldName);
     return map;
   }
+
+  private void writeStructuredNameError(final String dataProvider, final String localityName,
+    final String message, final String originalName, final String structuredName,
+    final Identifier structuredNameId) {
+    if (Maps.addToSet(this.nameDifferentByLocality, localityName, originalName)) {
+      if (this.nameDifferentWriter == null) {
+        this.nameDifferentPathUpdator = this.partnerOrganizationFiles
+          .newPathUpdator(ImportSites.NAME_ERROR_BY_PROVIDER);
+        final Path path = this.nameDifferentPathUpdator.getPath();
+        final RecordDefinition nameErrorRecordDefinition = new RecordDefinitionBuilder(
+          Paths.getBaseName(path))//
+            .addField("DATA_PROVIDER", DataTypes.STRING, dataProvider.length()) //
+            .addField("LOCALITY", DataTypes.STRING, 30) //
+            .addField("STREET_NAME", DataTypes.STRING, 45) //
+            .addField("STRUCTURED_NAME", DataTypes.STRING, 45) //
+            .addField("STRUCTURED_NAME_ID", DataTypes.INT, 10) //
+            .addField("MESSAGE", DataTypes.STRING, 60) //
+            .getRecordDefinition();
+        this.nameDifferentWriter = RecordWriter.newRecordWriter(nameErrorRecordDefinition, path);
+      }
+      this.nameDifferentWriter.write(dataProvider, localityName, originalName,
+        structuredName, structuredNameId, message);
+      getDialog().addLabelCount(ProviderSitePointConverter.NAME_ERRORS, message,
+        CountNames.ERROR);
+    }
+  }
 }
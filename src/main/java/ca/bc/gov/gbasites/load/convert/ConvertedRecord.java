@@ -0,0 +1,60 @@
+package ca.bc.gov.gbasites.load.convert;
+
+import java.util.List;
+
+import org.jeometry.common.data.identifier.Identifier;
+
+import com.revolsys.record.Record;
+
+/**
+ * The result of converting a source record on a convert thread, the converted record (null if it
+ * was ignored), the locality and the actions to run when the record is added.
+ */
+public class ConvertedRecord<R extends Record> {
+
+  private final List<Runnable> actions;
+
+  private final Identifier localityId;
+
+  private final String localityName;
+
+  private final R record;
+
+  private final Record sourceRecord;
+
+  public ConvertedRecord(final Record sourceRecord, final R record, final Identifier localityId,
+    final String localityName, final List<Runnable> actions) {
+    this.sourceRecord = sourceRecord;
+    this.record = record;
+    this.localityId = localityId;
+    this.localityName = localityName;
+    this.actions = actions;
+  }
+
+  public Identifier getLocalityId() {
+    return this.localityId;
+  }
+
+  public String getLocalityName() {
+    return this.localityName;
+  }
+
+  public R getRecord() {
+    return this.record;
+  }
+
+  public Record getSourceRecord() {
+    return this.sourceRecord;
+  }
+
+  public void runActions() {
+    for (final Runnable action : this.actions) {
+      action.run();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.sourceRecord.toString();
+  }
+}
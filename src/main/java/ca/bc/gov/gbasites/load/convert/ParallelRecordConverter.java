@@ -0,0 +1,207 @@
+package ca.bc.gov.gbasites.load.convert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.bc.gov.gbasites.load.common.BatchQueue;
+
+import com.revolsys.parallel.process.ProcessNetwork;
+import com.revolsys.record.Record;
+
+/**
+ * Convert the source records for an {@link AbstractRecordConverter} using multiple convert
+ * processes.
+ *
+ * The read process reads batches of {@link BatchQueue#BATCH_SIZE} source records and sends them
+ * through a {@link BatchQueue} to the convert processes. The source is read without holding the
+ * lock used by the merge process. The changes to the logs, counts and other shared state are
+ * recorded while converting. The merge process makes those changes and adds the converted records
+ * in the order the source records were read, so the output is the same as converting on one
+ * thread. Only a limited number of batches are read ahead of the batch being merged.
+ *
+ * Values in the deferred error, warning and ignore log actions are copied on the convert thread,
+ * as the record can be changed before the action is run. To verify a change to a converter use
+ * {@link ca.bc.gov.gbasites.load.common.ProviderSitePointConverter#verifyConvertThreadCount} to
+ * convert the provider with one and multiple threads and compare the files written.
+ */
+public class ParallelRecordConverter<R extends Record> {
+
+  private static class SourceBatch {
+    private final int index;
+
+    private final List<Record> sourceRecords;
+
+    private SourceBatch(final int index, final List<Record> sourceRecords) {
+      this.index = index;
+      this.sourceRecords = sourceRecords;
+    }
+  }
+
+  private int batchCount = -1;
+
+  private final AbstractRecordConverter<R> converter;
+
+  private final Map<Integer, List<ConvertedRecord<R>>> convertedRecordsByBatch = new HashMap<>();
+
+  private int nextMergeBatch;
+
+  private final BatchQueue<SourceBatch> queue;
+
+  private final Iterator<Record> sourceRecords;
+
+  private final int threadCount;
+
+  public ParallelRecordConverter(final AbstractRecordConverter<R> converter,
+    final Iterable<Record> sourceRecords, final int threadCount) {
+    this.converter = converter;
+    this.sourceRecords = sourceRecords.iterator();
+    this.threadCount = threadCount;
+    this.queue = new BatchQueue<>("Error converting " + converter);
+  }
+
+  private void convertBatches() {
+    for (SourceBatch batch = this.queue.take(); batch != null; batch = this.queue.take()) {
+      if (!isStopped()) {
+        try {
+          final List<Record> sourceRecords = batch.sourceRecords;
+          final List<ConvertedRecord<R>> convertedRecords = new ArrayList<>(
+            sourceRecords.size());
+          for (final Record sourceRecord : sourceRecords) {
+            final ConvertedRecord<R> convertedRecord = this.converter
+              .convertRecordDeferred(sourceRecord);
+            convertedRecords.add(convertedRecord);
+          }
+          synchronized (this) {
+            this.convertedRecordsByBatch.put(batch.index, convertedRecords);
+            notifyAll();
+          }
+        } catch (final Throwable e) {
+          setError(e);
+        }
+      }
+    }
+  }
+
+  public void convertRecords() {
+    final String name = this.converter.toString();
+    final ProcessNetwork processes = new ProcessNetwork();
+    processes.addProcess(name + " Read", this::readBatches);
+    for (int i = 0; i < this.threadCount; i++) {
+      processes.addProcess(name + " Convert " + (i + 1), this::convertBatches);
+    }
+    processes.addProcess(name + " Merge", this::mergeBatches);
+    processes.startAndWait();
+    this.queue.throwError();
+  }
+
+  private boolean isStopped() {
+    return this.queue.isError() || this.converter.isCancelled();
+  }
+
+  private void mergeBatches() {
+    try {
+      for (List<ConvertedRecord<R>> convertedRecords = nextMergeBatch(); //
+        convertedRecords != null; convertedRecords = nextMergeBatch()) {
+        for (final ConvertedRecord<R> convertedRecord : convertedRecords) {
+          this.converter.finishConvertRecord(convertedRecord);
+        }
+      }
+    } catch (final Throwable e) {
+      setError(e);
+    }
+  }
+
+  /**
+   * Wait for the next batch to be converted.
+   *
+   * @return The converted records or null if there are no more batches.
+   */
+  private synchronized List<ConvertedRecord<R>> nextMergeBatch() {
+    while (!isStopped()) {
+      if (this.batchCount != -1 && this.nextMergeBatch >= this.batchCount) {
+        return null;
+      }
+      final List<ConvertedRecord<R>> convertedRecords = this.convertedRecordsByBatch
+        .remove(this.nextMergeBatch);
+      if (convertedRecords == null) {
+        try {
+          wait(1000);
+        } catch (final InterruptedException e) {
+          return null;
+        }
+      } else {
+        this.nextMergeBatch++;
+        notifyAll();
+        return convertedRecords;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read the batches of source records and send them to the convert processes. The lock is only
+   * held to wait if too many batches are ahead of the batch being merged, not while reading. The
+   * queue is finished once for each convert process, even if there was an error.
+   */
+  private void readBatches() {
+    try {
+      int batchIndex = 0;
+      while (waitToRead(batchIndex)) {
+        final List<Record> sourceRecords = new ArrayList<>(BatchQueue.BATCH_SIZE);
+        while (sourceRecords.size() < BatchQueue.BATCH_SIZE && this.sourceRecords.hasNext()) {
+          sourceRecords.add(this.sourceRecords.next());
+        }
+        if (!sourceRecords.isEmpty()) {
+          this.queue.put(new SourceBatch(batchIndex, sourceRecords));
+          batchIndex++;
+        }
+        if (!this.sourceRecords.hasNext()) {
+          setBatchCount(batchIndex);
+        }
+      }
+    } catch (final Throwable e) {
+      setError(e);
+    } finally {
+      for (int i = 0; i < this.threadCount; i++) {
+        this.queue.finish();
+      }
+    }
+  }
+
+  private synchronized void setBatchCount(final int batchCount) {
+    this.batchCount = batchCount;
+    notifyAll();
+  }
+
+  private void setError(final Throwable e) {
+    this.queue.setError(e);
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wait until the batch can be read without getting too far ahead of the batch being merged.
+   *
+   * @param batchIndex The index of the batch to read.
+   * @return True if the batch can be read, false if all the batches were read or it was stopped.
+   */
+  private synchronized boolean waitToRead(final int batchIndex) {
+    final int maxBatchesAhead = this.threadCount * 2;
+    while (!isStopped() && this.batchCount == -1) {
+      if (batchIndex < this.nextMergeBatch + maxBatchesAhead) {
+        return true;
+      } else {
+        try {
+          wait(1000);
+        } catch (final InterruptedException e) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+}
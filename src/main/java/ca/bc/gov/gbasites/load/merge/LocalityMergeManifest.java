@@ -0,0 +1,207 @@
+package ca.bc.gov.gbasites.load.merge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.jeometry.common.exception.Exceptions;
+import org.jeometry.common.logging.Logs;
+
+import ca.bc.gov.gbasites.load.common.FileDigest;
+
+import com.revolsys.io.file.Paths;
+
+/**
+ * The size, last modified time and SHA-256 hash of the input files and the merged SITE_POINT file
+ * for a locality from the last merge. If none of the files have changed the locality doesn't need
+ * to be merged again.
+ *
+ * The hash is only calculated if the size or last modified time of the file has changed. This
+ * allows files that were rewritten with the same content to be treated as unchanged.
+ */
+public class LocalityMergeManifest {
+
+  private static class FileState {
+
+    private final Path file;
+
+    private final long size;
+
+    private final long lastModified;
+
+    private String hash;
+
+    private FileState(final Path file) throws IOException {
+      this.file = file;
+      this.size = Files.size(file);
+      this.lastModified = Files.getLastModifiedTime(file).toMillis();
+    }
+
+    private String getHash() {
+      if (this.hash == null) {
+        this.hash = FileDigest.sha256(this.file);
+      }
+      return this.hash;
+    }
+
+    private boolean isUnchanged(final Properties properties, final String prefix) {
+      final String path = properties.getProperty(prefix + PATH);
+      if (this.file.toString().equals(path)) {
+        final String size = properties.getProperty(prefix + SIZE);
+        if (Long.toString(this.size).equals(size)) {
+          final String lastModified = properties.getProperty(prefix + LAST_MODIFIED);
+          final String hash = properties.getProperty(prefix + HASH);
+          if (Long.toString(this.lastModified).equals(lastModified)) {
+            this.hash = hash;
+            return true;
+          } else {
+            return getHash().equals(hash);
+          }
+        }
+      }
+      return false;
+    }
+
+    private void setProperties(final Properties properties, final String prefix) {
+      properties.setProperty(prefix + PATH, this.file.toString());
+      properties.setProperty(prefix + SIZE, Long.toString(this.size));
+      properties.setProperty(prefix + LAST_MODIFIED, Long.toString(this.lastModified));
+      properties.setProperty(prefix + HASH, getHash());
+    }
+  }
+
+  /**
+   * Change if the merge is changed so that all the localities are merged again.
+   */
+  private static final String VERSION = "1";
+
+  private static final String HASH = ".hash";
+
+  private static final String INPUT = "input.";
+
+  private static final String INPUT_COUNT = "inputCount";
+
+  private static final String LAST_MODIFIED = ".lastModified";
+
+  private static final String OUTPUT = "output";
+
+  private static final String PATH = ".path";
+
+  private static final String RECORD_COUNT = "recordCount";
+
+  private static final String SIZE = ".size";
+
+  private static final String VERSION_KEY = "version";
+
+  private static FileState newFileState(final Path file) {
+    try {
+      return new FileState(file);
+    } catch (final NoSuchFileException e) {
+      return null;
+    } catch (final IOException e) {
+      throw Exceptions.wrap("Unable to get file attributes: " + file, e);
+    }
+  }
+
+  private final Path manifestFile;
+
+  private final Properties properties = new Properties();
+
+  private final List<FileState> inputStates = new ArrayList<>();
+
+  public LocalityMergeManifest(final Path manifestFile, final List<Path> inputFiles) {
+    this.manifestFile = manifestFile;
+    for (final Path inputFile : inputFiles) {
+      final FileState state = newFileState(inputFile);
+      if (state != null) {
+        this.inputStates.add(state);
+      }
+    }
+    if (Files.exists(manifestFile)) {
+      try (
+        InputStream in = Files.newInputStream(manifestFile)) {
+        this.properties.load(in);
+      } catch (final IOException e) {
+        Logs.error(this, "Unable to read manifest: " + manifestFile, e);
+        this.properties.clear();
+      }
+    }
+  }
+
+  /**
+   * Delete the manifest so that the locality is merged on the next run.
+   */
+  public void delete() {
+    this.properties.clear();
+    Paths.deleteDirectories(this.manifestFile);
+  }
+
+  public long getRecordCount() {
+    final String recordCount = this.properties.getProperty(RECORD_COUNT, "0");
+    return Long.parseLong(recordCount);
+  }
+
+  /**
+   * Check if the input files and the merged file are the same as when the manifest was saved.
+   *
+   * @param outputFile The merged SITE_POINT file.
+   * @return True if the locality doesn't need to be merged.
+   */
+  public boolean isUnchanged(final Path outputFile) {
+    if (!VERSION.equals(this.properties.getProperty(VERSION_KEY))) {
+      return false;
+    }
+    final int inputCount = this.inputStates.size();
+    if (!Integer.toString(inputCount).equals(this.properties.getProperty(INPUT_COUNT))) {
+      return false;
+    }
+    for (int i = 0; i < inputCount; i++) {
+      final FileState inputState = this.inputStates.get(i);
+      if (!inputState.isUnchanged(this.properties, INPUT + i)) {
+        return false;
+      }
+    }
+    final FileState outputState = newFileState(outputFile);
+    if (outputState == null) {
+      return false;
+    } else {
+      return outputState.isUnchanged(this.properties, OUTPUT);
+    }
+  }
+
+  /**
+   * Save the state of the input files and the merged file after a successful merge.
+   *
+   * @param outputFile The merged SITE_POINT file.
+   * @param recordCount The number of records written to the merged file.
+   */
+  public void save(final Path outputFile, final long recordCount) {
+    final FileState outputState = newFileState(outputFile);
+    if (outputState == null) {
+      delete();
+    } else {
+      final Properties properties = new Properties();
+      properties.setProperty(VERSION_KEY, VERSION);
+      properties.setProperty(RECORD_COUNT, Long.toString(recordCount));
+      properties.setProperty(INPUT_COUNT, Integer.toString(this.inputStates.size()));
+      for (int i = 0; i < this.inputStates.size(); i++) {
+        final FileState inputState = this.inputStates.get(i);
+        inputState.setProperties(properties, INPUT + i);
+      }
+      outputState.setProperties(properties, OUTPUT);
+      Paths.createParentDirectories(this.manifestFile);
+      try (
+        OutputStream out = Files.newOutputStream(this.manifestFile)) {
+        properties.store(out, "Site point merge manifest");
+      } catch (final IOException e) {
+        Logs.error(this, "Unable to write manifest: " + this.manifestFile, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package ca.bc.gov.gbasites.load.merge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.revolsys.geometry.model.Point;
+import com.revolsys.geometry.model.Punctual;
+import com.revolsys.record.Record;
+
+/**
+ * Grid hash of records by the points in their {@link Punctual} geometry. Used to find the records
+ * that intersect a point without comparing against every record for the civic number. Records are
+ * returned in the order they were added so the matching is the same as a scan of the list.
+ */
+public class RecordPointIndex {
+
+  /**
+   * Only build an index when there are more than this number of records.
+   */
+  public static final int MIN_RECORD_COUNT = 16;
+
+  private static long getCellKey(final Point point) {
+    final long cellX = (long)Math.floor(point.getX());
+    final long cellY = (long)Math.floor(point.getY());
+    return cellX << 32 | cellY & 0xffffffffL;
+  }
+
+  private final Map<Long, List<Record>> recordsByCell = new HashMap<>();
+
+  private final Map<Record, Integer> orderByRecord = new IdentityHashMap<>();
+
+  private int nextOrder;
+
+  public RecordPointIndex(final List<Record> records) {
+    for (final Record record : records) {
+      addRecord(record);
+    }
+  }
+
+  /**
+   * Add the record to the cells for each of its points. Can be called again after the geometry of
+   * the record was merged with another point to index the new points.
+   *
+   * @param record The record to add.
+   */
+  public void addRecord(final Record record) {
+    if (!this.orderByRecord.containsKey(record)) {
+      this.orderByRecord.put(record, this.nextOrder++);
+    }
+    final Punctual punctual = record.getGeometry();
+    for (int i = 0; i < punctual.getPointCount(); i++) {
+      final Point point = punctual.getPoint(i);
+      final Long cellKey = getCellKey(point);
+      List<Record> cellRecords = this.recordsByCell.get(cellKey);
+      if (cellRecords == null) {
+        cellRecords = new ArrayList<>(1);
+        this.recordsByCell.put(cellKey, cellRecords);
+      }
+      if (!containsRecord(cellRecords, record)) {
+        cellRecords.add(record);
+      }
+    }
+  }
+
+  private boolean containsRecord(final List<Record> records, final Record record) {
+    for (final Record cellRecord : records) {
+      if (cellRecord == record) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the records whose geometry intersects the point, in the order they were added.
+   *
+   * @param punctual The point to match.
+   * @return The intersecting records.
+   */
+  public List<Record> getIntersecting(final Punctual punctual) {
+    List<Record> intersecting = Collections.emptyList();
+    for (int i = 0; i < punctual.getPointCount(); i++) {
+      final Point point = punctual.getPoint(i);
+      final List<Record> cellRecords = this.recordsByCell.get(getCellKey(point));
+      if (cellRecords != null) {
+        for (final Record record : cellRecords) {
+          if (!containsRecord(intersecting, record)) {
+            final Punctual recordPoint = record.getGeometry();
+            if (punctual.intersects(recordPoint)) {
+              if (intersecting.isEmpty()) {
+                intersecting = new ArrayList<>();
+              }
+              intersecting.add(record);
+            }
+          }
+        }
+      }
+    }
+    if (intersecting.size() > 1) {
+      intersecting.sort((record1, record2) -> Integer
+        .compare(this.orderByRecord.get(record1), this.orderByRecord.get(record2)));
+    }
+    return intersecting;
+  }
+
+  public void removeRecord(final Record record) {
+    if (this.orderByRecord.remove(record) != null) {
+      final Punctual punctual = record.getGeometry();
+      for (int i = 0; i < punctual.getPointCount(); i++) {
+        final Point point = punctual.getPoint(i);
+        final Long cellKey = getCellKey(point);
+        final List<Record> cellRecords = this.recordsByCell.get(cellKey);
+        if (cellRecords != null) {
+          cellRecords.removeIf(cellRecord -> cellRecord == record);
+          if (cellRecords.isEmpty()) {
+            this.recordsByCell.remove(cellKey);
+          }
+        }
+      }
+    }
+  }
+}
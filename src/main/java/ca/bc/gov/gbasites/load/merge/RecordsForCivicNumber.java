@@ -1,5 +1,6 @@
 package ca.bc.gov.gbasites.load.merge;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -9,53 +10,117 @@ import ca.bc.gov.gbasites.model.type.SitePoint;
 import com.revolsys.record.Record;
 import com.revolsys.util.Counter;
 
+/**
+ * The records for a civic number by civic number suffix. Most civic numbers only have one suffix
+ * so the map is only created when a second suffix is added.
+ */
 public class RecordsForCivicNumber {
 
-  private final Map<String, RecordsForCivicNumberSuffix> recordsByCivicNumberSuffix = new TreeMap<>();
+  private RecordsForCivicNumberSuffix singleRecords;
 
-  private final Integer civicNumber;
+  private Map<String, RecordsForCivicNumberSuffix> recordsByCivicNumberSuffix;
 
-  public RecordsForCivicNumber(final Integer civicNumber) {
+  private final int civicNumber;
+
+  public RecordsForCivicNumber(final int civicNumber) {
     this.civicNumber = civicNumber;
   }
 
   public void addRecord(final Record record) {
     final String civicNumberSuffix = record.getString(SitePoint.CIVIC_NUMBER_SUFFIX, "");
-    RecordsForCivicNumberSuffix records = this.recordsByCivicNumberSuffix.get(civicNumberSuffix);
-    if (records == null) {
-      records = new RecordsForCivicNumberSuffix(civicNumberSuffix);
-      this.recordsByCivicNumberSuffix.put(civicNumberSuffix, records);
-    }
+    final RecordsForCivicNumberSuffix records = getOrAddCivicNumberSuffix(civicNumberSuffix);
     records.addRecord(record);
   }
 
   public void addRecord(final Record record, final RecordMergeCounters counters) {
     final String civicNumberSuffix = record.getString(SitePoint.CIVIC_NUMBER_SUFFIX, "");
-    RecordsForCivicNumberSuffix records = this.recordsByCivicNumberSuffix.get(civicNumberSuffix);
-    if (records == null) {
-      records = new RecordsForCivicNumberSuffix(civicNumberSuffix);
-      this.recordsByCivicNumberSuffix.put(civicNumberSuffix, records);
-    }
+    final RecordsForCivicNumberSuffix records = getOrAddCivicNumberSuffix(civicNumberSuffix);
     records.addRecord(record, counters);
   }
 
   public void deleteRecords(final Counter counter) {
-    for (final RecordsForCivicNumberSuffix records : this.recordsByCivicNumberSuffix.values()) {
-      records.deleteRecords(counter);
+    if (this.recordsByCivicNumberSuffix == null) {
+      if (this.singleRecords != null) {
+        this.singleRecords.deleteRecords(counter);
+      }
+    } else {
+      for (final RecordsForCivicNumberSuffix records : this.recordsByCivicNumberSuffix.values()) {
+        records.deleteRecords(counter);
+      }
     }
   }
 
   public RecordsForCivicNumberSuffix getCivicNumberSuffix(final String civicNumberSuffix) {
-    return this.recordsByCivicNumberSuffix.get(civicNumberSuffix);
+    if (this.recordsByCivicNumberSuffix == null) {
+      if (this.singleRecords != null
+        && this.singleRecords.getCivicNumberSuffix().equals(civicNumberSuffix)) {
+        return this.singleRecords;
+      } else {
+        return null;
+      }
+    } else {
+      return this.recordsByCivicNumberSuffix.get(civicNumberSuffix);
+    }
   }
 
   public Set<String> getCivicNumberSuffixes() {
-    return this.recordsByCivicNumberSuffix.keySet();
+    if (this.recordsByCivicNumberSuffix == null) {
+      if (this.singleRecords == null) {
+        return Collections.emptySet();
+      } else {
+        return Collections.singleton(this.singleRecords.getCivicNumberSuffix());
+      }
+    } else {
+      return this.recordsByCivicNumberSuffix.keySet();
+    }
+  }
+
+  private RecordsForCivicNumberSuffix getOrAddCivicNumberSuffix(final String civicNumberSuffix) {
+    RecordsForCivicNumberSuffix records = getCivicNumberSuffix(civicNumberSuffix);
+    if (records == null) {
+      records = new RecordsForCivicNumberSuffix(civicNumberSuffix);
+      if (this.recordsByCivicNumberSuffix == null) {
+        if (this.singleRecords == null) {
+          this.singleRecords = records;
+          return records;
+        } else {
+          this.recordsByCivicNumberSuffix = new TreeMap<>();
+          this.recordsByCivicNumberSuffix.put(this.singleRecords.getCivicNumberSuffix(),
+            this.singleRecords);
+          this.singleRecords = null;
+        }
+      }
+      this.recordsByCivicNumberSuffix.put(civicNumberSuffix, records);
+    }
+    return records;
+  }
+
+  public int getRecordCount() {
+    if (this.recordsByCivicNumberSuffix == null) {
+      if (this.singleRecords == null) {
+        return 0;
+      } else {
+        return this.singleRecords.getRecordCount();
+      }
+    } else {
+      int count = 0;
+      for (final RecordsForCivicNumberSuffix records : this.recordsByCivicNumberSuffix.values()) {
+        count += records.getRecordCount();
+      }
+      return count;
+    }
   }
 
   public RecordsForCivicNumberSuffix removeCivicNumberSuffix(final String civicNumberSuffix) {
-    final RecordsForCivicNumberSuffix records = this.recordsByCivicNumberSuffix
-      .remove(civicNumberSuffix);
+    RecordsForCivicNumberSuffix records;
+    if (this.recordsByCivicNumberSuffix == null) {
+      records = getCivicNumberSuffix(civicNumberSuffix);
+      if (records != null) {
+        this.singleRecords = null;
+      }
+    } else {
+      records = this.recordsByCivicNumberSuffix.remove(civicNumberSuffix);
+    }
     if (records == null) {
       return new RecordsForCivicNumberSuffix(civicNumberSuffix);
     } else {
@@ -1,6 +1,7 @@
 package ca.bc.gov.gbasites.load.merge;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import ca.bc.gov.gba.itn.model.GbaType;
@@ -14,16 +15,35 @@ import com.revolsys.util.Counter;
 
 public class RecordsForCivicNumberSuffix {
 
-  private final List<Record> records = new ArrayList<>();
+  /**
+   * Most suffixes only have one record so a singleton list is used until a second record is
+   * added.
+   */
+  private List<Record> records = Collections.emptyList();
 
   private final String civicNumberSuffix;
 
+  private RecordPointIndex pointIndex;
+
   public RecordsForCivicNumberSuffix(final String civicNumberSuffix) {
     this.civicNumberSuffix = civicNumberSuffix;
   }
 
   public void addRecord(final Record record) {
-    this.records.add(record);
+    final int recordCount = this.records.size();
+    if (recordCount == 0) {
+      this.records = Collections.singletonList(record);
+    } else {
+      if (recordCount == 1) {
+        final List<Record> records = new ArrayList<>(4);
+        records.addAll(this.records);
+        this.records = records;
+      }
+      this.records.add(record);
+    }
+    if (this.pointIndex != null) {
+      this.pointIndex.addRecord(record);
+    }
   }
 
   public void addRecord(final Record record, final RecordMergeCounters counters) {
@@ -42,6 +62,32 @@ public class RecordsForCivicNumberSuffix {
     counter.add(getRecordCount());
   }
 
+  public String getCivicNumberSuffix() {
+    return this.civicNumberSuffix;
+  }
+
+  private Record getFirstIntersecting(final Punctual point) {
+    if (this.pointIndex == null && this.records.size() > RecordPointIndex.MIN_RECORD_COUNT) {
+      this.pointIndex = new RecordPointIndex(this.records);
+    }
+    if (this.pointIndex == null) {
+      for (final Record record : this.records) {
+        final Punctual point1 = record.getGeometry();
+        if (point.intersects(point1)) {
+          return record;
+        }
+      }
+      return null;
+    } else {
+      final List<Record> intersecting = this.pointIndex.getIntersecting(point);
+      if (intersecting.isEmpty()) {
+        return null;
+      } else {
+        return intersecting.get(0);
+      }
+    }
+  }
+
   public int getRecordCount() {
     return this.records.size();
   }
@@ -78,22 +124,24 @@ public class RecordsForCivicNumberSuffix {
    */
   private boolean matchPoint(final Record record, final RecordMergeCounters counters) {
     final Punctual point = record.getGeometry();
-    for (final Record record1 : this.records) {
-      final Punctual point1 = record1.getGeometry();
-      if (point.intersects(point1)) {
-        SitePointMerger.setMergedPoint(record1, record);
-        SitePointMerger.setMergedUnit(record1, record);
-        if (record.equalValue(record1, GbaType.CREATE_PARTNER_ORG)) {
-          counters.mergePoint.add();
-        } else if (SitePointMerger.isAddressBc(record)) {
-          counters.matchPoint.add();
-        } else {
-          counters.mergePoint.add();
-        }
-        return true;
+    final Record record1 = getFirstIntersecting(point);
+    if (record1 == null) {
+      return false;
+    } else {
+      SitePointMerger.setMergedPoint(record1, record);
+      SitePointMerger.setMergedUnit(record1, record);
+      if (this.pointIndex != null) {
+        this.pointIndex.addRecord(record1);
       }
+      if (record.equalValue(record1, GbaType.CREATE_PARTNER_ORG)) {
+        counters.mergePoint.add();
+      } else if (SitePointMerger.isAddressBc(record)) {
+        counters.matchPoint.add();
+      } else {
+        counters.mergePoint.add();
+      }
+      return true;
     }
-    return false;
   }
 
   /**
@@ -129,10 +177,13 @@ public class RecordsForCivicNumberSuffix {
 
   /**
    * Merge records with the same full address
-   * @param addressBc
    * @param counters
+   * @param buffer The buffer the duplicate and merge unit counts are added to.
    */
-  protected void mergeFullAddress(final RecordMergeCounters counters) {
+  protected void mergeFullAddress(final RecordMergeCounters counters,
+    final StreetMergeBuffer buffer) {
+    // The point index is only used while loading
+    this.pointIndex = null;
     for (int i = 0; i < this.records.size(); i++) {
       final Record record1 = this.records.get(i);
       for (int j = this.records.size() - 1; j > i; j--) {
@@ -141,9 +192,9 @@ public class RecordsForCivicNumberSuffix {
           if (record1.equalValue(record2, SitePoint.FULL_ADDRESS)) {
             if (counters.isCreatePartnerOrg(record1)) {
               if (SitePointMerger.setMergedPoint(record1, record2)) {
-                counters.mergeUnit.add();
+                buffer.mergeUnit(counters);
               } else {
-                counters.duplicate.add();
+                buffer.duplicate(counters);
               }
               this.records.remove(j);
             }
@@ -1,17 +1,37 @@
 package ca.bc.gov.gbasites.load.merge;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import ca.bc.gov.gbasites.model.type.SitePoint;
 
 import com.revolsys.record.Record;
 import com.revolsys.util.Counter;
 
+/**
+ * The records for a street name by civic number. The civic numbers are stored in a sorted int
+ * array with the records for each civic number at the same index. The records are mostly added
+ * in civic number order so the insert is normally an append.
+ */
 public class RecordsForStreetName {
 
-  private final Map<Integer, RecordsForCivicNumber> recordsByCivicNumber = new TreeMap<>();
+  private static final int[] EMPTY_CIVIC_NUMBERS = new int[0];
+
+  private static final RecordsForCivicNumber[] EMPTY_RECORDS = new RecordsForCivicNumber[0];
+
+  public static int getCivicNumber(final Record record) {
+    final Integer civicNumber = record.getInteger(SitePoint.CIVIC_NUMBER);
+    if (civicNumber == null) {
+      return -1;
+    } else {
+      return civicNumber;
+    }
+  }
+
+  private int[] civicNumbers = EMPTY_CIVIC_NUMBERS;
+
+  private RecordsForCivicNumber[] recordsByCivicNumber = EMPTY_RECORDS;
+
+  private int civicNumberCount;
 
   private final String streetName;
 
@@ -21,46 +41,122 @@ public class RecordsForStreetName {
   }
 
   public void addRecord(final Record record) {
-    final Integer civicNumber = record.getInteger(SitePoint.CIVIC_NUMBER, -1);
-    RecordsForCivicNumber records = this.recordsByCivicNumber.get(civicNumber);
-    if (records == null) {
-      records = new RecordsForCivicNumber(civicNumber);
-      this.recordsByCivicNumber.put(civicNumber, records);
-    }
+    final int civicNumber = getCivicNumber(record);
+    final RecordsForCivicNumber records = getOrAddCivicNumber(civicNumber);
     records.addRecord(record);
   }
 
   public void addRecord(final Record record, final RecordMergeCounters counters) {
-    final Integer civicNumber = record.getInteger(SitePoint.CIVIC_NUMBER, -1);
-    RecordsForCivicNumber records = this.recordsByCivicNumber.get(civicNumber);
-    if (records == null) {
-      records = new RecordsForCivicNumber(civicNumber);
-      this.recordsByCivicNumber.put(civicNumber, records);
-    }
+    final int civicNumber = getCivicNumber(record);
+    final RecordsForCivicNumber records = getOrAddCivicNumber(civicNumber);
     records.addRecord(record, counters);
   }
 
   public void deleteRecords(final Counter counter) {
-    for (final RecordsForCivicNumber records : this.recordsByCivicNumber.values()) {
-      records.deleteRecords(counter);
+    for (int i = 0; i < this.civicNumberCount; i++) {
+      final RecordsForCivicNumber records = this.recordsByCivicNumber[i];
+      if (records != null) {
+        records.deleteRecords(counter);
+      }
     }
   }
 
-  public RecordsForCivicNumber getCivicNumber(final Integer civicNumber) {
-    return this.recordsByCivicNumber.get(civicNumber);
+  public RecordsForCivicNumber getCivicNumber(final int civicNumber) {
+    final int index = indexOf(civicNumber);
+    if (index < 0) {
+      return null;
+    } else {
+      return this.recordsByCivicNumber[index];
+    }
   }
 
-  public Set<Integer> getCivicNumbers() {
-    return this.recordsByCivicNumber.keySet();
+  /**
+   * Get the civic numbers that have records in ascending order.
+   *
+   * @return The civic numbers.
+   */
+  public int[] getCivicNumbers() {
+    final int[] civicNumbers = new int[this.civicNumberCount];
+    int count = 0;
+    for (int i = 0; i < this.civicNumberCount; i++) {
+      if (this.recordsByCivicNumber[i] != null) {
+        civicNumbers[count++] = this.civicNumbers[i];
+      }
+    }
+    if (count < civicNumbers.length) {
+      return Arrays.copyOf(civicNumbers, count);
+    } else {
+      return civicNumbers;
+    }
   }
 
-  public RecordsForCivicNumber removeCivicNumber(final Integer civicNumber) {
-    final RecordsForCivicNumber records = this.recordsByCivicNumber.remove(civicNumber);
-    if (records == null) {
-      return new RecordsForCivicNumber(civicNumber);
+  private RecordsForCivicNumber getOrAddCivicNumber(final int civicNumber) {
+    final int count = this.civicNumberCount;
+    int index;
+    if (count == 0 || this.civicNumbers[count - 1] < civicNumber) {
+      index = -count - 1;
     } else {
+      index = indexOf(civicNumber);
+    }
+    if (index >= 0) {
+      RecordsForCivicNumber records = this.recordsByCivicNumber[index];
+      if (records == null) {
+        records = new RecordsForCivicNumber(civicNumber);
+        this.recordsByCivicNumber[index] = records;
+      }
       return records;
+    } else {
+      index = -index - 1;
+      if (count == this.civicNumbers.length) {
+        final int newLength = Math.max(4, count + (count >> 1));
+        this.civicNumbers = Arrays.copyOf(this.civicNumbers, newLength);
+        this.recordsByCivicNumber = Arrays.copyOf(this.recordsByCivicNumber, newLength);
+      }
+      if (index < count) {
+        System.arraycopy(this.civicNumbers, index, this.civicNumbers, index + 1, count - index);
+        System.arraycopy(this.recordsByCivicNumber, index, this.recordsByCivicNumber, index + 1,
+          count - index);
+      }
+      final RecordsForCivicNumber records = new RecordsForCivicNumber(civicNumber);
+      this.civicNumbers[index] = civicNumber;
+      this.recordsByCivicNumber[index] = records;
+      this.civicNumberCount++;
+      return records;
+    }
+  }
+
+  public int getRecordCount() {
+    int count = 0;
+    for (int i = 0; i < this.civicNumberCount; i++) {
+      final RecordsForCivicNumber records = this.recordsByCivicNumber[i];
+      if (records != null) {
+        count += records.getRecordCount();
+      }
+    }
+    return count;
+  }
+
+  private int indexOf(final int civicNumber) {
+    return Arrays.binarySearch(this.civicNumbers, 0, this.civicNumberCount, civicNumber);
+  }
+
+  /**
+   * Remove the records for the civic number. The civic number is left in the array with no
+   * records to avoid moving the later civic numbers.
+   *
+   * @param civicNumber The civic number.
+   * @return The records for the civic number, an empty set of records if there were none.
+   */
+  public RecordsForCivicNumber removeCivicNumber(final int civicNumber) {
+    final int index = indexOf(civicNumber);
+    if (index >= 0) {
+      final RecordsForCivicNumber records = this.recordsByCivicNumber[index];
+      if (records != null) {
+        this.recordsByCivicNumber[index] = null;
+        return records;
+      }
     }
+    return new RecordsForCivicNumber(civicNumber);
   }
 
   @Override
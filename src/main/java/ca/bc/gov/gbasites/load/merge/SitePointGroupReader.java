@@ -0,0 +1,170 @@
+package ca.bc.gov.gbasites.load.merge;
+
+import java.util.Comparator;
+import java.util.Iterator;
+
+import ca.bc.gov.gbasites.model.type.SitePoint;
+
+import com.revolsys.io.BaseCloseable;
+import com.revolsys.record.Record;
+import com.revolsys.util.Counter;
+
+/**
+ * Read the records from a file sorted by {@link #KEY_COMPARATOR} one STREET_NAME, CIVIC_NUMBER
+ * group at a time. Used by the streaming mode of {@link SitePointMerger} so that only the
+ * records for the current civic number are in memory.
+ */
+public class SitePointGroupReader implements BaseCloseable {
+
+  /**
+   * The order of the streets and civic numbers in {@link RecordsForLocality} and the SITE_POINT
+   * files written by {@link SitePointMerger}.
+   */
+  public static final Comparator<Record> KEY_COMPARATOR = (record1, record2) -> {
+    final String streetName1 = getStreetName(record1);
+    final String streetName2 = getStreetName(record2);
+    final int compare = streetName1.compareTo(streetName2);
+    if (compare == 0) {
+      return Integer.compare(RecordsForStreetName.getCivicNumber(record1),
+        RecordsForStreetName.getCivicNumber(record2));
+    } else {
+      return compare;
+    }
+  };
+
+  private static String getStreetName(final Record record) {
+    return record.getString(SitePoint.STREET_NAME, "");
+  }
+
+  private final BaseCloseable resource;
+
+  private final Iterator<Record> iterator;
+
+  private final Object name;
+
+  private final Counter readCounter;
+
+  private final RecordMergeCounters counters;
+
+  private Record record;
+
+  private String streetName;
+
+  private int civicNumber;
+
+  public SitePointGroupReader(final Object name, final BaseCloseable resource,
+    final Iterator<Record> iterator, final Counter readCounter) {
+    this(name, resource, iterator, readCounter, null);
+  }
+
+  public SitePointGroupReader(final Object name, final BaseCloseable resource,
+    final Iterator<Record> iterator, final RecordMergeCounters counters) {
+    this(name, resource, iterator, counters.read, counters);
+  }
+
+  private SitePointGroupReader(final Object name, final BaseCloseable resource,
+    final Iterator<Record> iterator, final Counter readCounter,
+    final RecordMergeCounters counters) {
+    this.name = name;
+    this.resource = resource;
+    this.iterator = iterator;
+    this.readCounter = readCounter;
+    this.counters = counters;
+    next();
+  }
+
+  /**
+   * Add the records for the street name and civic number. The key must not be after the key of
+   * the next record.
+   *
+   * @param streetName The street name.
+   * @param civicNumber The civic number.
+   * @param records The records to add to.
+   */
+  public void addGroup(final String streetName, final int civicNumber,
+    final RecordsForCivicNumber records) {
+    while (isKey(streetName, civicNumber)) {
+      if (this.counters == null) {
+        records.addRecord(this.record);
+      } else {
+        records.addRecord(this.record, this.counters);
+      }
+      this.readCounter.add();
+      next();
+    }
+  }
+
+  @Override
+  public void close() {
+    this.record = null;
+    this.resource.close();
+  }
+
+  public int compareKey(final SitePointGroupReader reader) {
+    return compareKey(reader.streetName, reader.civicNumber);
+  }
+
+  private int compareKey(final String streetName, final int civicNumber) {
+    final int compare = this.streetName.compareTo(streetName);
+    if (compare == 0) {
+      return Integer.compare(this.civicNumber, civicNumber);
+    } else {
+      return compare;
+    }
+  }
+
+  public int getCivicNumber() {
+    return this.civicNumber;
+  }
+
+  public String getStreetName() {
+    return this.streetName;
+  }
+
+  public boolean hasNext() {
+    return this.record != null;
+  }
+
+  private boolean isKey(final String streetName, final int civicNumber) {
+    return this.record != null && compareKey(streetName, civicNumber) == 0;
+  }
+
+  private void next() {
+    if (this.iterator.hasNext()) {
+      final Record record = this.iterator.next();
+      final String streetName = getStreetName(record);
+      final int civicNumber = RecordsForStreetName.getCivicNumber(record);
+      if (this.record != null && compareKey(streetName, civicNumber) > 0) {
+        throw new IllegalStateException("Records must be sorted by STREET_NAME, CIVIC_NUMBER "
+          + this.name + " " + streetName + " " + civicNumber + " is before " + this.streetName
+          + " " + this.civicNumber);
+      }
+      this.record = record;
+      this.streetName = streetName;
+      this.civicNumber = civicNumber;
+    } else {
+      this.record = null;
+    }
+  }
+
+  /**
+   * Skip the records before the street name and civic number.
+   *
+   * @param streetName The street name, null to skip all the remaining records.
+   * @param civicNumber The civic number.
+   * @param skipCounter The counter to add the skipped records to.
+   */
+  public void skipBefore(final String streetName, final int civicNumber,
+    final Counter skipCounter) {
+    while (this.record != null && (streetName == null || compareKey(streetName, civicNumber) < 0)) {
+      this.readCounter.add();
+      skipCounter.add();
+      next();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.name.toString();
+  }
+}
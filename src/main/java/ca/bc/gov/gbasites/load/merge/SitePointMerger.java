@@ -4,23 +4,31 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.jeometry.common.data.identifier.Identifier;
+import org.jeometry.common.exception.Exceptions;
 import org.jeometry.common.logging.Logs;
 
 import ca.bc.gov.gba.core.model.CountNames;
+import ca.bc.gov.gba.core.model.Gba;
 import ca.bc.gov.gba.itn.model.code.PartnerOrganization;
 import ca.bc.gov.gba.process.qa.AbstractTaskByLocalityProcess;
 import ca.bc.gov.gbasites.controller.GbaSiteDatabase;
 import ca.bc.gov.gbasites.load.ImportSites;
 import ca.bc.gov.gbasites.load.common.ProviderSitePointConverter;
+import ca.bc.gov.gbasites.load.common.RecordSorter;
 import ca.bc.gov.gbasites.load.provider.addressbc.AddressBC;
 import ca.bc.gov.gbasites.load.provider.geobc.GeoBC;
 import ca.bc.gov.gbasites.model.type.SitePoint;
 
+import com.revolsys.collection.SimpleValueHolder;
 import com.revolsys.collection.list.Lists;
 import com.revolsys.collection.map.LinkedHashMapEx;
 import com.revolsys.collection.map.MapEx;
@@ -29,7 +37,9 @@ import com.revolsys.geometry.model.Punctual;
 import com.revolsys.io.file.AtomicPathUpdator;
 import com.revolsys.io.file.Paths;
 import com.revolsys.jdbc.io.JdbcRecordStore;
+import com.revolsys.parallel.process.ProcessNetwork;
 import com.revolsys.record.Record;
+import com.revolsys.record.io.RecordReader;
 import com.revolsys.record.io.RecordWriter;
 import com.revolsys.record.schema.RecordDefinition;
 import com.revolsys.transaction.Transaction;
@@ -43,6 +53,23 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
 
   public static final String MOVED = "Moved";
 
+  /**
+   * Maximum number of threads used to merge the streets within a single locality.
+   */
+  private static final int STREET_THREAD_COUNT = Math.max(1,
+    Runtime.getRuntime().availableProcessors() / 2);
+
+  /**
+   * Small localities are merged on the locality's thread.
+   */
+  private static final int MIN_STREETS_PER_THREAD = 50;
+
+  /**
+   * Maximum number of records from a provider file held in memory when sorting for the streaming
+   * merge.
+   */
+  private static final int STREAMING_SORT_RECORD_COUNT = 50000;
+
   private static final List<String> UPDATE_IGNORE_FIELD_NAMES = Arrays.asList(SITE_ID,
     PARENT_SITE_ID);
 
@@ -217,6 +244,16 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
 
   private Counter counterMergedWrite;
 
+  private final boolean streaming;
+
+  private final boolean incremental;
+
+  /**
+   * Set if a street merge process failed, to stop the other processes and discard the files for
+   * the locality.
+   */
+  private volatile boolean mergeFailed;
+
   public SitePointMerger(final ImportSites dialog) {
     super(dialog);
     this.countersProvider = new RecordMergeCounters(this.dialog.labelCounts(ImportSites.PROVIDERS),
@@ -225,22 +262,33 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
       GeoBC.PARTNER_ORGANIZATION);
     this.countersAddressBc = new RecordMergeCounters(this.dialog.labelCounts(AddressBC.NAME),
       AddressBC.PARTNER_ORGANIZATION);
+    this.streaming = dialog.isMergeStreaming();
+    this.incremental = dialog.isMergeIncremental();
+  }
 
+  void addCounts(final int writeCount, final int insertCount, final int updateCount,
+    final int matchedCount, final int deleteCount, final int toDeleteCount) {
+    this.counterMergedWrite.add(writeCount);
+    this.counterInsert.add(insertCount);
+    this.counterUpdate.add(updateCount);
+    this.counterMatched.add(matchedCount);
+    this.counterDelete.add(deleteCount);
+    this.counterToDelete.add(toDeleteCount);
   }
 
-  private synchronized void deleteRecord(final Record record, final boolean forceDelete) {
+  private void deleteRecord(final StreetMergeBuffer buffer, final Record record,
+    final boolean forceDelete) {
     if (forceDelete) {
-      this.counterDelete.add();
+      buffer.delete();
     } else {
-      writeRecord(record);
-      this.writerDelete.write(record);
-      this.counterToDelete.add();
+      buffer.toDelete(record);
     }
   }
 
-  private void deleteRecords(final List<Record> records, final boolean forceDelete) {
+  private void deleteRecords(final StreetMergeBuffer buffer, final List<Record> records,
+    final boolean forceDelete) {
     for (final Record record : cancellable(records)) {
-      deleteRecord(record, forceDelete);
+      deleteRecord(buffer, record, forceDelete);
     }
   }
 
@@ -273,6 +321,7 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
     this.counterMatched = getCounter(ImportSites.MATCHED);
 
     this.counterMergedWrite = getCounter(ImportSites.MERGED_WRITE);
+    this.mergeFailed = false;
 
     this.countersProvider.init(this.localityName);
     this.countersGeoBc.init(this.localityName);
@@ -280,14 +329,9 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
 
   }
 
-  protected void insertRecord(final Record record) {
-    writeRecord(record);
-    this.counterInsert.add();
-  }
-
   @Override
   public boolean isCancelled() {
-    return this.dialog.isCancelled();
+    return this.mergeFailed || this.dialog.isCancelled();
   }
 
   private RecordsForLocality loadLocalityProviderSitePoints() {
@@ -324,34 +368,108 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
     return records;
   }
 
+  private void addProviderGroupReaders(final List<SitePointGroupReader> readers,
+    final Path directory, final RecordMergeCounters counters) {
+    final List<Path> files = ImportSites.SITE_POINT_BY_LOCALITY.listLocalityFiles(directory,
+      this.localityName);
+    for (final Path file : cancellable(files)) {
+      try (
+        RecordReader reader = RecordReader.newRecordReader(file)) {
+        final RecordSorter sorter = new RecordSorter(reader, SitePointGroupReader.KEY_COMPARATOR,
+          STREAMING_SORT_RECORD_COUNT, ImportSites.SITES_TEMP_DIRECTORY);
+        try {
+          sorter.addRecords(cancellable(reader));
+        } catch (final RuntimeException e) {
+          sorter.close();
+          throw e;
+        }
+        readers.add(new SitePointGroupReader(file, sorter, sorter.iterator(), counters));
+      }
+    }
+  }
+
   private void merge01Locality(final RecordsForLocality gbaLocalitySites,
     final RecordsForLocality providerLocalitySites) {
-    for (final String streetName : cancellable(providerLocalitySites.getStreetNames())) {
+    final List<String> streetNames = Lists.toArray(providerLocalitySites.getStreetNames());
+    final StreetMergeBuffer[] buffers = new StreetMergeBuffer[streetNames.size()];
+    final List<Integer> streetIndexes = new LinkedList<>();
+    for (int i = 0; i < buffers.length; i++) {
+      final String streetName = streetNames.get(i);
       final RecordsForStreetName gbaStreetRecords = gbaLocalitySites.removeStreet(streetName);
       final RecordsForStreetName providerStreetRecords = providerLocalitySites
         .getStreet(streetName);
-      merge02Street(streetName, gbaStreetRecords, providerStreetRecords);
+      buffers[i] = new StreetMergeBuffer(streetName, gbaStreetRecords, providerStreetRecords);
+      streetIndexes.add(i);
+    }
+
+    final int threadCount = Math.min(STREET_THREAD_COUNT, buffers.length / MIN_STREETS_PER_THREAD);
+    if (threadCount > 1) {
+      final SimpleValueHolder<Throwable> error = new SimpleValueHolder<>();
+      final ProcessNetwork processNetwork = new ProcessNetwork();
+      for (int i = 0; i < threadCount; i++) {
+        processNetwork.addProcess(this.localityName + " Merge " + (i + 1), () -> {
+          while (!isCancelled()) {
+            final int streetIndex;
+            synchronized (streetIndexes) {
+              if (error.getValue() != null || streetIndexes.isEmpty()) {
+                return;
+              } else {
+                streetIndex = streetIndexes.remove(0);
+              }
+            }
+            try {
+              merge02Street(buffers[streetIndex]);
+            } catch (final Throwable e) {
+              synchronized (streetIndexes) {
+                if (error.getValue() == null) {
+                  error.setValue(e);
+                }
+              }
+              this.mergeFailed = true;
+              return;
+            }
+          }
+        });
+      }
+      processNetwork.startAndWait();
+      // Don't write the buffers or save the manifest, the files are discarded as it's cancelled
+      if (error.getValue() != null) {
+        throw Exceptions.wrap("Error merging streets in " + this.localityName, error.getValue());
+      }
+    } else {
+      for (final StreetMergeBuffer buffer : cancellable(Arrays.asList(buffers))) {
+        merge02Street(buffer);
+      }
+    }
+
+    for (final StreetMergeBuffer buffer : cancellable(Arrays.asList(buffers))) {
+      buffer.flush(this.writer, this.writerDelete, this);
     }
 
     gbaLocalitySites.deleteRecords(this.counterDelete);
   }
 
-  private void merge02Street(final String streetName, final RecordsForStreetName gbaStreetRecords,
-    final RecordsForStreetName providerStreetRecords) {
-    for (final Integer civicNumber : cancellable(providerStreetRecords.getCivicNumbers())) {
+  private void merge02Street(final StreetMergeBuffer buffer) {
+    final String streetName = buffer.getStreetName();
+    final RecordsForStreetName gbaStreetRecords = buffer.getGbaRecords();
+    final RecordsForStreetName providerStreetRecords = buffer.getProviderRecords();
+    for (final int civicNumber : providerStreetRecords.getCivicNumbers()) {
+      if (isCancelled()) {
+        return;
+      }
       final RecordsForCivicNumber gbaCivicNumberRecords = gbaStreetRecords
         .removeCivicNumber(civicNumber);
       final RecordsForCivicNumber providerCivicNumberRecords = providerStreetRecords
         .getCivicNumber(civicNumber);
-      merge03CivicNumber(civicNumber, streetName, gbaCivicNumberRecords,
+      merge03CivicNumber(buffer, civicNumber, streetName, gbaCivicNumberRecords,
         providerCivicNumberRecords);
     }
 
-    gbaStreetRecords.deleteRecords(this.counterDelete);
+    buffer.addDeleteCount(gbaStreetRecords.getRecordCount());
   }
 
-  private void merge03CivicNumber(final Integer civicNumber, final String streetName,
-    final RecordsForCivicNumber gbaCivicNumberRecords,
+  private void merge03CivicNumber(final StreetMergeBuffer buffer, final int civicNumber,
+    final String streetName, final RecordsForCivicNumber gbaCivicNumberRecords,
     final RecordsForCivicNumber providerCivicNumberRecords) {
 
     for (final String civicNumberSuffix : cancellable(
@@ -360,93 +478,214 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
         .removeCivicNumberSuffix(civicNumberSuffix);
       final RecordsForCivicNumberSuffix providerRecords = providerCivicNumberRecords
         .getCivicNumberSuffix(civicNumberSuffix);
-      merge04CivicNumberSuffix(civicNumber, civicNumberSuffix, streetName, gbaRecords,
+      merge04CivicNumberSuffix(buffer, civicNumber, civicNumberSuffix, streetName, gbaRecords,
         providerRecords);
     }
 
-    gbaCivicNumberRecords.deleteRecords(this.counterDelete);
+    buffer.addDeleteCount(gbaCivicNumberRecords.getRecordCount());
   }
 
-  private void merge04CivicNumberSuffix(final Integer civicNumber, final String civicNumberSuffix,
-    final String streetName, final RecordsForCivicNumberSuffix gbaRecordsForSuffix,
+  private void merge04CivicNumberSuffix(final StreetMergeBuffer buffer, final int civicNumber,
+    final String civicNumberSuffix, final String streetName,
+    final RecordsForCivicNumberSuffix gbaRecordsForSuffix,
     final RecordsForCivicNumberSuffix providerRecordsForSuffix) {
-    providerRecordsForSuffix.mergeFullAddress(this.countersProvider);
-    providerRecordsForSuffix.mergeFullAddress(this.countersGeoBc);
-    providerRecordsForSuffix.mergeFullAddress(this.countersAddressBc);
+    providerRecordsForSuffix.mergeFullAddress(this.countersProvider, buffer);
+    providerRecordsForSuffix.mergeFullAddress(this.countersGeoBc, buffer);
+    providerRecordsForSuffix.mergeFullAddress(this.countersAddressBc, buffer);
 
-    merge05MatchGbaRecords(gbaRecordsForSuffix, providerRecordsForSuffix);
+    merge05MatchGbaRecords(buffer, gbaRecordsForSuffix, providerRecordsForSuffix);
   }
 
-  private void merge05MatchGbaRecords(final RecordsForCivicNumberSuffix gbaRecordsForSuffix,
+  private void merge05MatchGbaRecords(final StreetMergeBuffer buffer,
+    final RecordsForCivicNumberSuffix gbaRecordsForSuffix,
     final RecordsForCivicNumberSuffix providerRecordsForSuffix) {
     final List<Record> gbaRecords = gbaRecordsForSuffix.getRecords();
     final List<Record> providerRecords = providerRecordsForSuffix.getRecords();
+    RecordPointIndex gbaPointIndex = null;
+    if (gbaRecords.size() > RecordPointIndex.MIN_RECORD_COUNT) {
+      gbaPointIndex = new RecordPointIndex(gbaRecords);
+    }
+    final Set<Record> matchedGbaRecords = Collections.newSetFromMap(new IdentityHashMap<>());
 
     for (final Record providerRecord : cancellable(providerRecords)) {
       final Punctual point1 = providerRecord.getGeometry();
 
       boolean matched = false;
-      for (final Iterator<Record> gbaIterator = gbaRecords.iterator(); gbaIterator.hasNext();) {
-        final Record gbaRecord = gbaIterator.next();
-        final Punctual point2 = gbaRecord.getGeometry();
-        if (point1.intersects(point2)) {
-          gbaIterator.remove();
-          if (matched) {
-            this.counterDelete.add();
-          } else {
-            updateRecord(gbaRecord, providerRecord);
-            matched = true;
+      final List<Record> intersectingGbaRecords;
+      if (gbaPointIndex == null) {
+        intersectingGbaRecords = new ArrayList<>();
+        for (final Record gbaRecord : gbaRecords) {
+          if (!matchedGbaRecords.contains(gbaRecord)) {
+            final Punctual point2 = gbaRecord.getGeometry();
+            if (point1.intersects(point2)) {
+              intersectingGbaRecords.add(gbaRecord);
+            }
           }
         }
+      } else {
+        intersectingGbaRecords = gbaPointIndex.getIntersecting(point1);
+      }
+      for (final Record gbaRecord : intersectingGbaRecords) {
+        matched = merge06MatchGbaRecord(buffer, gbaPointIndex, matchedGbaRecords, gbaRecord,
+          providerRecord, matched);
       }
       if (!matched) {
-        for (final Iterator<Record> gbaIterator = gbaRecords.iterator(); gbaIterator.hasNext();) {
-          final Record gbaRecord = gbaIterator.next();
-          if (gbaRecord.equalValue(providerRecord, FULL_ADDRESS)
+        for (final Record gbaRecord : gbaRecords) {
+          if (!matchedGbaRecords.contains(gbaRecord)
+            && gbaRecord.equalValue(providerRecord, FULL_ADDRESS)
             && gbaRecord.equalValue(providerRecord, CREATE_PARTNER_ORG)) {
-            gbaIterator.remove();
-            if (matched) {
-              this.counterDelete.add();
-            } else {
-              updateRecord(gbaRecord, providerRecord);
-              matched = true;
-            }
+            matched = merge06MatchGbaRecord(buffer, gbaPointIndex, matchedGbaRecords, gbaRecord,
+              providerRecord, matched);
           }
         }
       }
       if (!matched) {
-        insertRecord(providerRecord);
+        buffer.insert(providerRecord);
       }
     }
 
-    deleteRecords(gbaRecords, false);
+    if (!matchedGbaRecords.isEmpty()) {
+      gbaRecords.removeIf(matchedGbaRecords::contains);
+    }
+    deleteRecords(buffer, gbaRecords, false);
+  }
+
+  /**
+   * Remove the GBA record from the unmatched records. The first GBA record matched to a provider
+   * record is updated, any others are deleted.
+   */
+  private boolean merge06MatchGbaRecord(final StreetMergeBuffer buffer,
+    final RecordPointIndex gbaPointIndex, final Set<Record> matchedGbaRecords,
+    final Record gbaRecord, final Record providerRecord, final boolean matched) {
+    if (gbaPointIndex != null) {
+      gbaPointIndex.removeRecord(gbaRecord);
+    }
+    matchedGbaRecords.add(gbaRecord);
+    if (matched) {
+      buffer.delete();
+    } else {
+      updateRecord(buffer, gbaRecord, providerRecord);
+    }
+    return true;
+  }
+
+  /**
+   * Merge the records one STREET_NAME, CIVIC_NUMBER group at a time. The provider files are
+   * sorted using a {@link RecordSorter} and the previous SITE_POINT file is read in the order it
+   * was written. The records are written in the same order as {@link #merge01Locality}.
+   */
+  private void mergeStreaming(final AtomicPathUpdator pathUpdator, final boolean targetExists) {
+    final List<SitePointGroupReader> providerReaders = new ArrayList<>();
+    SitePointGroupReader gbaReader = null;
+    try {
+      addProviderGroupReaders(providerReaders, ProviderSitePointConverter.PROVIDER_DIRECTORY,
+        this.countersProvider);
+      addProviderGroupReaders(providerReaders, GeoBC.DIRECTORY, this.countersGeoBc);
+      addProviderGroupReaders(providerReaders, AddressBC.DIRECTORY, this.countersAddressBc);
+      if (targetExists) {
+        final Path file = pathUpdator.getTargetPath();
+        final RecordReader reader = RecordReader.newRecordReader(file);
+        gbaReader = new SitePointGroupReader(file, reader, reader.iterator(),
+          getCounter(ImportSites.MERGED_READ));
+      }
+      while (!isCancelled()) {
+        SitePointGroupReader nextReader = null;
+        for (final SitePointGroupReader providerReader : providerReaders) {
+          if (providerReader.hasNext()) {
+            if (nextReader == null || providerReader.compareKey(nextReader) < 0) {
+              nextReader = providerReader;
+            }
+          }
+        }
+        if (nextReader == null) {
+          break;
+        }
+        final String streetName = nextReader.getStreetName();
+        final int civicNumber = nextReader.getCivicNumber();
+
+        final RecordsForCivicNumber providerRecords = new RecordsForCivicNumber(civicNumber);
+        for (final SitePointGroupReader providerReader : providerReaders) {
+          providerReader.addGroup(streetName, civicNumber, providerRecords);
+        }
+        final RecordsForCivicNumber gbaRecords = new RecordsForCivicNumber(civicNumber);
+        if (gbaReader != null) {
+          gbaReader.skipBefore(streetName, civicNumber, this.counterDelete);
+          gbaReader.addGroup(streetName, civicNumber, gbaRecords);
+        }
+
+        final StreetMergeBuffer buffer = new StreetMergeBuffer(streetName, null, null);
+        merge03CivicNumber(buffer, civicNumber, streetName, gbaRecords, providerRecords);
+        buffer.flush(this.writer, this.writerDelete, this);
+      }
+      if (gbaReader != null && !isCancelled()) {
+        gbaReader.skipBefore(null, 0, this.counterDelete);
+      }
+    } finally {
+      for (final SitePointGroupReader providerReader : providerReaders) {
+        providerReader.close();
+      }
+      if (gbaReader != null) {
+        gbaReader.close();
+      }
+    }
+  }
+
+  private LocalityMergeManifest newManifest() {
+    final List<Path> inputFiles = new ArrayList<>();
+    for (final Path directory : Arrays.asList(ProviderSitePointConverter.PROVIDER_DIRECTORY,
+      GeoBC.DIRECTORY, AddressBC.DIRECTORY)) {
+      inputFiles.addAll(
+        ImportSites.SITE_POINT_BY_LOCALITY.listLocalityFiles(directory, this.localityName));
+    }
+    final String localityFileName = Gba.toFileName(this.localityName);
+    final Path manifestFile = ImportSites.SITE_POINT_MANIFEST
+      .getLocalityFilePath(ImportSites.SITES_DIRECTORY, localityFileName);
+    return new LocalityMergeManifest(manifestFile, inputFiles);
   }
 
   @Override
   public boolean processLocality() {
+    final LocalityMergeManifest manifest = newManifest();
+    final Path targetFile = ImportSites.SITE_POINT.getLocalityFilePath(ImportSites.SITES_DIRECTORY,
+      Gba.toFileName(this.localityName));
+    if (this.incremental && manifest.isUnchanged(targetFile)) {
+      getCounter(ImportSites.UNCHANGED).add(manifest.getRecordCount());
+      return true;
+    }
+    manifest.delete();
+
     Path targetDeleteFile = null;
-    try (
-      AtomicPathUpdator pathUpdator = ImportSites.SITE_POINT.newLocalityPathUpdator(this.dialog,
-        ImportSites.SITES_DIRECTORY, this.localityName);
-      AtomicPathUpdator pathUpdatorDelete = ImportSites.SITE_POINT_TO_DELETE
-        .newLocalityPathUpdator(this.dialog, ImportSites.SITES_DIRECTORY, this.localityName);
-      Transaction transaction = this.recordStore.newTransaction()) {
-
-      final RecordDefinition recordDefinition = ImportSites.getSitePointTsvRecordDefinition();
-      final boolean targetExists = pathUpdator.isTargetExists();
-      final Path file = pathUpdator.getPath();
-      final Path fileDelete = pathUpdatorDelete.getPath();
+    try {
       try (
-        RecordWriter writer = RecordWriter.newRecordWriter(recordDefinition, file);
-        RecordWriter writerDelete = RecordWriter.newRecordWriter(recordDefinition, fileDelete);) {
-        this.writer = writer;
-        this.writerDelete = writerDelete;
-        final RecordsForLocality providerSites = loadLocalityProviderSitePoints();
-        final RecordsForLocality sites = loadSitePoints(pathUpdator, targetExists);
-
-        merge01Locality(sites, providerSites);
+        AtomicPathUpdator pathUpdator = ImportSites.SITE_POINT.newLocalityPathUpdator(this,
+          ImportSites.SITES_DIRECTORY, this.localityName);
+        AtomicPathUpdator pathUpdatorDelete = ImportSites.SITE_POINT_TO_DELETE
+          .newLocalityPathUpdator(this, ImportSites.SITES_DIRECTORY, this.localityName);
+        Transaction transaction = this.recordStore.newTransaction()) {
+
+        final RecordDefinition recordDefinition = ImportSites.getSitePointTsvRecordDefinition();
+        final boolean targetExists = pathUpdator.isTargetExists();
+        final Path file = pathUpdator.getPath();
+        final Path fileDelete = pathUpdatorDelete.getPath();
+        try (
+          RecordWriter writer = RecordWriter.newRecordWriter(recordDefinition, file);
+          RecordWriter writerDelete = RecordWriter.newRecordWriter(recordDefinition, fileDelete);) {
+          this.writer = writer;
+          this.writerDelete = writerDelete;
+          if (this.streaming) {
+            mergeStreaming(pathUpdator, targetExists);
+          } else {
+            final RecordsForLocality providerSites = loadLocalityProviderSitePoints();
+            final RecordsForLocality sites = loadSitePoints(pathUpdator, targetExists);
+
+            merge01Locality(sites, providerSites);
+          }
+        }
+        targetDeleteFile = pathUpdatorDelete.getTargetPath();
+      }
+      if (!isCancelled()) {
+        manifest.save(targetFile, this.counterMergedWrite.get());
       }
-      targetDeleteFile = pathUpdatorDelete.getTargetPath();
       return true;
     } catch (final Exception e) {
       Logs.error(this, "Error merging sites for: " + e.getMessage(), e);
@@ -466,7 +705,8 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
     }
   }
 
-  private void updateRecord(final Record gbaRecord, final Record providerRecord) {
+  private void updateRecord(final StreetMergeBuffer buffer, final Record gbaRecord,
+    final Record providerRecord) {
     final MapEx newValues = new LinkedHashMapEx();
     for (final String fieldName : FIELD_NAMES) {
       final Object providerValue = providerRecord.getValue(fieldName);
@@ -477,22 +717,11 @@ public class SitePointMerger extends AbstractTaskByLocalityProcess
         newValues.put(fieldName, providerValue);
       }
     }
-    updateRecord(gbaRecord, providerRecord, newValues);
-  }
-
-  private synchronized void updateRecord(final Record gbaRecord, final Record providerRecord,
-    final MapEx newValues) {
     if (newValues.isEmpty()) {
-      this.counterMatched.add();
+      buffer.matched(gbaRecord);
     } else {
       gbaRecord.setValues(newValues);
-      this.counterUpdate.add();
+      buffer.update(gbaRecord);
     }
-    writeRecord(gbaRecord);
-  }
-
-  private void writeRecord(final Record record) {
-    this.writer.write(record);
-    this.counterMergedWrite.add();
   }
 }
@@ -0,0 +1,131 @@
+package ca.bc.gov.gbasites.load.merge;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.revolsys.record.Record;
+import com.revolsys.record.io.RecordWriter;
+
+/**
+ * Records and counts for a single street name from {@link SitePointMerger}. Streets are merged
+ * in parallel so the results are buffered and then flushed in street name order to keep the
+ * output files identical to a sequential merge. The duplicate and merge unit counts for the
+ * {@link RecordMergeCounters} are also buffered so the shared counters are only updated on the
+ * locality's thread.
+ */
+public class StreetMergeBuffer {
+
+  private final List<Record> records = new ArrayList<>();
+
+  private final List<Record> deleteRecords = new ArrayList<>();
+
+  private final Map<RecordMergeCounters, int[]> mergeCountsByCounters = new IdentityHashMap<>();
+
+  private int deleteCount;
+
+  private int insertCount;
+
+  private int matchedCount;
+
+  private int toDeleteCount;
+
+  private int updateCount;
+
+  private final String streetName;
+
+  private final RecordsForStreetName gbaRecords;
+
+  private final RecordsForStreetName providerRecords;
+
+  public StreetMergeBuffer(final String streetName, final RecordsForStreetName gbaRecords,
+    final RecordsForStreetName providerRecords) {
+    this.streetName = streetName;
+    this.gbaRecords = gbaRecords;
+    this.providerRecords = providerRecords;
+  }
+
+  public void addDeleteCount(final int count) {
+    this.deleteCount += count;
+  }
+
+  public void delete() {
+    this.deleteCount++;
+  }
+
+  public void duplicate(final RecordMergeCounters counters) {
+    getMergeCounts(counters)[0]++;
+  }
+
+  public void flush(final RecordWriter writer, final RecordWriter writerDelete,
+    final SitePointMerger merger) {
+    for (final Record record : this.records) {
+      writer.write(record);
+    }
+    for (final Record record : this.deleteRecords) {
+      writerDelete.write(record);
+    }
+    merger.addCounts(this.records.size(), this.insertCount, this.updateCount, this.matchedCount,
+      this.deleteCount, this.toDeleteCount);
+    for (final Entry<RecordMergeCounters, int[]> entry : this.mergeCountsByCounters.entrySet()) {
+      final RecordMergeCounters counters = entry.getKey();
+      final int[] counts = entry.getValue();
+      counters.duplicate.add(counts[0]);
+      counters.mergeUnit.add(counts[1]);
+    }
+    this.mergeCountsByCounters.clear();
+  }
+
+  private int[] getMergeCounts(final RecordMergeCounters counters) {
+    int[] counts = this.mergeCountsByCounters.get(counters);
+    if (counts == null) {
+      counts = new int[2];
+      this.mergeCountsByCounters.put(counters, counts);
+    }
+    return counts;
+  }
+
+  public RecordsForStreetName getGbaRecords() {
+    return this.gbaRecords;
+  }
+
+  public RecordsForStreetName getProviderRecords() {
+    return this.providerRecords;
+  }
+
+  public String getStreetName() {
+    return this.streetName;
+  }
+
+  public void insert(final Record record) {
+    this.records.add(record);
+    this.insertCount++;
+  }
+
+  public void matched(final Record record) {
+    this.records.add(record);
+    this.matchedCount++;
+  }
+
+  public void mergeUnit(final RecordMergeCounters counters) {
+    getMergeCounts(counters)[1]++;
+  }
+
+  public void toDelete(final Record record) {
+    this.records.add(record);
+    this.deleteRecords.add(record);
+    this.toDeleteCount++;
+  }
+
+  @Override
+  public String toString() {
+    return this.streetName;
+  }
+
+  public void update(final Record record) {
+    this.records.add(record);
+    this.updateCount++;
+  }
+}
@@ -1,12 +1,16 @@
 package ca.bc.gov.gbasites.load.provider.addressbc;
 
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -23,9 +27,12 @@ import ca.bc.gov.gba.itn.model.code.PartnerOrganization;
 import ca.bc.gov.gba.ui.StatisticsDialog;
 import ca.bc.gov.gbasites.controller.GbaSiteDatabase;
 import ca.bc.gov.gbasites.load.ImportSites;
+import ca.bc.gov.gbasites.load.common.FileDigest;
 import ca.bc.gov.gbasites.load.common.PartnerOrganizationFiles;
 import ca.bc.gov.gbasites.load.common.ProviderSitePointConverter;
+import ca.bc.gov.gbasites.load.common.SplitByProviderWriteQueue;
 import ca.bc.gov.gbasites.load.common.SplitByProviderWriter;
+import ca.bc.gov.gbasites.load.readsource.SourceMetadata;
 import ca.bc.gov.gbasites.model.type.SitePoint;
 
 import com.revolsys.collection.map.LinkedHashMapEx;
@@ -34,11 +41,13 @@ import com.revolsys.collection.range.RangeSet;
 import com.revolsys.collection.set.Sets;
 import com.revolsys.io.ZipUtil;
 import com.revolsys.io.file.Paths;
+import com.revolsys.parallel.process.ProcessNetwork;
 import com.revolsys.record.Record;
 import com.revolsys.record.io.RecordReader;
 import com.revolsys.record.io.format.tsv.Tsv;
 import com.revolsys.record.io.format.tsv.TsvWriter;
 import com.revolsys.record.schema.RecordDefinitionImpl;
+import com.revolsys.spring.resource.PathResource;
 import com.revolsys.spring.resource.UrlResource;
 import com.revolsys.util.Cancellable;
 import com.revolsys.util.CaseConverter;
@@ -49,6 +58,8 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
   private static final String STATISTICS_NAME = AddressBC.COUNT_PREFIX + "Source";
 
+  private static final long MEGABYTE = 1024 * 1024;
+
   public static void downloadAddressBc(final Path sourceDirectory) {
     final String url = "ftp://geoshare.icisociety.ca/Addresses/ABC.csv.zip";
     try {
@@ -57,7 +68,27 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
       final UrlResource resource = new UrlResource(url, user, password);
 
       Paths.createDirectories(sourceDirectory);
-      ZipUtil.unzipFile(resource, sourceDirectory);
+      final Path zipFile = sourceDirectory.resolve("ABC.csv.zip");
+      final Path csvFile = sourceDirectory.resolve("ABC_CIVIC_ADDRESS.csv");
+      final SourceMetadata metadata = new SourceMetadata(
+        sourceDirectory.resolve("ABC.csv.zip.properties"));
+      final Path downloadFile = sourceDirectory.resolve("ABC.csv.zip.download");
+      try (
+        InputStream in = resource.getInputStream()) {
+        Files.copy(in, downloadFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+      // Skip the unzip if the hash of the zip file is the same as the last download
+      final Map<String, String> validators = Collections.singletonMap("zipHash",
+        FileDigest.sha256(downloadFile));
+      if (metadata.isUnchanged(validators, zipFile) && Files.exists(csvFile)) {
+        Files.delete(downloadFile);
+        Logs.info(AddressBcSplitByProvider.class, url + ": unchanged, unzip skipped");
+      } else {
+        metadata.delete();
+        Files.move(downloadFile, zipFile, StandardCopyOption.REPLACE_EXISTING);
+        ZipUtil.unzipFile(new PathResource(zipFile), sourceDirectory);
+        metadata.save(validators, zipFile, 0);
+      }
     } catch (final Exception e) {
       throw Exceptions.wrap("Error downloading: " + url, e);
     }
@@ -79,13 +110,13 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
   protected final Path sourceDirectory;
 
-  private final Map<String, RangeSet> unitDescriptorsById = new HashMap<>();
+  private final CivicIdTable<String> unitDescriptorsById = new CivicIdTable<>();
 
-  private final Map<String, String> buildingNameById = new HashMap<>();
+  private final CivicIdTable<String> buildingNameById = new CivicIdTable<>();
 
-  private final Map<String, String> buildingTypeById = new HashMap<>();
+  private final CivicIdTable<String> buildingTypeById = new CivicIdTable<>();
 
-  private final Map<String, String> postalCodeById = new HashMap<>();
+  private final CivicIdTable<String> postalCodeById = new CivicIdTable<>();
 
   private final StatisticsDialog dialog;
 
@@ -99,6 +130,8 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
   private final Path directory;
 
+  private volatile Throwable error;
+
   protected String statisticsName = STATISTICS_NAME;
 
   private final Path baseDirectory;
@@ -107,6 +140,12 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
   protected String orgFileName = "ADDRESS_BC_PARTNER_ORGANIZATION.xlsx";
 
+  /**
+   * The number of processes used to write the provider files, 1 to write on the read thread.
+   */
+  protected int writeThreadCount = Math.min(8,
+    Math.max(1, Runtime.getRuntime().availableProcessors() - 2));
+
   public AddressBcSplitByProvider(final StatisticsDialog dialog, final Path baseDirectory) {
     this.dialog = dialog;
     this.baseDirectory = baseDirectory;
@@ -121,11 +160,35 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
     recordDefinitionImpl.addField(AddressBC.POSTAL_CODE, DataTypes.STRING);
   }
 
+  /**
+   * Add the heap currently used in MB to the statistics. No garbage collection is forced, so the
+   * values are approximate.
+   */
+  private void addHeapUsedCount(final String countName) {
+    final Runtime runtime = Runtime.getRuntime();
+    final long heapUsed = (runtime.totalMemory() - runtime.freeMemory()) / MEGABYTE;
+    this.dialog.getCounter("Memory", "CIVIC_ID Tables", countName).add(heapUsed);
+  }
+
   private void addWriter(final String dataProvider, final SplitByProviderWriter providerWriter) {
     this.writerByProvider.put(dataProvider, providerWriter);
     this.writerByProvider.put(dataProvider.toUpperCase(), providerWriter);
   }
 
+  private SplitByProviderWriter getWriter(final Record record) {
+    String issuingAgency = record.getString(AddressBC.ISSUING_AGENCY);
+    if (issuingAgency == null
+      || "FRASER-FORT GEORGE REGIONAL DISTRICT".equalsIgnoreCase(issuingAgency)
+      || "CENTRAL OKANAGAN REGIONAL DISTRICT".equalsIgnoreCase(issuingAgency)
+      || "FROM FIRST NATION".equalsIgnoreCase(issuingAgency)) {
+      issuingAgency = record.getString(AddressBC.LOCALITY);
+      if (issuingAgency == null) {
+        issuingAgency = "Unknown";
+      }
+    }
+    return getWriter(record, issuingAgency);
+  }
+
   private SplitByProviderWriter getWriter(final Record record, final String issuingAgency) {
     SplitByProviderWriter writer = this.writerByProvider.get(issuingAgency);
     if (writer == null) {
@@ -149,7 +212,7 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
   @Override
   public boolean isCancelled() {
-    return this.dialog.isCancelled();
+    return this.dialog.isCancelled() || this.error != null;
   }
 
   private void loadConfig() {
@@ -303,6 +366,9 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
       }
     }
+    this.postalCodeById.build();
+    this.buildingTypeById.build();
+    this.buildingNameById.build();
     for (final String buildingType : newBuildingTypes) {
       writeExtraDataWarning("ABC_EXTENDED_ADDRESS.csv", null, AddressBC.BUILDING_TYPE,
         buildingType);
@@ -316,6 +382,7 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
     final Set<String> ignoreUnitDescriptors = Sets.newHash("DOCK");
     final Set<String> ignoreUnitNumberSuffixes = Sets.newHash("MH", "BH");
+    final Map<String, RangeSet> rangeById = new HashMap<>();
     final Path file = this.sourceDirectory.resolve("ABC_SUB_ADDRESS.csv");
     try (
       RecordReader reader = RecordReader.newRecordReader(file)) {
@@ -355,10 +422,10 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
             unitDescriptor = unitDescriptor.substring(9);
           }
 
-          RangeSet range = this.unitDescriptorsById.get(civicId);
+          RangeSet range = rangeById.get(civicId);
           if (range == null) {
             range = new RangeSet();
-            this.unitDescriptorsById.put(civicId, range);
+            rangeById.put(civicId, range);
           }
           if (unitDescriptor.endsWith(" - 3994")) {
             range.add(Integer.parseInt(unitDescriptor.substring(0, unitDescriptor.length() - 7)));
@@ -408,6 +475,13 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
         }
       }
     }
+    // Only the text of the range is used so store that instead of the RangeSet
+    for (final Entry<String, RangeSet> entry : rangeById.entrySet()) {
+      final String civicId = entry.getKey();
+      final RangeSet range = entry.getValue();
+      this.unitDescriptorsById.put(civicId, range.toString());
+    }
+    this.unitDescriptorsById.build();
   }
 
   private SplitByProviderWriter newProviderWriter(final String dataProvider) {
@@ -419,7 +493,7 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
     final Counter counter = this.dialog.getCounter("Provider",
       partnerOrganization.getPartnerOrganizationName(), this.statisticsName);
 
-    providerWriter = new SplitByProviderWriter(this.dialog, dataProvider, counter,
+    providerWriter = new SplitByProviderWriter(this, dataProvider, counter,
       partnerOrganizationFiles, this.recordDefinition);
     this.writers.add(providerWriter);
     addWriter(dataProvider, providerWriter);
@@ -442,8 +516,10 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
   }
 
   protected void preRun() {
+    addHeapUsedCount("Heap Before MB");
     loadExtendedAddress();
     loadSubAddress();
+    addHeapUsedCount("Heap After MB");
   }
 
   protected void preWriteRecord(final Record sourceRecord) {
@@ -478,9 +554,9 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
 
   private void setUnitNumber(final Record sourceRecord) {
     final String civicId = sourceRecord.getString(AddressBC.CIVIC_ID);
-    final RangeSet range = this.unitDescriptorsById.get(civicId);
-    if (range != null) {
-      sourceRecord.setValue(UNIT_DESCRIPTOR, range.toString());
+    final String unitDescriptor = this.unitDescriptorsById.get(civicId);
+    if (unitDescriptor != null) {
+      sourceRecord.setValue(UNIT_DESCRIPTOR, unitDescriptor);
     }
   }
 
@@ -495,16 +571,22 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
         this.recordDefinition = recordDefinitionImpl;
         loadConfig();
         if (!isCancelled()) {
-
-          for (final Record sourceRecord : cancellable(sourceReader)) {
-
-            preWriteRecord(sourceRecord);
-            writeRecord(sourceRecord);
+          if (this.writeThreadCount > 1) {
+            splitRecordsByProviderParallel(sourceReader);
+          } else {
+            for (final Record sourceRecord : cancellable(sourceReader)) {
+              preWriteRecord(sourceRecord);
+              final SplitByProviderWriter writer = getWriter(sourceRecord);
+              writer.writeRecord(sourceRecord);
+            }
           }
         }
       }
     } catch (final Throwable e) {
-      Logs.error(this, e);
+      // Set the error before the writers are closed so the partial files aren't used
+      this.error = e;
+      throw Exceptions.wrap("Error splitting records by provider from: " + this.sourceDirectory,
+        e);
     } finally {
       for (final SplitByProviderWriter writer : this.writers) {
         writer.close();
@@ -512,6 +594,38 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
     }
   }
 
+  /**
+   * Read the records and join the extra data on this thread and write the provider files using
+   * {@link #writeThreadCount} write processes. An error reading or joining the records stops
+   * the write processes and is thrown once all the processes have finished.
+   *
+   * @param sourceReader The source record reader.
+   */
+  private void splitRecordsByProviderParallel(final RecordReader sourceReader) {
+    final SplitByProviderWriteQueue writeQueue = new SplitByProviderWriteQueue(
+      this.writeThreadCount);
+    final ProcessNetwork processNetwork = new ProcessNetwork();
+    processNetwork.addProcess(this.statisticsName + " Read", () -> {
+      try {
+        for (final Record sourceRecord : cancellable(sourceReader)) {
+          if (writeQueue.isError()) {
+            break;
+          }
+          preWriteRecord(sourceRecord);
+          final SplitByProviderWriter writer = getWriter(sourceRecord);
+          writeQueue.writeRecord(writer, sourceRecord);
+        }
+      } catch (final Throwable e) {
+        writeQueue.setError(e);
+      } finally {
+        writeQueue.finish();
+      }
+    });
+    writeQueue.addProcesses(processNetwork, this.statisticsName);
+    processNetwork.startAndWait();
+    writeQueue.throwError();
+  }
+
   private synchronized void writeExtraDataWarning(final String fileName, final String civicId,
     final String fieldName, final String fieldValue) {
     if (this.extraDataWriter == null) {
@@ -521,20 +635,4 @@ public class AddressBcSplitByProvider implements Cancellable, SitePoint {
     }
     this.extraDataWriter.write(fileName, civicId, fieldName, fieldValue);
   }
-
-  private void writeRecord(final Record record) {
-    String issuingAgency = record.getString(AddressBC.ISSUING_AGENCY);
-    if (issuingAgency == null
-      || "FRASER-FORT GEORGE REGIONAL DISTRICT".equalsIgnoreCase(issuingAgency)
-      || "CENTRAL OKANAGAN REGIONAL DISTRICT".equalsIgnoreCase(issuingAgency)
-      || "FROM FIRST NATION".equalsIgnoreCase(issuingAgency)) {
-      issuingAgency = record.getString(AddressBC.LOCALITY);
-      if (issuingAgency == null) {
-        issuingAgency = "Unknown";
-      }
-    }
-    final SplitByProviderWriter writer = getWriter(record, issuingAgency);
-    writer.writeRecord(record);
-
-  }
 }
@@ -0,0 +1,196 @@
+package ca.bc.gov.gbasites.load.provider.addressbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.bc.gov.gbasites.util.LongKeySort;
+
+/**
+ * Compact lookup table of values by AddressBC CIVIC_ID. Numeric CIVIC_IDs are stored in a sorted
+ * long array and the values are dictionary encoded as an index into a list of the distinct
+ * values. Values such as the building type and postal code are repeated for many CIVIC_IDs so
+ * this uses much less memory than a HashMap of String to String.
+ *
+ * Values are added using {@link #put(Object, Object)} and the table must be {@link #build()}
+ * before {@link #get(Object)} or {@link #remove(Object)} are used. If a CIVIC_ID is added more
+ * than once the last value is used.
+ *
+ * @param <V> The type of value.
+ */
+public class CivicIdTable<V> {
+
+  private static final int MAX_DIGITS = 18;
+
+  /**
+   * Convert the CIVIC_ID to a long. CIVIC_IDs that are not numeric, have a leading zero or are
+   * too long return -1 and are stored in the otherValueIds map.
+   */
+  private static long toLong(final Object civicId) {
+    if (civicId instanceof Number) {
+      final long value = ((Number)civicId).longValue();
+      if (value >= 0 && value == ((Number)civicId).doubleValue()) {
+        return value;
+      } else {
+        return -1;
+      }
+    } else if (civicId == null) {
+      return -1;
+    } else {
+      final String string = civicId.toString();
+      final int length = string.length();
+      if (length == 0 || length > MAX_DIGITS || length > 1 && string.charAt(0) == '0') {
+        return -1;
+      }
+      long value = 0;
+      for (int i = 0; i < length; i++) {
+        final char character = string.charAt(i);
+        if (character < '0' || character > '9') {
+          return -1;
+        }
+        value = value * 10 + character - '0';
+      }
+      return value;
+    }
+  }
+
+  private final List<V> values = new ArrayList<>();
+
+  private final Map<V, Integer> valueIdByValue = new HashMap<>();
+
+  private final Map<String, Integer> otherValueIds = new HashMap<>();
+
+  private long[] civicIds = new long[1024];
+
+  private int[] valueIds = new int[1024];
+
+  private int size;
+
+  private BitSet removed;
+
+  private boolean built;
+
+  /**
+   * Sort the CIVIC_IDs and remove any duplicates, keeping the last value added.
+   */
+  public void build() {
+    // Stable so that duplicates stay in the order they were added
+    final int[] order = LongKeySort.sortPositions(this.civicIds, this.size);
+
+    final long[] civicIds = new long[this.size];
+    final int[] valueIds = new int[this.size];
+    int count = 0;
+    for (int i = 0; i < this.size; i++) {
+      final int index = order[i];
+      final long civicId = this.civicIds[index];
+      if (count > 0 && civicIds[count - 1] == civicId) {
+        count--;
+      }
+      civicIds[count] = civicId;
+      valueIds[count] = this.valueIds[index];
+      count++;
+    }
+    this.civicIds = Arrays.copyOf(civicIds, count);
+    this.valueIds = Arrays.copyOf(valueIds, count);
+    this.size = count;
+    this.removed = new BitSet(count);
+    this.built = true;
+  }
+
+  public V get(final Object civicId) {
+    final int valueId = getValueId(civicId, false);
+    return getValue(valueId);
+  }
+
+  private V getValue(final int valueId) {
+    if (valueId < 0) {
+      return null;
+    } else {
+      return this.values.get(valueId);
+    }
+  }
+
+  private int getValueId(final Object civicId, final boolean remove) {
+    if (!this.built) {
+      throw new IllegalStateException("CivicIdTable.build() must be called before lookup");
+    }
+    final long key = toLong(civicId);
+    if (key == -1) {
+      if (civicId == null) {
+        return -1;
+      } else {
+        final String otherKey = civicId.toString();
+        final Integer valueId;
+        if (remove) {
+          valueId = this.otherValueIds.remove(otherKey);
+        } else {
+          valueId = this.otherValueIds.get(otherKey);
+        }
+        if (valueId == null) {
+          return -1;
+        } else {
+          return valueId;
+        }
+      }
+    } else {
+      final int index = Arrays.binarySearch(this.civicIds, 0, this.size, key);
+      if (index < 0 || this.removed.get(index)) {
+        return -1;
+      } else {
+        if (remove) {
+          this.removed.set(index);
+        }
+        return this.valueIds[index];
+      }
+    }
+  }
+
+  /**
+   * @return The number of distinct values.
+   */
+  public int getValueCount() {
+    return this.values.size();
+  }
+
+  public void put(final Object civicId, final V value) {
+    if (this.built) {
+      throw new IllegalStateException("Cannot add values after CivicIdTable.build()");
+    }
+    Integer valueId = this.valueIdByValue.get(value);
+    if (valueId == null) {
+      valueId = this.values.size();
+      this.values.add(value);
+      this.valueIdByValue.put(value, valueId);
+    }
+    final long key = toLong(civicId);
+    if (key == -1) {
+      if (civicId != null) {
+        this.otherValueIds.put(civicId.toString(), valueId);
+      }
+    } else {
+      if (this.size == this.civicIds.length) {
+        final int newLength = this.size + (this.size >> 1);
+        this.civicIds = Arrays.copyOf(this.civicIds, newLength);
+        this.valueIds = Arrays.copyOf(this.valueIds, newLength);
+      }
+      this.civicIds[this.size] = key;
+      this.valueIds[this.size] = valueId;
+      this.size++;
+    }
+  }
+
+  /**
+   * Get the value for the CIVIC_ID and remove it so that it is only returned once.
+   */
+  public V remove(final Object civicId) {
+    final int valueId = getValueId(civicId, true);
+    return getValue(valueId);
+  }
+
+  public int size() {
+    return this.size + this.otherValueIds.size();
+  }
+}
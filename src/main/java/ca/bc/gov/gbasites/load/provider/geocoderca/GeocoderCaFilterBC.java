@@ -1,6 +1,7 @@
 package ca.bc.gov.gbasites.load.provider.geocoderca;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -14,12 +15,16 @@ import ca.bc.gov.gba.core.model.CountNames;
 import ca.bc.gov.gba.core.model.Gba;
 import ca.bc.gov.gba.core.model.codetable.BoundaryCache;
 import ca.bc.gov.gba.itn.model.code.GbaItnCodeTables;
+import ca.bc.gov.gbasites.load.common.BatchQueue;
 import ca.bc.gov.gbasites.model.type.SitePoint;
+import ca.bc.gov.gbasites.model.type.code.BoundaryCacheGrid;
 
 import com.revolsys.collection.map.LinkedHashMapEx;
 import com.revolsys.collection.map.MapEx;
+import com.revolsys.geometry.model.BoundingBox;
 import com.revolsys.geometry.model.GeometryFactory;
 import com.revolsys.geometry.model.Point;
+import com.revolsys.parallel.process.ProcessNetwork;
 import com.revolsys.record.Record;
 import com.revolsys.record.io.RecordReader;
 import com.revolsys.record.io.RecordWriter;
@@ -28,6 +33,15 @@ import com.revolsys.record.schema.RecordDefinitionBuilder;
 import com.revolsys.swing.table.counts.LabelCountMapTableModel;
 import com.revolsys.util.Cancellable;
 
+/**
+ * Extract the address points in BC from the Canada wide CanData.csv.
+ *
+ * The CSV is parsed in a read process that drops the points outside the lat/long bounds of the
+ * regional districts without converting them to Albers. The remaining points are sent in batches
+ * through a {@link BatchQueue} to a write process. It converts them to Albers, finds the regional
+ * district using the shared {@link BoundaryCacheGrid} and writes the records in the order they
+ * were read.
+ */
 public class GeocoderCaFilterBC implements Cancellable, SitePoint {
 
   public static final String EXTRACT_BC = "Extract BC";
@@ -36,8 +50,28 @@ public class GeocoderCaFilterBC implements Cancellable, SitePoint {
 
   private static final String OUTSIDE_BC = "OUTSIDE_BC";
 
+  /**
+   * The number of points sampled along each edge of the Albers bounding box to get the lat/long
+   * bounds, as the edges are curved in lat/long.
+   */
+  private static final int BOUNDS_EDGE_SAMPLE_COUNT = 100;
+
+  /**
+   * The margin in degrees added to the lat/long bounds, larger than the error from sampling the
+   * edges.
+   */
+  private static final double BOUNDS_MARGIN = 0.01;
+
   private static final BoundaryCache REGIONAL_DISTRICTS = GbaItnCodeTables.getRegionalDistricts();
 
+  private double boundsMaxX = Double.NEGATIVE_INFINITY;
+
+  private double boundsMaxY = Double.NEGATIVE_INFINITY;
+
+  private double boundsMinX = Double.POSITIVE_INFINITY;
+
+  private double boundsMinY = Double.POSITIVE_INFINITY;
+
   private LabelCountMapTableModel counts;
 
   private final GeocoderCaImportSites importSites;
@@ -69,6 +103,8 @@ public class GeocoderCaFilterBC implements Cancellable, SitePoint {
       .add("pointYFieldName", "Latitude")//
       .add("geometryFactory", geometryFactory) //
     ;
+    final BoundaryCacheGrid grid = BoundaryCacheGrid.get(REGIONAL_DISTRICTS);
+    setBounds(geometryFactory, grid);
     final GeometryFactory albersGeometryFactory = Gba.GEOMETRY_FACTORY_2D_1M;
     try (
       RecordReader reader = RecordReader.newRecordReader(inputFile, readProperties)) {
@@ -81,45 +117,76 @@ public class GeocoderCaFilterBC implements Cancellable, SitePoint {
           bcErrorFile);
         RecordWriter outsideBcErrorWriter = RecordWriter.newRecordWriter(writeRecordDefinition,
           outsideBcErrorFile);) {
-        for (final Record record : cancellable(reader)) {
-          this.counts.addCount(record, CountNames.READ);
-          final Point point = record.getGeometry();
-          final Point albersPoint = point.convertGeometry(albersGeometryFactory);
-          final Identifier regionalDistrictId = REGIONAL_DISTRICTS.getBoundaryId(albersPoint);
-          final String province = record.getString("Province");
-          final boolean bcProvinceValue = "BC".equalsIgnoreCase(province);
-          if (regionalDistrictId == null
-            || this.REGIONAL_DISTRICTS_OUTSIDE_BC.contains(regionalDistrictId)) {
-            if (bcProvinceValue) {
-              this.counts.addCount(record, OUTSIDE_BC);
-              final Record writeRecord = writeRecordDefinition.newRecord(record);
-              writeRecord.setGeometryValue(albersPoint);
-              outsideBcErrorWriter.write(writeRecord);
-            }
-          } else {
-            if (!bcProvinceValue) {
-              this.counts.addCount(record, INSIDE_BC);
-              final Record writeRecord = writeRecordDefinition.newRecord(record);
-              writeRecord.setGeometryValue(albersPoint);
-              bcErrorWriter.write(writeRecord);
-            }
-            this.counts.addCount(record, CountNames.WRITE);
-            final Record writeRecord = writeRecordDefinition.newRecord(record);
-            writeRecord.setValue("Province", "BC");
-            writeRecord.setGeometryValue(albersPoint);
-            writer.write(writeRecord);
-
+        final BatchQueue<List<Record>> queue = new BatchQueue<>(
+          "Error extracting BC address points from: " + inputFile);
+        final ProcessNetwork processes = new ProcessNetwork();
+        processes.addProcess(EXTRACT_BC + " Read",
+          () -> queue.produce(() -> readAddressPoints(reader, queue)));
+        processes.addProcess(EXTRACT_BC + " Write", () -> queue.consume(records -> {
+          for (final Record record : records) {
+            writeAddressPoint(record, grid, writeRecordDefinition, writer, bcErrorWriter,
+              outsideBcErrorWriter);
           }
-        }
+        }));
+        processes.startAndWait();
+        queue.throwError();
       }
     }
   }
 
+  private boolean isBc(final Record record) {
+    final String province = record.getString("Province");
+    return "BC".equalsIgnoreCase(province);
+  }
+
   @Override
   public boolean isCancelled() {
     return this.importSites.isCancelled();
   }
 
+  /**
+   * @return True if the lat/long point is within the bounds of the regional districts or isn't a
+   *         valid point.
+   */
+  private boolean isInBounds(final Point point) {
+    final double x = point.getX();
+    final double y = point.getY();
+    if (Double.isFinite(x) && Double.isFinite(y)) {
+      return x >= this.boundsMinX && x <= this.boundsMaxX && y >= this.boundsMinY
+        && y <= this.boundsMaxY;
+    } else {
+      return true;
+    }
+  }
+
+  /**
+   * Read the records and send the records that could be inside BC or have a province of BC to
+   * the write process in batches. The records outside the bounds of the regional districts that
+   * don't have a province of BC are ignored without converting the point to Albers. Stops if the
+   * write process failed.
+   */
+  private void readAddressPoints(final RecordReader reader,
+    final BatchQueue<List<Record>> queue) {
+    List<Record> records = new ArrayList<>(BatchQueue.BATCH_SIZE);
+    for (final Record record : cancellable(reader)) {
+      if (queue.isError()) {
+        return;
+      }
+      this.counts.addCount(record, CountNames.READ);
+      final Point point = record.getGeometry();
+      if (isBc(record) || isInBounds(point)) {
+        records.add(record);
+        if (records.size() >= BatchQueue.BATCH_SIZE) {
+          queue.put(records);
+          records = new ArrayList<>(BatchQueue.BATCH_SIZE);
+        }
+      }
+    }
+    if (!records.isEmpty()) {
+      queue.put(records);
+    }
+  }
+
   public void run() {
     this.counts = this.importSites.labelCounts(EXTRACT_BC, "File",
       CountNames.READ, INSIDE_BC, OUTSIDE_BC, CountNames.WRITE);
@@ -132,4 +199,64 @@ public class GeocoderCaFilterBC implements Cancellable, SitePoint {
     extractAddressPoints();
   }
 
+  /**
+   * Set the lat/long bounds of the regional districts from the Albers bounding box of the grid.
+   */
+  private void setBounds(final GeometryFactory geometryFactory, final BoundaryCacheGrid grid) {
+    final BoundingBox boundingBox = grid.getBoundingBox();
+    if (boundingBox != null) {
+      final GeometryFactory albersGeometryFactory = boundingBox.getGeometryFactory();
+      final double minX = boundingBox.getMinX();
+      final double minY = boundingBox.getMinY();
+      final double width = boundingBox.getMaxX() - minX;
+      final double height = boundingBox.getMaxY() - minY;
+      for (int i = 0; i <= BOUNDS_EDGE_SAMPLE_COUNT; i++) {
+        final double x = minX + width * i / BOUNDS_EDGE_SAMPLE_COUNT;
+        final double y = minY + height * i / BOUNDS_EDGE_SAMPLE_COUNT;
+        for (final Point albersPoint : Arrays.asList( //
+          albersGeometryFactory.point(x, minY), //
+          albersGeometryFactory.point(x, minY + height), //
+          albersGeometryFactory.point(minX, y), //
+          albersGeometryFactory.point(minX + width, y) //
+        )) {
+          final Point point = albersPoint.convertGeometry(geometryFactory);
+          this.boundsMinX = Math.min(this.boundsMinX, point.getX() - BOUNDS_MARGIN);
+          this.boundsMinY = Math.min(this.boundsMinY, point.getY() - BOUNDS_MARGIN);
+          this.boundsMaxX = Math.max(this.boundsMaxX, point.getX() + BOUNDS_MARGIN);
+          this.boundsMaxY = Math.max(this.boundsMaxY, point.getY() + BOUNDS_MARGIN);
+        }
+      }
+    }
+  }
+
+  private void writeAddressPoint(final Record record, final BoundaryCacheGrid grid,
+    final RecordDefinition writeRecordDefinition, final RecordWriter writer,
+    final RecordWriter bcErrorWriter, final RecordWriter outsideBcErrorWriter) {
+    final Point point = record.getGeometry();
+    final Point albersPoint = point.convertGeometry(writeRecordDefinition.getGeometryFactory());
+    final Identifier regionalDistrictId = grid.getBoundaryId(albersPoint);
+    final boolean insideBc = regionalDistrictId != null
+      && !this.REGIONAL_DISTRICTS_OUTSIDE_BC.contains(regionalDistrictId);
+    final boolean bcProvinceValue = isBc(record);
+    if (!insideBc) {
+      if (bcProvinceValue) {
+        this.counts.addCount(record, OUTSIDE_BC);
+        final Record writeRecord = writeRecordDefinition.newRecord(record);
+        writeRecord.setGeometryValue(albersPoint);
+        outsideBcErrorWriter.write(writeRecord);
+      }
+    } else {
+      if (!bcProvinceValue) {
+        this.counts.addCount(record, INSIDE_BC);
+        final Record writeRecord = writeRecordDefinition.newRecord(record);
+        writeRecord.setGeometryValue(albersPoint);
+        bcErrorWriter.write(writeRecord);
+      }
+      this.counts.addCount(record, CountNames.WRITE);
+      final Record writeRecord = writeRecordDefinition.newRecord(record);
+      writeRecord.setValue("Province", "BC");
+      writeRecord.setGeometryValue(albersPoint);
+      writer.write(writeRecord);
+    }
+  }
 }
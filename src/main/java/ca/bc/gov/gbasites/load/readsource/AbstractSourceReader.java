@@ -1,8 +1,11 @@
 package ca.bc.gov.gbasites.load.readsource;
 
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
 
 import org.jeometry.common.data.type.DataType;
+import org.jeometry.common.exception.Exceptions;
 import org.jeometry.common.io.PathName;
 import org.jeometry.common.logging.Logs;
 
@@ -46,6 +49,10 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
 
   private String countPrefix = "";
 
+  private boolean sourceValidatorsValid = true;
+
+  private boolean useCachedFileOnError = true;
+
   public AbstractSourceReader(final MapEx properties) {
     setProperties(properties);
   }
@@ -66,11 +73,27 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
   }
 
   public void downloadData(final boolean downloadData) {
+    final Path sourceFile = this.partnerOrganizationFiles
+      .getFilePath(ImportSites.SOURCE_BY_PROVIDER);
+    final SourceMetadata metadata = new SourceMetadata(
+      this.partnerOrganizationFiles.getFilePath(ImportSites.SOURCE_METADATA_BY_PROVIDER));
+    Map<String, String> validators = Collections.emptyMap();
+    if (downloadData) {
+      validators = getSourceValidators();
+      if (metadata.isUnchanged(validators, sourceFile)) {
+        if (this.counter != null) {
+          this.counter.add(metadata.getRecordCount());
+        }
+        Logs.info(this, getPartnerOrganizationName() + ": source unchanged, download skipped");
+        return;
+      }
+    }
+    boolean written = false;
     try (
       AtomicPathUpdator pathUpdator = this.partnerOrganizationFiles
         .newPathUpdator(ImportSites.SOURCE_BY_PROVIDER)) {
       if (downloadData || !pathUpdator.isTargetExists()) {
-
+        metadata.delete();
         final RecordDefinition sourceWriterRecordDefinition = getSourceRecordDefinition();
         if (sourceWriterRecordDefinition != null) {
           final Path sourceOutputPath = pathUpdator.getPath();
@@ -80,10 +103,36 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
             this.writer = sourceRecordWriter;
             writeRecords();
           }
+          written = true;
         }
         checkExpectedCount();
       }
     }
+    // Counted once the file is written so a failed download that is retried isn't counted twice
+    if (written && this.counter != null) {
+      this.counter.add(this.recordCount);
+    }
+    if (written && this.sourceValidatorsValid && !this.dialog.isCancelled()) {
+      metadata.save(validators, sourceFile, this.recordCount);
+    }
+  }
+
+  /**
+   * Handle an error connecting to the server. If {@link #useCachedFileOnError} the error is logged
+   * and null is returned by the caller so the previously downloaded file is used. Otherwise the
+   * error is thrown so the download can be retried.
+   *
+   * @param message The error message.
+   * @param e The exception or null if there wasn't an exception.
+   */
+  protected void downloadError(final String message, final Throwable e) {
+    if (this.useCachedFileOnError) {
+      Logs.error(this, getPartnerOrganizationName() + ": using cached files. " + message, e);
+    } else if (e == null) {
+      throw new IllegalStateException(getPartnerOrganizationName() + ": " + message);
+    } else {
+      throw Exceptions.wrap(getPartnerOrganizationName() + ": " + message, e);
+    }
   }
 
   private Counter getCounter(final String countName) {
@@ -91,6 +140,17 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
       this.countPrefix + countName);
   }
 
+  /**
+   * Get the values from the server that change if the upstream data changes (e.g. ETag,
+   * Last-Modified, record count, max edit date). If the values are the same as the last download
+   * the download is skipped.
+   *
+   * @return The validators, empty if the data must always be downloaded.
+   */
+  protected Map<String, String> getSourceValidators() {
+    return Collections.emptyMap();
+  }
+
   public GeometryFactory getGeometryFactory() {
     return this.geometryFactory;
   }
@@ -104,6 +164,9 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
     final GeometryFactory forceGeometryFactory = this.geometryFactory;
 
     final RecordDefinition sourceRecordDefinition = getSourceRecordDefinitionDo();
+    if (sourceRecordDefinition == null) {
+      return null;
+    }
 
     final PathName pathName = sourceRecordDefinition.getPathName();
     final RecordDefinitionImpl sourceWriterRecordDefinition = new RecordDefinitionImpl(pathName);
@@ -129,6 +192,14 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
 
   protected abstract RecordDefinition getSourceRecordDefinitionDo();
 
+  /**
+   * Don't save the source validators as the records weren't read from the source the validators
+   * are for (e.g. a cached local file was used).
+   */
+  protected void invalidateSourceValidators() {
+    this.sourceValidatorsValid = false;
+  }
+
   public void setBaseDirectory(final Path baseDirectory) {
     this.baseDirectory = baseDirectory;
   }
@@ -154,6 +225,14 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
     this.partnerOrganizationFiles = partnerOrganizationFiles;
   }
 
+  /**
+   * Set if the previously downloaded file is used if the server can't be read (the default), or
+   * the error is thrown so the download can be retried.
+   */
+  public void setUseCachedFileOnError(final boolean useCachedFileOnError) {
+    this.useCachedFileOnError = useCachedFileOnError;
+  }
+
   @Override
   public String toString() {
     return getPartnerOrganizationName();
@@ -176,8 +255,5 @@ public abstract class AbstractSourceReader extends BaseObjectWithProperties
       writeRecord.setGeometryValue(geometry2d);
     }
     this.writer.write(writeRecord);
-    if (this.counter != null) {
-      this.counter.add();
-    }
   }
 }
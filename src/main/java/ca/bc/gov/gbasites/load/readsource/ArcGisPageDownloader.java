@@ -0,0 +1,226 @@
+package ca.bc.gov.gbasites.load.readsource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.jeometry.common.exception.Exceptions;
+
+import com.revolsys.io.BaseCloseable;
+import com.revolsys.parallel.process.ProcessNetwork;
+import com.revolsys.record.ArrayRecord;
+import com.revolsys.record.Record;
+import com.revolsys.record.io.RecordReader;
+import com.revolsys.record.io.format.esri.rest.map.FeatureLayer;
+import com.revolsys.record.query.Query;
+
+/**
+ * Download the pages of records from an ArcGIS feature layer using multiple processes. Each page
+ * is queried ordered by the object id so iterating over the pages in order returns the records in
+ * object id order.
+ *
+ * The download processes are limited to {@link #maxPagesAhead} pages ahead of the page being
+ * iterated over so that a slow writer doesn't cause all the records to be loaded into memory.
+ *
+ * The record count is only used to choose the number of processes. Pages are downloaded until a
+ * query returns no records, so records added after the count was read aren't lost. The pageSize is
+ * limited to the maxRecordCount of the layer. If the server still returns less records than
+ * requested (e.g. it exceeded the transfer limit) the rest of the page is queried from the offset
+ * after the last record returned. So a page only has less than pageSize records if the query for
+ * the rest of the page returned no records, which means it's the last page.
+ */
+public class ArcGisPageDownloader implements BaseCloseable, Iterable<Record> {
+
+  private final FeatureLayer layer;
+
+  private final int pageSize;
+
+  private final int threadCount;
+
+  private final int maxPagesAhead;
+
+  private final Map<Integer, List<Record>> recordsByPage = new HashMap<>();
+
+  private int nextDownloadPage = 0;
+
+  private int nextReadPage = 0;
+
+  /** The index of the first page that the server had no more records for. */
+  private int lastPage = Integer.MAX_VALUE;
+
+  private Throwable error;
+
+  private boolean closed;
+
+  public ArcGisPageDownloader(final FeatureLayer layer, final int recordCount,
+    final int pageSize, final int threadCount) {
+    this.layer = layer;
+    final int maxRecordCount = layer.getMaxRecordCount();
+    if (maxRecordCount > 0) {
+      this.pageSize = Math.min(pageSize, maxRecordCount);
+    } else {
+      this.pageSize = pageSize;
+    }
+    // Plus one for the short or empty page at the end
+    final int pageCount = recordCount / this.pageSize + 1;
+    this.threadCount = Math.max(1, Math.min(threadCount, pageCount));
+    this.maxPagesAhead = this.threadCount * 2;
+  }
+
+  /**
+   * Add the download processes to the process network. The records must be iterated over by
+   * another process in the same network.
+   *
+   * @param processes The process network.
+   * @param name The prefix for the process names.
+   */
+  public void addProcesses(final ProcessNetwork processes, final String name) {
+    for (int i = 0; i < this.threadCount; i++) {
+      processes.addProcess(name + " Download " + (i + 1), this::download);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    this.closed = true;
+    this.recordsByPage.clear();
+    notifyAll();
+  }
+
+  private void download() {
+    while (true) {
+      final int pageIndex = nextDownloadPage();
+      if (pageIndex == -1) {
+        return;
+      } else {
+        try {
+          final List<Record> records = downloadPage(pageIndex);
+          setPage(pageIndex, records);
+        } catch (final Throwable e) {
+          setError(e);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Download the records for the page. If the server returns less records than requested, query
+   * the rest of the page until the page is full or a query returns no records.
+   */
+  private List<Record> downloadPage(final int pageIndex) {
+    final int offset = pageIndex * this.pageSize;
+    final List<Record> records = new ArrayList<>(this.pageSize);
+    boolean hasMore = true;
+    while (hasMore && records.size() < this.pageSize) {
+      final Query query = new Query(this.layer.getRecordDefinition()) //
+        .addOrderById();
+      query.setOffset(offset + records.size());
+      query.setLimit(this.pageSize - records.size());
+      final int countBefore = records.size();
+      try (
+        RecordReader reader = this.layer.newRecordReader(ArrayRecord.FACTORY, query)) {
+        for (final Record record : reader) {
+          records.add(record);
+        }
+      }
+      hasMore = records.size() > countBefore;
+    }
+    return records;
+  }
+
+  public synchronized Throwable getError() {
+    return this.error;
+  }
+
+  @Override
+  public Iterator<Record> iterator() {
+    return new Iterator<Record>() {
+      private Iterator<Record> pageIterator = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!this.pageIterator.hasNext()) {
+          final List<Record> records = nextPage();
+          if (records == null) {
+            return false;
+          } else {
+            this.pageIterator = records.iterator();
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public Record next() {
+        if (hasNext()) {
+          return this.pageIterator.next();
+        } else {
+          throw new NoSuchElementException();
+        }
+      }
+    };
+  }
+
+  private synchronized int nextDownloadPage() {
+    while (!this.closed && this.error == null && this.nextDownloadPage <= this.lastPage) {
+      if (this.nextDownloadPage < this.nextReadPage + this.maxPagesAhead) {
+        return this.nextDownloadPage++;
+      } else {
+        try {
+          wait();
+        } catch (final InterruptedException e) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private synchronized List<Record> nextPage() {
+    while (true) {
+      if (this.nextReadPage > this.lastPage) {
+        return null;
+      } else if (this.error != null) {
+        throw Exceptions.wrap("Error downloading " + this.layer.getPathName(), this.error);
+      } else if (this.closed) {
+        return null;
+      } else {
+        final List<Record> records = this.recordsByPage.remove(this.nextReadPage);
+        if (records == null) {
+          try {
+            wait();
+          } catch (final InterruptedException e) {
+            throw Exceptions.wrap("Interrupted downloading " + this.layer.getPathName(), e);
+          }
+        } else {
+          this.nextReadPage++;
+          notifyAll();
+          return records;
+        }
+      }
+    }
+  }
+
+  public synchronized void setError(final Throwable error) {
+    if (this.error == null) {
+      this.error = error;
+    }
+    notifyAll();
+  }
+
+  private synchronized void setPage(final int pageIndex, final List<Record> records) {
+    if (!this.closed && pageIndex <= this.lastPage) {
+      this.recordsByPage.put(pageIndex, records);
+      // downloadPage only returns a short page if the server had no more records
+      if (records.size() < this.pageSize) {
+        this.lastPage = pageIndex;
+      }
+      notifyAll();
+    }
+  }
+}
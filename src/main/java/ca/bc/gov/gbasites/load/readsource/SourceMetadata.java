@@ -0,0 +1,193 @@
+package ca.bc.gov.gbasites.load.readsource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.jeometry.common.logging.Logs;
+
+import ca.bc.gov.gbasites.load.common.FileDigest;
+
+import com.revolsys.io.file.Paths;
+
+/**
+ * The validators for the upstream data (ETag, Last-Modified, record count, max edit date) and the
+ * SHA-256 hash of the downloaded source file from the last download. If the validators returned
+ * by the server are the same and the source file hasn't been modified the download can be
+ * skipped.
+ *
+ * A source that doesn't return any validators is always downloaded.
+ */
+public class SourceMetadata {
+
+  public static final String CONTENT_LENGTH = "contentLength";
+
+  public static final String ETAG = "etag";
+
+  public static final String LAST_MODIFIED = "lastModified";
+
+  public static final String MAX_EDIT_DATE = "maxEditDate";
+
+  public static final String RECORD_COUNT = "recordCount";
+
+  private static final String CONTENT_HASH = "contentHash";
+
+  private static final String VALIDATOR = "validator.";
+
+  private static final int TIMEOUT = 30000;
+
+  /**
+   * Get the ETag, Last-Modified and Content-Length headers from a HEAD request to the URL.
+   *
+   * @param url The URL.
+   * @return The validators, empty if the URL isn't HTTP or the request failed.
+   */
+  public static Map<String, String> getHttpValidators(final String url) {
+    final Map<String, String> validators = new TreeMap<>();
+    if (url != null && url.startsWith("http")) {
+      try {
+        final URLConnection connection = new URL(url).openConnection();
+        if (connection instanceof HttpURLConnection) {
+          final HttpURLConnection httpConnection = (HttpURLConnection)connection;
+          httpConnection.setRequestMethod("HEAD");
+          httpConnection.setConnectTimeout(TIMEOUT);
+          httpConnection.setReadTimeout(TIMEOUT);
+          try {
+            if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+              putValidator(validators, ETAG, httpConnection.getHeaderField("ETag"));
+              putValidator(validators, LAST_MODIFIED,
+                httpConnection.getHeaderField("Last-Modified"));
+              if (!validators.isEmpty()) {
+                final long contentLength = httpConnection.getContentLengthLong();
+                if (contentLength >= 0) {
+                  validators.put(CONTENT_LENGTH, Long.toString(contentLength));
+                }
+              }
+            }
+          } finally {
+            httpConnection.disconnect();
+          }
+        }
+      } catch (final IOException | RuntimeException e) {
+        Logs.warn(SourceMetadata.class,
+          "Unable to get validators for: " + url + "\n  " + e.getMessage());
+        validators.clear();
+      }
+    }
+    return validators;
+  }
+
+  public static void putValidator(final Map<String, String> validators, final String name,
+    final Object value) {
+    if (value != null) {
+      final String string = value.toString();
+      if (string.length() > 0) {
+        validators.put(name, string);
+      }
+    }
+  }
+
+  private final Path file;
+
+  private final Properties properties = new Properties();
+
+  public SourceMetadata(final Path file) {
+    this.file = file;
+    if (Files.exists(file)) {
+      try (
+        InputStream in = Files.newInputStream(file)) {
+        this.properties.load(in);
+      } catch (final IOException e) {
+        Logs.error(this, "Unable to read source metadata: " + file, e);
+        this.properties.clear();
+      }
+    }
+  }
+
+  public void delete() {
+    this.properties.clear();
+    Paths.deleteDirectories(this.file);
+  }
+
+  public int getRecordCount() {
+    final String recordCount = this.properties.getProperty(RECORD_COUNT, "0");
+    try {
+      return Integer.parseInt(recordCount);
+    } catch (final NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Check if the upstream data and the source file are the same as the last download.
+   *
+   * @param validators The current validators from the server.
+   * @param sourceFile The source file written by the last download.
+   * @return True if the download can be skipped.
+   */
+  public boolean isUnchanged(final Map<String, String> validators, final Path sourceFile) {
+    if (validators.isEmpty() || !Files.exists(sourceFile)) {
+      return false;
+    }
+    int validatorCount = 0;
+    for (final String name : this.properties.stringPropertyNames()) {
+      if (name.startsWith(VALIDATOR)) {
+        validatorCount++;
+      }
+    }
+    if (validatorCount != validators.size()) {
+      return false;
+    }
+    for (final Entry<String, String> entry : validators.entrySet()) {
+      final String name = entry.getKey();
+      final String value = entry.getValue();
+      if (!value.equals(this.properties.getProperty(VALIDATOR + name))) {
+        return false;
+      }
+    }
+    final String contentHash = this.properties.getProperty(CONTENT_HASH);
+    return contentHash != null && contentHash.equals(FileDigest.sha256(sourceFile));
+  }
+
+  /**
+   * Save the validators and the hash of the source file after a successful download.
+   *
+   * @param validators The validators from the server.
+   * @param sourceFile The source file.
+   * @param recordCount The number of records written to the source file.
+   */
+  public void save(final Map<String, String> validators, final Path sourceFile,
+    final int recordCount) {
+    if (validators.isEmpty() || !Files.exists(sourceFile)) {
+      delete();
+    } else {
+      final Properties properties = new Properties();
+      for (final Entry<String, String> entry : validators.entrySet()) {
+        properties.setProperty(VALIDATOR + entry.getKey(), entry.getValue());
+      }
+      properties.setProperty(RECORD_COUNT, Integer.toString(recordCount));
+      properties.setProperty(CONTENT_HASH, FileDigest.sha256(sourceFile));
+      Paths.createParentDirectories(this.file);
+      try (
+        OutputStream out = Files.newOutputStream(this.file)) {
+        properties.store(out, "Source download metadata");
+      } catch (final IOException e) {
+        Logs.error(this, "Unable to write source metadata: " + this.file, e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.file.toString();
+  }
+}
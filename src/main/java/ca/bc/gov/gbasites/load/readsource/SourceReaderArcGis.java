@@ -1,21 +1,30 @@
 package ca.bc.gov.gbasites.load.readsource;
 
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Function;
 
-import org.jeometry.common.logging.Logs;
+import org.jeometry.common.exception.Exceptions;
 
 import com.revolsys.collection.map.MapEx;
+import com.revolsys.parallel.process.ProcessNetwork;
 import com.revolsys.record.ArrayRecord;
 import com.revolsys.record.io.RecordReader;
 import com.revolsys.record.io.format.esri.rest.map.FeatureLayer;
 import com.revolsys.record.query.Query;
+import com.revolsys.record.schema.RecordDefinition;
 
+/**
+ * Read the records from an ArcGIS REST feature layer.
+ *
+ * If the downloadThreadCount is greater than 1 in the config and the layer supports pagination,
+ * the pages of pageSize records are downloaded concurrently and written in object id order.
+ */
 public class SourceReaderArcGis extends AbstractRecordReaderSourceReader {
 
   public static Function<MapEx, SourceReaderArcGis> newFactory(
     final Map<String, ? extends Object> config) {
-    return properties -> new SourceReaderArcGis(properties.addAll(config));
+    return new SourceReaderFactory<>(config, SourceReaderArcGis::new);
   }
 
   private String serverUrl;
@@ -24,37 +33,126 @@ public class SourceReaderArcGis extends AbstractRecordReaderSourceReader {
 
   private String path;
 
+  private int pageSize = 1000;
+
+  private int downloadThreadCount = 1;
+
+  private FeatureLayer layer;
+
+  private ArcGisPageDownloader pageDownloader;
+
   public SourceReaderArcGis(final MapEx properties) {
     super(properties);
   }
 
   @Override
-  protected RecordReader newRecordReader() {
+  public void close() {
+    super.close();
+    if (this.pageDownloader != null) {
+      this.pageDownloader.close();
+    }
+  }
+
+  private FeatureLayer getLayer() {
     try {
       final FeatureLayer layer = FeatureLayer.getRecordLayerDescription(this.serverUrl, this.path);
       if (layer == null) {
-        Logs.error(this, getPartnerOrganizationName() + ": using cached files. Cannot find layer: "
-          + this.path + " on " + this.serverUrl);
+        downloadError("Cannot find layer: " + this.path + " on " + this.serverUrl, null);
       } else {
         this.expectedRecordCount = layer.getRecordCount((Query)null);
-        if (this.loadByObjectId || !layer.isSupportsPagination()
-          || layer.getCurrentVersion() < 10.3) {
-          return layer.newRecordReader((Query)null, true);
-        } else {
+        return layer;
+      }
+    } catch (final RuntimeException e) {
+      downloadError("Cannot connect to server: " + this.serverUrl, e);
+    }
+    return null;
+  }
+
+  /**
+   * Get the lastEditDate from the editingInfo in the layer description that was already read by
+   * {@link #getLayer()}. Layers without editor tracking don't have the editingInfo.
+   */
+  private String getMaxEditDate(final FeatureLayer layer) {
+    final MapEx editingInfo = layer.getProperty("editingInfo");
+    if (editingInfo == null) {
+      return null;
+    } else {
+      return editingInfo.getString("lastEditDate");
+    }
+  }
+
+  @Override
+  protected RecordDefinition getSourceRecordDefinitionDo() {
+    if (this.layer == null) {
+      this.layer = getLayer();
+    }
+    if (this.layer != null && isDownloadPages(this.layer)) {
+      this.pageDownloader = new ArcGisPageDownloader(this.layer, this.expectedRecordCount,
+        this.pageSize, this.downloadThreadCount);
+      return this.layer.getRecordDefinition();
+    } else {
+      return super.getSourceRecordDefinitionDo();
+    }
+  }
+
+  /**
+   * The record count and the editingInfo lastEditDate. The record count alone can't show that
+   * records weren't edited so the layer is always downloaded if it doesn't have a lastEditDate.
+   */
+  @Override
+  protected Map<String, String> getSourceValidators() {
+    final Map<String, String> validators = new TreeMap<>();
+    this.layer = getLayer();
+    if (this.layer != null) {
+      final String maxEditDate = getMaxEditDate(this.layer);
+      if (maxEditDate != null) {
+        SourceMetadata.putValidator(validators, SourceMetadata.MAX_EDIT_DATE, maxEditDate);
+        SourceMetadata.putValidator(validators, SourceMetadata.RECORD_COUNT,
+          this.expectedRecordCount);
+      }
+    }
+    return validators;
+  }
+
+  private boolean isDownloadPages(final FeatureLayer layer) {
+    return this.downloadThreadCount > 1 && this.pageSize > 0 && this.expectedRecordCount > 0
+      && isPaged(layer);
+  }
+
+  private boolean isPaged(final FeatureLayer layer) {
+    return !this.loadByObjectId && layer.isSupportsPagination()
+      && layer.getCurrentVersion() >= 10.3;
+  }
+
+  @Override
+  protected RecordReader newRecordReader() {
+    final FeatureLayer layer = this.layer;
+    if (layer != null) {
+      try {
+        if (isPaged(layer)) {
           return layer.newRecordReader(ArrayRecord.FACTORY, (Query)null);
+        } else {
+          return layer.newRecordReader((Query)null, true);
         }
+      } catch (final RuntimeException e) {
+        downloadError("Cannot connect to server: " + this.serverUrl, e);
       }
-    } catch (final Throwable e) {
-      Logs.error(this, getPartnerOrganizationName()
-        + ": using cached files. Cannot connect to server: " + this.serverUrl, e);
     }
     return null;
   }
 
+  public void setDownloadThreadCount(final int downloadThreadCount) {
+    this.downloadThreadCount = downloadThreadCount;
+  }
+
   public void setLoadByObjectId(final boolean loadByObjectId) {
     this.loadByObjectId = loadByObjectId;
   }
 
+  public void setPageSize(final int pageSize) {
+    this.pageSize = pageSize;
+  }
+
   public void setPath(final String path) {
     this.path = path;
   }
@@ -62,4 +160,30 @@ public class SourceReaderArcGis extends AbstractRecordReaderSourceReader {
   public void setServerUrl(final String serverUrl) {
     this.serverUrl = serverUrl;
   }
+
+  @Override
+  protected void writeRecords() {
+    final ArcGisPageDownloader pageDownloader = this.pageDownloader;
+    if (pageDownloader == null) {
+      super.writeRecords();
+    } else {
+      final String name = getPartnerOrganizationShortName();
+      final ProcessNetwork processes = new ProcessNetwork();
+      pageDownloader.addProcesses(processes, name);
+      processes.addProcess(name + " Write", () -> {
+        try {
+          writeRecords(pageDownloader);
+        } catch (final Throwable e) {
+          pageDownloader.setError(e);
+        } finally {
+          pageDownloader.close();
+        }
+      });
+      processes.startAndWait();
+      final Throwable error = pageDownloader.getError();
+      if (error != null) {
+        throw Exceptions.wrap("Error downloading " + this.path + " from " + this.serverUrl, error);
+      }
+    }
+  }
 }
@@ -0,0 +1,50 @@
+package ca.bc.gov.gbasites.load.readsource;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.function.Function;
+
+import ca.bc.gov.gbasites.load.common.ProviderDownloadScheduler;
+
+import com.revolsys.collection.map.MapEx;
+
+/**
+ * Create the source reader for a provider from the provider's config. The config is kept so
+ * that the server the source is downloaded from is known without creating a reader.
+ */
+public class SourceReaderFactory<R extends AbstractSourceReader> implements Function<MapEx, R> {
+
+  private final Map<String, ? extends Object> config;
+
+  private final Function<MapEx, R> constructor;
+
+  public SourceReaderFactory(final Map<String, ? extends Object> config,
+    final Function<MapEx, R> constructor) {
+    this.config = config;
+    this.constructor = constructor;
+  }
+
+  @Override
+  public R apply(final MapEx properties) {
+    return this.constructor.apply(properties.addAll(this.config));
+  }
+
+  /**
+   * Get the host name from the serverUrl in the config. Downloads from the same host are
+   * throttled by the {@link ProviderDownloadScheduler}.
+   *
+   * @return The host name or null if the records aren't downloaded from a server.
+   */
+  public String getDownloadHost() {
+    final Object serverUrl = this.config.get("serverUrl");
+    if (serverUrl == null) {
+      return null;
+    } else {
+      try {
+        return URI.create(serverUrl.toString()).getHost();
+      } catch (final IllegalArgumentException e) {
+        return null;
+      }
+    }
+  }
+}
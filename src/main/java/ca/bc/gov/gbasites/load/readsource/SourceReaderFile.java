@@ -1,7 +1,10 @@
 package ca.bc.gov.gbasites.load.readsource;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -19,7 +22,7 @@ public class SourceReaderFile extends AbstractRecordReaderSourceReader {
 
   public static Function<MapEx, SourceReaderFile> newFactory(
     final Map<String, ? extends Object> config) {
-    return properties -> new SourceReaderFile(properties.addAll(config));
+    return new SourceReaderFactory<>(config, SourceReaderFile::new);
   }
 
   private String fileName;
@@ -37,6 +40,29 @@ public class SourceReaderFile extends AbstractRecordReaderSourceReader {
       .resolve(fileName);
   }
 
+  /**
+   * The size and last modified time of a local file or the HTTP validators for the fileUrl.
+   */
+  @Override
+  protected Map<String, String> getSourceValidators() {
+    final Map<String, String> validators = new TreeMap<>();
+    if (Property.hasValue(this.fileName)) {
+      final Path source = getLocalSourceFilePath(this.fileName);
+      try {
+        SourceMetadata.putValidator(validators, SourceMetadata.CONTENT_LENGTH, Files.size(source));
+        SourceMetadata.putValidator(validators, SourceMetadata.LAST_MODIFIED,
+          Files.getLastModifiedTime(source).toMillis());
+      } catch (final IOException e) {
+        validators.clear();
+      }
+    } else if (this.fileReaderFactory instanceof SupplierWithProperties<?>) {
+      final SupplierWithProperties<?> supplier = (SupplierWithProperties<?>)this.fileReaderFactory;
+      final String fileUrl = supplier.getProperty("fileUrl");
+      validators.putAll(SourceMetadata.getHttpValidators(fileUrl));
+    }
+    return validators;
+  }
+
   @Override
   protected RecordReader newRecordReader() {
     String fileName = this.fileName;
@@ -58,6 +84,7 @@ public class SourceReaderFile extends AbstractRecordReaderSourceReader {
             final String fileUrl = supplier.getProperty("fileUrl");
             fileName = UrlUtil.getFileName(fileUrl);
             final Path source = getLocalSourceFilePath(fileName);
+            invalidateSourceValidators();
             try {
               final MapEx readerProperties = new LinkedHashMapEx();
               readerProperties.putAll(supplier.getProperties());
@@ -15,7 +15,7 @@ public class SourceReaderFileGdb extends AbstractRecordReaderSourceReader {
 
   public static Function<MapEx, SourceReaderFileGdb> newFactory(
     final Map<String, ? extends Object> config) {
-    return properties -> new SourceReaderFileGdb(properties.addAll(config));
+    return new SourceReaderFactory<>(config, SourceReaderFileGdb::new);
   }
 
   private FileGdbRecordStore recordStore;
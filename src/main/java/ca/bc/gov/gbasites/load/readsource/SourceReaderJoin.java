@@ -20,7 +20,7 @@ public class SourceReaderJoin extends AbstractRecordReaderSourceReader {
 
   public static Function<MapEx, SourceReaderJoin> newFactory(
     final Map<String, ? extends Object> config) {
-    return properties -> new SourceReaderJoin(properties.addAll(config));
+    return new SourceReaderFactory<>(config, SourceReaderJoin::new);
   }
 
   private String geometryRecordFieldName;
@@ -3,8 +3,6 @@ package ca.bc.gov.gbasites.load.readsource;
 import java.util.Map;
 import java.util.function.Function;
 
-import org.jeometry.common.logging.Logs;
-
 import com.revolsys.collection.map.MapEx;
 import com.revolsys.geometry.model.GeometryFactory;
 import com.revolsys.record.ArrayRecord;
@@ -17,7 +15,7 @@ public class SourceReaderMapGuide extends AbstractRecordReaderSourceReader {
 
   public static Function<MapEx, SourceReaderMapGuide> newFactory(
     final Map<String, ? extends Object> config) {
-    return properties -> new SourceReaderMapGuide(properties.addAll(config));
+    return new SourceReaderFactory<>(config, SourceReaderMapGuide::new);
   }
 
   public SourceReaderMapGuide(final MapEx properties) {
@@ -31,10 +29,16 @@ public class SourceReaderMapGuide extends AbstractRecordReaderSourceReader {
 
     final GeometryFactory forceGeometryFactory = getGeometryFactory();
 
-    final WebServiceFeatureLayer layer = com.revolsys.record.io.format.mapguide.FeatureLayer
-      .getFeatureLayer(serverUrl, path);
+    final WebServiceFeatureLayer layer;
+    try {
+      layer = com.revolsys.record.io.format.mapguide.FeatureLayer.getFeatureLayer(serverUrl,
+        path);
+    } catch (final RuntimeException e) {
+      downloadError("Cannot connect to server: " + serverUrl, e);
+      return null;
+    }
     if (layer == null) {
-      Logs.error(this, "Cannot find layer: " + path + " on " + serverUrl);
+      downloadError("Cannot find layer: " + path + " on " + serverUrl, null);
       return null;
     } else {
       final RecordDefinition layerRecordDefinition = layer.getRecordDefinition();
@@ -3,6 +3,8 @@ package ca.bc.gov.gbasites.load.write;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -11,6 +13,7 @@ import org.jeometry.common.logging.Logs;
 
 import ca.bc.gov.gba.itn.model.code.GbaItnCodeTables;
 import ca.bc.gov.gbasites.load.ImportSites;
+import ca.bc.gov.gbasites.load.common.BatchQueue;
 import ca.bc.gov.gbasites.load.common.ProviderSitePointConverter;
 import ca.bc.gov.gbasites.load.provider.addressbc.AddressBC;
 import ca.bc.gov.gbasites.load.provider.geobc.GeoBC;
@@ -29,8 +32,20 @@ import com.revolsys.record.schema.RecordDefinitionImpl;
 import com.revolsys.util.Cancellable;
 import com.revolsys.util.Counter;
 
+/**
+ * Write the SITE_POINT FileGDBs for all the localities. There is a reader process for the
+ * emergency management sites and each of the source directories. Each FileGDB has its own writer
+ * process so that the FileGDBs are written at the same time.
+ *
+ * The records are sent to the writer processes in batches through {@link BatchQueue}s so the
+ * readers can't get too far ahead of the writers. The _ALL FileGDB has a queue for each reader
+ * and takes the records for each locality from the readers in order, so the records are in the
+ * same order as if they were written by one process.
+ */
 public class WriteFgdbAll implements Cancellable, Runnable {
 
+  private static final List<Record> LOCALITY_END = new ArrayList<>();
+
   private final ImportSites dialog;
 
   private final List<AtomicPathUpdator> pathUpdators = new ArrayList<>();
@@ -41,12 +56,26 @@ public class WriteFgdbAll implements Cancellable, Runnable {
 
   private final CollectionMap<String, Record, List<Record>> emergencyManagementSitesByLocality;
 
+  private List<BatchQueue<List<Record>>> queues = Collections.emptyList();
+
   public WriteFgdbAll(final ImportSites dialog,
     final CollectionMap<String, Record, List<Record>> emergencyManagementSitesByLocality) {
     this.dialog = dialog;
     this.emergencyManagementSitesByLocality = emergencyManagementSitesByLocality;
   }
 
+  private void addProcesses(final ProcessNetwork processes,
+    final Collection<String> localityNames, final String name, final Path directory,
+    final FileGdbWriter writer, final Iterator<BatchQueue<List<Record>>> queues,
+    final List<BatchQueue<List<Record>>> allQueues) {
+    final BatchQueue<List<Record>> queue = queues.next();
+    final BatchQueue<List<Record>> allQueue = queues.next();
+    allQueues.add(allQueue);
+    processes.addProcess("FGDB-Read-" + name,
+      () -> read(localityNames, directory, queue, allQueue));
+    processes.addProcess("FGDB-Write-" + name, () -> write(writer, queue));
+  }
+
   private void close(final List<? extends BaseCloseable> closeables, final int index) {
     final BaseCloseable closeable = closeables.get(index);
     try {
@@ -58,7 +87,14 @@ public class WriteFgdbAll implements Cancellable, Runnable {
 
   @Override
   public boolean isCancelled() {
-    return this.dialog.isCancelled();
+    return this.dialog.isCancelled() || isError();
+  }
+
+  /**
+   * @return True if there was an error in any of the processes, the queues share the error.
+   */
+  private boolean isError() {
+    return !this.queues.isEmpty() && this.queues.get(0).isError();
   }
 
   private FileGdbWriter newWriter(final String fileSuffix) {
@@ -80,41 +116,35 @@ public class WriteFgdbAll implements Cancellable, Runnable {
     return writer;
   }
 
-  @Override
-  public void run() {
+  /**
+   * Read the records for a source for each locality and send them to the FileGDB for the source
+   * and the _ALL FileGDB.
+   *
+   * @param localityNames The locality names.
+   * @param directory The source directory or null for the emergency management records.
+   * @param queue The queue for the FileGDB for the source.
+   * @param allQueue The queue for this source for the _ALL FileGDB.
+   */
+  private void read(final Collection<String> localityNames, final Path directory,
+    final BatchQueue<List<Record>> queue, final BatchQueue<List<Record>> allQueue) {
     try {
-      final FileGdbWriter allWriter = newWriter("_ALL");
-      final FileGdbWriter emWriter = newWriter("_EM");
-      final Map<Path, FileGdbWriter> writerByDirectory = Maps
-        .<Path, FileGdbWriter> buildLinkedHash() //
-        .add(ProviderSitePointConverter.PROVIDER_DIRECTORY, newWriter("_PROVIDER")) //
-        .add(GeoBC.DIRECTORY, newWriter("_GEOBC")) //
-        .add(AddressBC.DIRECTORY, newWriter("_ADDRESSBC")) //
-        .getMap()//
-      ;
-
-      final Collection<String> localityNames = GbaItnCodeTables.getLocalities().getBoundaryNames();
-      for (final String localityName : cancellable(localityNames)) {
-        final Counter allCounter = this.dialog.getCounter("FGDB", localityName, "All");
-
-        // emergency management records
-        final List<Record> emRecords = this.emergencyManagementSitesByLocality
-          .getOrEmpty(localityName);
-        if (!emRecords.isEmpty()) {
-          final Counter emCounter = this.dialog.getCounter("FGDB", localityName, "EM");
-          for (final Record record : emRecords) {
-            emWriter.writeNewRecord(record);
-            emCounter.add();
-
-            allWriter.writeNewRecord(record);
-            allCounter.add();
-          }
+      for (final String localityName : localityNames) {
+        if (isCancelled()) {
+          return;
         }
-
-        // Records for each provider
-        for (final Entry<Path, FileGdbWriter> entry : writerByDirectory.entrySet()) {
-          final Path directory = entry.getKey();
-          final FileGdbWriter providerWriter = entry.getValue();
+        final List<Record> records = new ArrayList<>(BatchQueue.BATCH_SIZE);
+        if (directory == null) {
+          // emergency management records
+          final List<Record> emRecords = this.emergencyManagementSitesByLocality
+            .getOrEmpty(localityName);
+          if (!emRecords.isEmpty()) {
+            final Counter emCounter = this.dialog.getCounter("FGDB", localityName, "EM");
+            for (final Record record : emRecords) {
+              writeRecord(queue, allQueue, records, record);
+              emCounter.add();
+            }
+          }
+        } else {
           final Counter providerCounter = this.dialog.getCounter("FGDB", localityName,
             directory.getFileName().toString());
 
@@ -125,15 +155,55 @@ public class WriteFgdbAll implements Cancellable, Runnable {
             try (
               RecordReader reader = RecordReader.newRecordReader(localityFile)) {
               for (final Record record : cancellable(reader)) {
-                providerWriter.writeNewRecord(record);
+                writeRecord(queue, allQueue, records, record);
                 providerCounter.add();
-                allWriter.writeNewRecord(record);
-                allCounter.add();
               }
             }
           }
         }
+        if (!records.isEmpty()) {
+          queue.put(records);
+          allQueue.put(records);
+        }
+        allQueue.put(LOCALITY_END);
       }
+    } catch (final Throwable e) {
+      queue.setError(e);
+    } finally {
+      queue.finish();
+      allQueue.finish();
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      final FileGdbWriter allWriter = newWriter("_ALL");
+      final FileGdbWriter emWriter = newWriter("_EM");
+      final Map<Path, FileGdbWriter> writerByDirectory = Maps
+        .<Path, FileGdbWriter> buildLinkedHash() //
+        .add(ProviderSitePointConverter.PROVIDER_DIRECTORY, newWriter("_PROVIDER")) //
+        .add(GeoBC.DIRECTORY, newWriter("_GEOBC")) //
+        .add(AddressBC.DIRECTORY, newWriter("_ADDRESSBC")) //
+        .getMap()//
+      ;
+
+      final Collection<String> localityNames = GbaItnCodeTables.getLocalities().getBoundaryNames();
+      // A queue for the source FileGDB and a queue for the _ALL FileGDB for each reader
+      this.queues = BatchQueue.newQueues(2 * (1 + writerByDirectory.size()), "Error writing FGDB");
+      final Iterator<BatchQueue<List<Record>>> queues = this.queues.iterator();
+      final List<BatchQueue<List<Record>>> allQueues = new ArrayList<>();
+      final ProcessNetwork processes = new ProcessNetwork();
+      addProcesses(processes, localityNames, "EM", null, emWriter, queues, allQueues);
+      for (final Entry<Path, FileGdbWriter> entry : writerByDirectory.entrySet()) {
+        final Path directory = entry.getKey();
+        final FileGdbWriter writer = entry.getValue();
+        final String name = directory.getFileName().toString();
+        addProcesses(processes, localityNames, name, directory, writer, queues, allQueues);
+      }
+      processes.addProcess("FGDB-Write-ALL", () -> writeAll(localityNames, allWriter, allQueues));
+      processes.startAndWait();
+      this.queues.get(0).throwError();
     } finally {
       final ProcessNetwork closeProcesses = new ProcessNetwork();
 
@@ -149,4 +219,67 @@ public class WriteFgdbAll implements Cancellable, Runnable {
     }
   }
 
+  private void write(final FileGdbWriter writer, final BatchQueue<List<Record>> queue) {
+    queue.consume(records -> {
+      for (final Record record : records) {
+        writer.writeNewRecord(record);
+      }
+    });
+  }
+
+  /**
+   * Write the records to the _ALL FileGDB. For each locality the records are taken from each
+   * reader's queue in order until the reader has finished the locality.
+   */
+  private void writeAll(final Collection<String> localityNames, final FileGdbWriter allWriter,
+    final List<BatchQueue<List<Record>>> allQueues) {
+    final List<BatchQueue<List<Record>>> queues = new ArrayList<>(allQueues);
+    try {
+      for (final String localityName : localityNames) {
+        if (queues.isEmpty()) {
+          return;
+        }
+        final Counter allCounter = this.dialog.getCounter("FGDB", localityName, "All");
+        for (final Iterator<BatchQueue<List<Record>>> iterator = queues.iterator(); iterator
+          .hasNext();) {
+          final BatchQueue<List<Record>> queue = iterator.next();
+          for (List<Record> records = queue.take(); records != LOCALITY_END; records = queue
+            .take()) {
+            if (records == null) {
+              iterator.remove();
+              break;
+            } else if (!queue.isError()) {
+              try {
+                for (final Record record : records) {
+                  allWriter.writeNewRecord(record);
+                  allCounter.add();
+                }
+              } catch (final Throwable e) {
+                queue.setError(e);
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      // Drain the queues so the readers can finish
+      for (final BatchQueue<List<Record>> queue : queues) {
+        while (queue.take() != null) {
+        }
+      }
+    }
+  }
+
+  private void writeRecord(final BatchQueue<List<Record>> queue,
+    final BatchQueue<List<Record>> allQueue, final List<Record> records, final Record record) {
+    records.add(record);
+    if (records.size() >= BatchQueue.BATCH_SIZE) {
+      // The batch is shared by the source and _ALL writers, they only read it
+      final List<Record> batch = new ArrayList<>(records);
+      queue.put(batch);
+      allQueue.put(batch);
+      records.clear();
+    }
+  }
+
 }
@@ -14,6 +14,7 @@ import ca.bc.gov.gba.core.model.qa.rule.AbstractRecordRule;
 import ca.bc.gov.gba.itn.GbaItnDatabase;
 import ca.bc.gov.gba.rule.fix.QuickFixes;
 import ca.bc.gov.gba.rule.fix.SetToMessageData;
+import ca.bc.gov.gbasites.model.type.code.BoundaryCacheGrid;
 
 import com.revolsys.collection.list.Lists;
 import com.revolsys.collection.map.Maps;
@@ -38,6 +39,8 @@ public class BoundaryCacheFieldRule extends AbstractRecordRule implements Clonea
 
   private final Map<String, BoundaryCache> boundaryCacheByFieldName = new HashMap<>();
 
+  private final Map<String, BoundaryCacheGrid> boundaryGridByFieldName = new HashMap<>();
+
   private List<String> boundaryFieldNames;
 
   public BoundaryCacheFieldRule() {
@@ -62,6 +65,7 @@ public class BoundaryCacheFieldRule extends AbstractRecordRule implements Clonea
         Logs.error(this, "Cannot find code table for " + fieldName);
       } else {
         this.boundaryCacheByFieldName.put(fieldName, boundaryCache);
+        this.boundaryGridByFieldName.put(fieldName, BoundaryCacheGrid.get(boundaryCache));
       }
     }
     setFieldNames(this.boundaryFieldNames);
@@ -80,7 +84,8 @@ public class BoundaryCacheFieldRule extends AbstractRecordRule implements Clonea
       final BoundaryCache boundaryCache = this.boundaryCacheByFieldName.get(fieldName);
       if (boundaryCache != null) {
         final Identifier boundaryId = record.getIdentifier(fieldName);
-        final Identifier containedBoundaryId = boundaryCache.getBoundaryId(point);
+        final BoundaryCacheGrid boundaryGrid = this.boundaryGridByFieldName.get(fieldName);
+        final Identifier containedBoundaryId = boundaryGrid.getBoundaryId(point);
         if (boundaryId == null) {
           if (containedBoundaryId != null) {
             if (record.setValue(fieldName, containedBoundaryId)) {
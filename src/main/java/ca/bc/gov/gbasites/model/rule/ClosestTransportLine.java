@@ -0,0 +1,41 @@
+package ca.bc.gov.gbasites.model.rule;
+
+import com.revolsys.geometry.model.LineString;
+import com.revolsys.geometry.model.Point;
+import com.revolsys.geometry.model.metrics.PointLineStringMetrics;
+import com.revolsys.record.Record;
+
+/**
+ * A transport line close to a site point with the metrics from the site point to the line. The
+ * metrics are calculated once when the transport line is found and reused when comparing the
+ * candidate transport lines.
+ */
+public class ClosestTransportLine {
+
+  private final Record transportLine;
+
+  private final PointLineStringMetrics metrics;
+
+  public ClosestTransportLine(final Point sitePoint, final Record transportLine) {
+    this.transportLine = transportLine;
+    final LineString line = transportLine.getGeometry();
+    this.metrics = line.getMetrics(sitePoint);
+  }
+
+  public double getDistance() {
+    return this.metrics.getDistance();
+  }
+
+  public PointLineStringMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  public Record getTransportLine() {
+    return this.transportLine;
+  }
+
+  @Override
+  public String toString() {
+    return this.transportLine + " " + this.metrics.getDistance();
+  }
+}
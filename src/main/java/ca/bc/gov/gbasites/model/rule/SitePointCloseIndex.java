@@ -0,0 +1,338 @@
+package ca.bc.gov.gbasites.model.rule;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import ca.bc.gov.gbasites.util.LongKeySort;
+
+import com.revolsys.collection.map.Maps;
+import com.revolsys.geometry.model.Point;
+import com.revolsys.record.Record;
+
+/**
+ * Index of the {@link SitePointRule} sites for finding the sites within a small distance of each
+ * other (duplicate and too close checks).
+ *
+ * The points are bucketed into square cells of the close distance and stored in primitive arrays
+ * sorted by cell key. Each site only has to check its own and the eight adjacent cells. The
+ * sites that have another site within the close distance are found in one pass when the index is
+ * created, so the sites that don't have a close site (most of them) are answered without a
+ * search.
+ *
+ * Sites are found by record identity and searched using their current point. Sites that are
+ * deleted are removed using {@link #remove(Record)}. Sites that are moved must be updated using
+ * {@link #updateGeometry(Record)}. A moved site is removed from its sorted cell and added to the
+ * same cell of the moved sites, so a search still only checks the nine cells. The close sites for
+ * its new point are marked when it is moved.
+ */
+public class SitePointCloseIndex {
+
+  /**
+   * Consumer of the positions of a pair of points in the index.
+   */
+  private interface PairConsumer {
+    void accept(int index1, int index2);
+  }
+
+  private static long cellKey(final long cellX, final long cellY) {
+    return cellX << 32 | cellY & 0xffffffffL;
+  }
+
+  private final double cellSize;
+
+  private final long[] cellKeys;
+
+  private final BitSet hasClose;
+
+  private final Map<Record, Integer> indexByRecord = new IdentityHashMap<>();
+
+  private final BitSet moved;
+
+  /**
+   * The indexes of the moved sites for each cell key of their current point.
+   */
+  private final Map<Long, List<Integer>> movedIndexesByCell = new HashMap<>();
+
+  private final Record[] records;
+
+  private final BitSet removed;
+
+  private final int size;
+
+  private final double[] xs;
+
+  private final double[] ys;
+
+  /**
+   * Create the index for the sites. Sites without a point geometry are not indexed.
+   *
+   * @param sites The sites.
+   * @param closeDistance The maximum distance that can be used in
+   *          {@link #getWithinDistance(Record, double)}.
+   */
+  public SitePointCloseIndex(final List<Record> sites, final double closeDistance) {
+    this.cellSize = closeDistance;
+    final int siteCount = sites.size();
+    final long[] keys = new long[siteCount];
+    final double[] xs = new double[siteCount];
+    final double[] ys = new double[siteCount];
+    final Record[] records = new Record[siteCount];
+    int size = 0;
+    for (final Record site : sites) {
+      final Point point = site.getGeometry();
+      if (point != null && !point.isEmpty()) {
+        final double x = point.getX();
+        final double y = point.getY();
+        keys[size] = cellKey(getCell(x), getCell(y));
+        xs[size] = x;
+        ys[size] = y;
+        records[size] = site;
+        size++;
+      }
+    }
+    final int[] order = LongKeySort.sortPositions(keys, size);
+
+    this.size = size;
+    this.cellKeys = new long[size];
+    this.xs = new double[size];
+    this.ys = new double[size];
+    this.records = new Record[size];
+    for (int i = 0; i < size; i++) {
+      final int index = order[i];
+      this.cellKeys[i] = keys[index];
+      this.xs[i] = xs[index];
+      this.ys[i] = ys[index];
+      this.records[i] = records[index];
+      this.indexByRecord.put(records[index], i);
+    }
+    this.moved = new BitSet(size);
+    this.removed = new BitSet(size);
+    this.hasClose = new BitSet(size);
+    forEachPairIndex(closeDistance, (index1, index2) -> {
+      this.hasClose.set(index1);
+      this.hasClose.set(index2);
+    });
+  }
+
+  private int firstIndex(final long cellKey) {
+    int low = 0;
+    int high = this.size;
+    while (low < high) {
+      final int middle = low + high >>> 1;
+      if (this.cellKeys[middle] < cellKey) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Call the action for each pair of sites within the distance of each other. Each pair is only
+   * returned once.
+   *
+   * @param distance The distance, must be less than or equal to the close distance.
+   * @param action The action.
+   */
+  private void forEachPairIndex(final double distance, final PairConsumer action) {
+    final double distanceSquared = distance * distance;
+    int cellStart = 0;
+    while (cellStart < this.size) {
+      final long cellKey = this.cellKeys[cellStart];
+      int cellEnd = cellStart + 1;
+      while (cellEnd < this.size && this.cellKeys[cellEnd] == cellKey) {
+        cellEnd++;
+      }
+      final long cellX = cellKey >> 32;
+      final long cellY = (int)cellKey;
+      for (int index1 = cellStart; index1 < cellEnd; index1++) {
+        if (isIndexed(index1)) {
+          // Same cell
+          pairs(index1, index1 + 1, cellEnd, distanceSquared, action);
+          // Forward cells, so that each pair of cells is only visited once
+          pairsInCell(index1, cellKey(cellX, cellY + 1), distanceSquared, action);
+          pairsInCell(index1, cellKey(cellX + 1, cellY - 1), distanceSquared, action);
+          pairsInCell(index1, cellKey(cellX + 1, cellY), distanceSquared, action);
+          pairsInCell(index1, cellKey(cellX + 1, cellY + 1), distanceSquared, action);
+        }
+      }
+      cellStart = cellEnd;
+    }
+  }
+
+  /**
+   * Call the action for the index of each site within the distance of the point.
+   *
+   * @param x The x coordinate of the point.
+   * @param y The y coordinate of the point.
+   * @param distance The distance, must be less than or equal to the close distance.
+   * @param action The action.
+   */
+  private void forEachWithinDistance(final double x, final double y, final double distance,
+    final IntConsumer action) {
+    final double distanceSquared = distance * distance;
+    final long cellX = getCell(x);
+    final long cellY = getCell(y);
+    for (long searchX = cellX - 1; searchX <= cellX + 1; searchX++) {
+      for (long searchY = cellY - 1; searchY <= cellY + 1; searchY++) {
+        final long cellKey = cellKey(searchX, searchY);
+        for (int index = firstIndex(cellKey); index < this.size
+          && this.cellKeys[index] == cellKey; index++) {
+          if (isIndexed(index) && isWithinDistance(x, y, index, distanceSquared)) {
+            action.accept(index);
+          }
+        }
+        final List<Integer> movedIndexes = this.movedIndexesByCell.get(cellKey);
+        if (movedIndexes != null) {
+          for (final int index : movedIndexes) {
+            if (isWithinDistance(x, y, index, distanceSquared)) {
+              action.accept(index);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private long getCell(final double coordinate) {
+    return (long)Math.floor(coordinate / this.cellSize);
+  }
+
+  private int getIndex(final Record site) {
+    final Integer index = this.indexByRecord.get(site);
+    if (index == null) {
+      return -1;
+    } else {
+      return index;
+    }
+  }
+
+  /**
+   * Get the sites within the distance of the current point of the site, including the site. If
+   * there isn't another site within the distance an empty list is returned.
+   *
+   * @param site The site.
+   * @param distance The distance, must be less than or equal to the close distance.
+   * @return The sites or null if the site isn't in the index and a spatial query must be used.
+   */
+  public List<Record> getWithinDistance(final Record site, final double distance) {
+    final int index = getIndex(site);
+    final Point point = site.getGeometry();
+    if (index == -1 || point == null || point.isEmpty()) {
+      return null;
+    } else if (!this.hasClose.get(index)) {
+      return Collections.emptyList();
+    }
+    final List<Record> sites = new ArrayList<>();
+    forEachWithinDistance(point.getX(), point.getY(), distance,
+      index2 -> sites.add(this.records[index2]));
+    if (sites.size() < 2) {
+      return Collections.emptyList();
+    } else {
+      return sites;
+    }
+  }
+
+  /**
+   * @return True if the site at the index isn't deleted or moved so it is in its sorted cell.
+   */
+  private boolean isIndexed(final int index) {
+    return !this.removed.get(index) && !this.moved.get(index);
+  }
+
+  private boolean isWithinDistance(final double x, final double y, final int index,
+    final double distanceSquared) {
+    final double deltaX = this.xs[index] - x;
+    final double deltaY = this.ys[index] - y;
+    return deltaX * deltaX + deltaY * deltaY <= distanceSquared;
+  }
+
+  private void pairs(final int index1, final int start, final int end,
+    final double distanceSquared, final PairConsumer action) {
+    final double x = this.xs[index1];
+    final double y = this.ys[index1];
+    for (int index2 = start; index2 < end; index2++) {
+      if (isIndexed(index2) && isWithinDistance(x, y, index2, distanceSquared)) {
+        action.accept(index1, index2);
+      }
+    }
+  }
+
+  private void pairsInCell(final int index1, final long cellKey, final double distanceSquared,
+    final PairConsumer action) {
+    final int start = firstIndex(cellKey);
+    int end = start;
+    while (end < this.size && this.cellKeys[end] == cellKey) {
+      end++;
+    }
+    pairs(index1, start, end, distanceSquared, action);
+  }
+
+  /**
+   * Remove a site that was deleted.
+   *
+   * @param site The site.
+   */
+  public void remove(final Record site) {
+    final int index = getIndex(site);
+    if (index != -1) {
+      removeMoved(index);
+      this.removed.set(index);
+    }
+  }
+
+  /**
+   * Remove the site from the cell of the moved sites if it was moved.
+   */
+  private void removeMoved(final int index) {
+    if (this.moved.get(index)) {
+      final long cellKey = cellKey(getCell(this.xs[index]), getCell(this.ys[index]));
+      final List<Integer> movedIndexes = this.movedIndexesByCell.get(cellKey);
+      if (movedIndexes != null) {
+        movedIndexes.remove(Integer.valueOf(index));
+        if (movedIndexes.isEmpty()) {
+          this.movedIndexesByCell.remove(cellKey);
+        }
+      }
+    }
+  }
+
+  public int size() {
+    return this.size - this.removed.cardinality();
+  }
+
+  /**
+   * Update the index after the geometry of the site was changed. The site is moved to the cell of
+   * the moved sites for its current point and it and the sites close to it are marked as having a
+   * close site. A site without a point is no longer found.
+   *
+   * @param site The site.
+   */
+  public void updateGeometry(final Record site) {
+    final int index = getIndex(site);
+    if (index != -1 && !this.removed.get(index)) {
+      removeMoved(index);
+      this.moved.set(index);
+      final Point point = site.getGeometry();
+      if (point != null && !point.isEmpty()) {
+        final double x = point.getX();
+        final double y = point.getY();
+        forEachWithinDistance(x, y, this.cellSize, index2 -> {
+          this.hasClose.set(index);
+          this.hasClose.set(index2);
+        });
+        this.xs[index] = x;
+        this.ys[index] = y;
+        final long cellKey = cellKey(getCell(x), getCell(y));
+        Maps.addToList(this.movedIndexesByCell, cellKey, index);
+      }
+    }
+  }
+}
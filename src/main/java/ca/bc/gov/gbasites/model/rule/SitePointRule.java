@@ -6,19 +6,20 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.jeometry.common.data.identifier.Identifier;
 import org.jeometry.common.data.type.DataType;
+import org.jeometry.common.exception.Exceptions;
 import org.jeometry.common.io.PathName;
 import org.jeometry.common.logging.Logs;
 import org.jeometry.common.number.Doubles;
@@ -74,6 +75,7 @@ import com.revolsys.geometry.model.metrics.PointLineStringMetrics;
 import com.revolsys.geometry.operation.distance.DistanceWithPoints;
 import com.revolsys.io.FileUtil;
 import com.revolsys.io.Writer;
+import com.revolsys.parallel.process.ProcessNetwork;
 import com.revolsys.record.Record;
 import com.revolsys.record.RecordState;
 import com.revolsys.record.Records;
@@ -266,8 +268,36 @@ public class SitePointRule extends AbstractRecordGeometryRule
     "There must exist Tb(SITE_POINT)  records for Tb(TRANSPORT_LINE) with a given structured name.",
     "No Tb(SITE_POINT) for Tb(TRANSPORT_LINE) with Fb(Structured Name 1)=Vb({name}).", true);
 
+  /**
+   * The {@link RecordRuleThreadProperties} property for the {@link SitePointCloseIndex} of the
+   * sites in the locality. If not set the {@link SiteTables#SITE_POINT} spatial index is used.
+   */
+  public static final String SITE_CLOSE_INDEX = "SitePointRule.siteCloseIndex";
+
+  public static final double SITE_CLOSE_DISTANCE = 2;
+
+  /**
+   * The {@link RecordRuleThreadProperties} property for the number of threads used to validate
+   * the street blocks in a locality. If not set the streets are validated on the locality thread.
+   */
+  public static final String STREET_THREAD_COUNT = "SitePointRule.streetThreadCount";
+
+  /**
+   * The street threads are started by each locality thread. The permits limit the total number
+   * of street threads for all the localities to the number of processors. If no permits are
+   * available the streets are validated on the locality thread.
+   */
+  private static final Semaphore STREET_THREAD_PERMITS = new Semaphore(
+    Runtime.getRuntime().availableProcessors());
+
+  private static final ThreadLocal<StreetValidation> STREET_VALIDATION = new ThreadLocal<>();
+
   private static final int TRANSPORT_LINE_DISTANCE_TOLERANCE = 1000;
 
+  private static final int TRANSPORT_LINE_START_DISTANCE = 100;
+
+  private static final int TRANSPORT_LINE_DISTANCE_STEP = 200;
+
   public static void addDataAddressRange(final Map<String, Object> data,
     final Record transportLine) {
     if (transportLine != null) {
@@ -367,20 +397,38 @@ public class SitePointRule extends AbstractRecordGeometryRule
   // }
 
   public static StreetBlock getStreetBlock(final int number) {
-    final Map<Integer, StreetBlock> blocksByNumber = RecordRuleThreadProperties
-      .getProperty("streetBlocksByNumber", Maps.factoryTree());
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    final Map<Integer, StreetBlock> blocksByNumber;
+    if (streetValidation == null) {
+      blocksByNumber = RecordRuleThreadProperties.getProperty("streetBlocksByNumber",
+        Maps.factoryTree());
+    } else {
+      blocksByNumber = streetValidation.getStreetBlocksByNumber();
+    }
     return blocksByNumber.get(number);
   }
 
+  /**
+   * Get the list of {@link GbaItnTables#TRANSPORT_LINE} records for the current
+   * {@link RecordRuleThreadProperties#getLocalityId()}. The records and the spatial index are
+   * loaded once per locality and shared by the QA process, the rules and the save of the changes.
+   *
+   * @return The list of transport lines.
+   */
   public static List<Record> getTransportLines() {
-    final Identifier localityId = RecordRuleThreadProperties.getLocalityId();
-    final Counter totalCounter = RecordRuleThreadProperties
-      .getTotalCounter(QaSitePoint.TRANSPORT_LINE_READ);
-    final List<Record> records = RecordRuleThreadProperties.getRecords(totalCounter, localityId,
-      GbaItnTables.TRANSPORT_LINE, false);
-    final RecordSpatialIndex<Record> index = RecordSpatialIndex.quadTree(Gba.GEOMETRY_FACTORY_2D)
-      .addRecords(records);
-    RecordRuleThreadProperties.setSpatialIndex(GbaItnTables.TRANSPORT_LINE, index);
+    List<Record> records = RecordRuleThreadProperties.getProperty("transportLines");
+    if (records == null) {
+      final Identifier localityId = RecordRuleThreadProperties.getLocalityId();
+      final Counter totalCounter = RecordRuleThreadProperties
+        .getTotalCounter(QaSitePoint.TRANSPORT_LINE_READ);
+      records = RecordRuleThreadProperties.getRecords(totalCounter, localityId,
+        GbaItnTables.TRANSPORT_LINE, false);
+      final RecordSpatialIndex<Record> index = RecordSpatialIndex
+        .quadTree(Gba.GEOMETRY_FACTORY_2D)
+        .addRecords(records);
+      RecordRuleThreadProperties.setSpatialIndex(GbaItnTables.TRANSPORT_LINE, index);
+      RecordRuleThreadProperties.setProperty("transportLines", records);
+    }
     return records;
   }
 
@@ -541,6 +589,23 @@ public class SitePointRule extends AbstractRecordGeometryRule
       TRANSPORT_LINE_ID, UNDER_CONSTRUCTION_IND, UNIT_DESCRIPTOR, USE_IN_ADDRESS_RANGE_IND);
   }
 
+  /**
+   * Acquire up to {@link #STREET_THREAD_COUNT} {@link #STREET_THREAD_PERMITS} without waiting.
+   * The permits must be released after the streets are validated.
+   *
+   * @return The number of permits acquired.
+   */
+  private int acquireStreetThreads() {
+    final Integer streetThreadCount = RecordRuleThreadProperties.getProperty(STREET_THREAD_COUNT);
+    int permitCount = 0;
+    if (streetThreadCount != null && streetThreadCount > 1) {
+      while (permitCount < streetThreadCount && STREET_THREAD_PERMITS.tryAcquire()) {
+        permitCount++;
+      }
+    }
+    return permitCount;
+  }
+
   protected void addDataName(final Map<String, Object> data) {
     final String name = getStructuredName();
     data.put("name", name);
@@ -567,6 +632,21 @@ public class SitePointRule extends AbstractRecordGeometryRule
     }
   }
 
+  /**
+   * Run an action that adds a message or count for a street. If the street is being validated on
+   * a street thread the action is run later on the locality thread.
+   *
+   * @param action The action.
+   */
+  public void addStreetAction(final Runnable action) {
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    if (streetValidation == null) {
+      action.run();
+    } else {
+      streetValidation.addAction(action);
+    }
+  }
+
   private void addStreetToBlock(final Map<Integer, StreetBlock> blocksById, int block,
     final Street street) {
     block = StreetBlock.getBlockFrom(block);
@@ -647,6 +727,11 @@ public class SitePointRule extends AbstractRecordGeometryRule
     if (index != null) {
       index.removeRecord(site);
     }
+    final SitePointCloseIndex closeIndex = RecordRuleThreadProperties
+      .getProperty(SITE_CLOSE_INDEX);
+    if (closeIndex != null) {
+      closeIndex.remove(site);
+    }
     if (deleteRecord(site)) {
       addCount("Fixed", message);
     }
@@ -704,17 +789,91 @@ public class SitePointRule extends AbstractRecordGeometryRule
     return Collections.singletonList(fullAddress);
   }
 
+  /**
+   * Get the transport lines with one of the structured names within the first search ring
+   * (100m, 300m, 500m ...) up to {@link #TRANSPORT_LINE_DISTANCE_TOLERANCE} that has any lines.
+   * Most sites are within 100m of their street so that ring is queried first. If there are none
+   * the index is queried once for the largest ring and the ring is selected using the distance to
+   * the closest line, instead of querying each ring in turn. The lines are returned in the order
+   * returned by the index.
+   *
+   * @param sitePoint The site point.
+   * @param structuredNameIds The structured names for the site.
+   * @return The close transport lines.
+   */
+  private List<ClosestTransportLine> getClosestTransportLines(final Point sitePoint,
+    final List<Identifier> structuredNameIds) {
+    final int startDistance = TRANSPORT_LINE_START_DISTANCE;
+    final Predicate<Record> startFilter = new SitePointClosestTransportLineFilter(sitePoint,
+      startDistance, structuredNameIds);
+    final Collection<Record> startTransportLines = queryDistance(GbaItnTables.TRANSPORT_LINE,
+      sitePoint, startDistance, startFilter);
+    final List<ClosestTransportLine> closeTransportLines = new ArrayList<>();
+    if (startTransportLines.isEmpty()) {
+      final int step = TRANSPORT_LINE_DISTANCE_STEP;
+      final int maxDistance = startDistance
+        + (TRANSPORT_LINE_DISTANCE_TOLERANCE - startDistance) / step * step;
+      if (maxDistance > startDistance) {
+        final Predicate<Record> filter = new SitePointClosestTransportLineFilter(sitePoint,
+          maxDistance, structuredNameIds);
+        double minDistance = Double.MAX_VALUE;
+        for (final Record transportLine : queryDistance(GbaItnTables.TRANSPORT_LINE, sitePoint,
+          maxDistance, filter)) {
+          final ClosestTransportLine closeTransportLine = new ClosestTransportLine(sitePoint,
+            transportLine);
+          closeTransportLines.add(closeTransportLine);
+          minDistance = Math.min(minDistance, closeTransportLine.getDistance());
+        }
+        if (!closeTransportLines.isEmpty()) {
+          final double ringDistance = Math.min(maxDistance,
+            startDistance + Math.ceil((minDistance - startDistance) / step) * step);
+          closeTransportLines.removeIf(line -> line.getDistance() > ringDistance);
+        }
+      }
+    } else {
+      for (final Record transportLine : startTransportLines) {
+        closeTransportLines.add(new ClosestTransportLine(sitePoint, transportLine));
+      }
+    }
+    return closeTransportLines;
+  }
+
   private Identifier getLocalityStructuredNameId(final Identifier structuredNameId) {
     final String simplifiedName = GbaController.structuredNames.getSimplifiedName(structuredNameId);
     return Maps.get(this.localityNameIdBySimplifiedNameMap, simplifiedName, structuredNameId);
   }
 
   public Map<Record, List<Record>> getSitesByTransportLine() {
-    return this.sitesByTransportLine;
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    if (streetValidation == null) {
+      return this.sitesByTransportLine;
+    } else {
+      return streetValidation.getSitesByTransportLine();
+    }
+  }
+
+  /**
+   * Get the locality id for the street being validated. The street threads don't have the
+   * {@link RecordRuleThreadProperties} for the locality.
+   *
+   * @return The locality id.
+   */
+  public Identifier getStreetLocalityId() {
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    if (streetValidation == null) {
+      return getLocalityId();
+    } else {
+      return streetValidation.getLocalityId();
+    }
   }
 
   public String getStructuredName() {
-    return GbaController.structuredNames.getValue(this.structuredNameId);
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    if (streetValidation == null) {
+      return GbaController.structuredNames.getValue(this.structuredNameId);
+    } else {
+      return GbaController.structuredNames.getValue(streetValidation.getStructuredNameId());
+    }
   }
 
   public Record getTransportLine(final Record site) {
@@ -783,7 +942,12 @@ public class SitePointRule extends AbstractRecordGeometryRule
 
   public Collection<StreetBlock> initStreetBlocks(final Graph<Street> streetGraph) {
     final Map<Integer, StreetBlock> streetBlocksByNumber = new TreeMap<>();
-    RecordRuleThreadProperties.setProperty("streetBlocksByNumber", streetBlocksByNumber);
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    if (streetValidation == null) {
+      RecordRuleThreadProperties.setProperty("streetBlocksByNumber", streetBlocksByNumber);
+    } else {
+      streetValidation.setStreetBlocksByNumber(streetBlocksByNumber);
+    }
     for (final Street street : streetGraph.getEdgeObjects()) {
       for (final Side side : Side.VALUES) {
         if (street.localityEqual(this, side)) {
@@ -1165,6 +1329,21 @@ public class SitePointRule extends AbstractRecordGeometryRule
     }, Node.filterDegree(2));
   }
 
+  private StreetValidation newStreetValidation(final Identifier structuredNameId,
+    final List<Record> streetTransportLines, final List<Record> streetSites) {
+    final Identifier localityId = getLocalityId();
+    if (GbaController.structuredNames.isGeneric(structuredNameId) || streetSites == null) {
+      return new StreetValidation(localityId, structuredNameId, streetTransportLines, null);
+    } else {
+      final StreetValidation street = new StreetValidation(localityId, structuredNameId,
+        streetTransportLines, streetSites);
+      street.initStreets(
+        RecordRuleThreadProperties.fi(streetTransportLines, IntegrationAction.notDeleted()),
+        RecordRuleThreadProperties.fi(streetSites, IntegrationAction.notDeleted()));
+      return street;
+    }
+  }
+
   public boolean setForeignKeyIdentifier(final Record record, final String fieldName,
     final Record referencedRecord) {
     Identifier identifier = null;
@@ -1226,6 +1405,14 @@ public class SitePointRule extends AbstractRecordGeometryRule
 
   /**
    * Validate the {@link GbaItnTables#SITE_POINT} records within the locality.
+   *
+   * If the {@link #STREET_THREAD_COUNT} is greater than 1 the street blocks for each structured
+   * name are validated using multiple threads. The messages and counts are added on the locality
+   * thread in the same order as if the streets were validated one at a time.
+   *
+   * On one thread the messages, counts and fixes (e.g. deleting a virtual site) are run
+   * immediately as before. On street threads the fixes can't change the shared records so they
+   * are recorded and run when the street's actions are replayed on the locality thread.
    */
   @Override
   public boolean validateLocality() {
@@ -1236,12 +1423,40 @@ public class SitePointRule extends AbstractRecordGeometryRule
 
     validateSitesWithNoNames(sitesByStructuredNameId, sitesWithNoStructuredName);
 
-    for (final Entry<Identifier, List<Record>> entry : i(
-      this.transportLinesByStructuredNameId.entrySet())) {
-      this.structuredNameId = entry.getKey();
-      final List<Record> streetTransportLines = entry.getValue();
-      final List<Record> streetSites = sitesByStructuredNameId.remove(this.structuredNameId);
-      valid &= validateLocalityStreet(this.structuredNameId, streetTransportLines, streetSites);
+    final int streetThreadCount = acquireStreetThreads();
+    try {
+      if (streetThreadCount > 1) {
+        final List<StreetValidation> streets = new ArrayList<>();
+        for (final Entry<Identifier, List<Record>> entry : i(
+          this.transportLinesByStructuredNameId.entrySet())) {
+          final Identifier structuredNameId = entry.getKey();
+          final List<Record> streetTransportLines = entry.getValue();
+          final List<Record> streetSites = sitesByStructuredNameId.remove(structuredNameId);
+          final StreetValidation street = newStreetValidation(structuredNameId,
+            streetTransportLines, streetSites);
+          streets.add(street);
+        }
+        validateLocalityStreetBlocks(streets, streetThreadCount);
+        for (final StreetValidation street : streets) {
+          this.structuredNameId = street.getStructuredNameId();
+          valid &= validateLocalityStreet(street);
+        }
+      } else {
+        for (final Entry<Identifier, List<Record>> entry : i(
+          this.transportLinesByStructuredNameId.entrySet())) {
+          this.structuredNameId = entry.getKey();
+          final List<Record> streetTransportLines = entry.getValue();
+          final List<Record> streetSites = sitesByStructuredNameId.remove(this.structuredNameId);
+          final StreetValidation street = newStreetValidation(this.structuredNameId,
+            streetTransportLines, streetSites);
+          if (street.isValidateBlocks()) {
+            validateLocalityStreetBlocks(street.getMainTransportLines(), street.getMainSites());
+          }
+          valid &= validateLocalityStreet(street);
+        }
+      }
+    } finally {
+      STREET_THREAD_PERMITS.release(streetThreadCount);
     }
 
     valid &= logSitePointsWithNoTransportLines(sitesByStructuredNameId);
@@ -1250,74 +1465,100 @@ public class SitePointRule extends AbstractRecordGeometryRule
     return valid;
   }
 
-  private boolean validateLocalityStreet(final Identifier structuredNameId,
-    final List<Record> streetTransportLines, final List<Record> streetSites) {
+  /**
+   * Validate the street after the main street blocks were validated. Any messages and counts
+   * recorded by the street threads are added first.
+   */
+  private boolean validateLocalityStreet(final StreetValidation street) {
     final boolean valid = true;
+    final Identifier structuredNameId = street.getStructuredNameId();
     if (GbaController.structuredNames.isGeneric(structuredNameId)) {
-    } else if (streetSites == null) {
-      logTransportLinesWithNoSitePoints(structuredNameId, streetTransportLines);
+    } else if (street.getStreetSites() == null) {
+      logTransportLinesWithNoSitePoints(structuredNameId, street.getStreetTransportLines());
     } else {
+      street.runActions();
 
-      final Set<Integer> mainCivicNumbers = new HashSet<>();
-      final List<Record> mainTransportLines = new ArrayList<>();
-      final List<Record> mainSites = new ArrayList<>();
+      final Set<Integer> mainCivicNumbers = street.getMainCivicNumbers();
+      for (final Integer strataCivicNumber : street.getStrataCivicNumbers()) {
+        final List<Record> strataSites = street.getStrataSites(strataCivicNumber);
+        final List<Record> strataTransportLines = street
+          .getStrataTransportLines(strataCivicNumber);
 
-      final Set<Integer> strataCivicNumbers = new TreeSet<>();
-      final Map<Integer, List<Record>> strataSitesByCivicNumber = new TreeMap<>();
-      final Map<Integer, List<Record>> strataTransportLinesByCivicNumber = new TreeMap<>();
-
-      for (final Record transportLine : RecordRuleThreadProperties.fi(streetTransportLines,
-        IntegrationAction.notDeleted())) {
-        final Integer strataCivicNumber = transportLine
-          .getInteger(TransportLine.SINGLE_HOUSE_NUMBER);
-        if (strataCivicNumber == null) {
-          mainTransportLines.add(transportLine);
-        } else {
-          if (strataCivicNumber > 0) {
-            strataCivicNumbers.add(strataCivicNumber);
-            Maps.addToList(strataTransportLinesByCivicNumber, strataCivicNumber, transportLine);
-          }
-        }
+        validateLocalityStreetStrata(mainCivicNumbers, strataCivicNumber, strataTransportLines,
+          strataSites);
       }
+    }
+    return valid;
+  }
 
-      for (final Record site : RecordRuleThreadProperties.fi(streetSites,
-        IntegrationAction.notDeleted())) {
-        final boolean useInAddressRange = SitePoint.isUseInAddressRange(site);
-        if (useInAddressRange) {
-          final Integer civicNumber = site.getInteger(CIVIC_NUMBER);
-          if (Property.hasValue(civicNumber) && civicNumber >= 0) {
-            if (site.hasValue(UNIT_DESCRIPTOR) && strataCivicNumbers.contains(civicNumber)) {
-              Maps.addToList(strataSitesByCivicNumber, civicNumber, site);
-            } else {
-              mainCivicNumbers.add(civicNumber);
-              mainSites.add(site);
+  /**
+   * Validate the main street blocks for the streets using street threads. Each street thread sets
+   * the {@link #STREET_VALIDATION} so that the messages and counts are recorded on the street.
+   * The streets with the most transport lines are validated first.
+   */
+  private void validateLocalityStreetBlocks(final List<StreetValidation> streets,
+    final int threadCount) {
+    final List<StreetValidation> blockStreets = new ArrayList<>();
+    for (final StreetValidation street : streets) {
+      if (street.isValidateBlocks()) {
+        blockStreets.add(street);
+      }
+    }
+    blockStreets.sort((street1, street2) -> {
+      final int size1 = street1.getMainTransportLines().size();
+      final int size2 = street2.getMainTransportLines().size();
+      return Integer.compare(size2, size1);
+    });
+    final Iterator<StreetValidation> iterator = blockStreets.iterator();
+    final SimpleValueHolder<Throwable> error = new SimpleValueHolder<>();
+    final String localityName = RecordRuleThreadProperties.getLocalityName();
+    final ProcessNetwork processes = new ProcessNetwork();
+    final int processCount = Math.min(threadCount, blockStreets.size());
+    for (int i = 0; i < processCount; i++) {
+      processes.addProcess(localityName + " Street " + (i + 1), () -> {
+        while (true) {
+          final StreetValidation street;
+          synchronized (iterator) {
+            if (error.getValue() != null || !iterator.hasNext()) {
+              return;
+            }
+            street = iterator.next();
+          }
+          STREET_VALIDATION.set(street);
+          try {
+            validateLocalityStreetBlocks(street.getMainTransportLines(), street.getMainSites());
+          } catch (final Throwable e) {
+            synchronized (iterator) {
+              if (error.getValue() == null) {
+                error.setValue(e);
+              }
             }
+            return;
+          } finally {
+            STREET_VALIDATION.remove();
           }
         }
-      }
-
-      validateLocalityStreetBlocks(mainTransportLines, mainSites);
-
-      for (final Integer strataCivicNumber : strataCivicNumbers) {
-        final List<Record> strataSites = strataSitesByCivicNumber.get(strataCivicNumber);
-        final List<Record> strataTransportLines = strataTransportLinesByCivicNumber
-          .get(strataCivicNumber);
-
-        validateLocalityStreetStrata(mainCivicNumbers, strataCivicNumber, strataTransportLines,
-          strataSites);
-      }
+      });
+    }
+    processes.startAndWait();
+    if (error.getValue() != null) {
+      throw Exceptions.wrap("Error validating streets in " + localityName, error.getValue());
     }
-    return valid;
   }
 
   private void validateLocalityStreetBlocks(final List<Record> transportLines,
     final List<Record> sites) {
 
-    this.sitesByTransportLine = new HashMap<>();
-
+    final Map<Record, List<Record>> sitesByTransportLine = new HashMap<>();
     for (final Record site : sites) {
       final Record transportLine = getTransportLine(site);
-      Maps.addToList(this.sitesByTransportLine, transportLine, site);
+      Maps.addToList(sitesByTransportLine, transportLine, site);
+    }
+    final StreetValidation streetValidation = STREET_VALIDATION.get();
+    if (streetValidation == null) {
+      this.sitesByTransportLine = sitesByTransportLine;
+    } else {
+      streetValidation.setSitesByTransportLine(sitesByTransportLine);
     }
 
     final List<Street> streets = new ArrayList<>();
@@ -1347,9 +1588,9 @@ public class SitePointRule extends AbstractRecordGeometryRule
     }
 
     for (final StreetBlock streetBlock : streetBlocks) {
-      addCount("Info", "Block");
+      addStreetAction(() -> addCount("Info", "Block"));
       if (streetBlock.validate(this)) {
-        addCount("Info", "Block matched");
+        addStreetAction(() -> addCount("Info", "Block matched"));
       }
     }
   }
@@ -1435,8 +1676,16 @@ public class SitePointRule extends AbstractRecordGeometryRule
 
   private boolean validateRecordDuplicateExactOrClose(final Record site1) {
     boolean valid = true;
-    final Point point1 = site1.getGeometry();
-    final Collection<Record> sitesWithinDistance = queryDistance(point1, 2);
+    Collection<Record> sitesWithinDistance = null;
+    final SitePointCloseIndex closeIndex = RecordRuleThreadProperties
+      .getProperty(SITE_CLOSE_INDEX);
+    if (closeIndex != null) {
+      sitesWithinDistance = closeIndex.getWithinDistance(site1, SITE_CLOSE_DISTANCE);
+    }
+    if (sitesWithinDistance == null) {
+      final Point point1 = site1.getGeometry();
+      sitesWithinDistance = queryDistance(point1, SITE_CLOSE_DISTANCE);
+    }
     final boolean fixingAllowed = RecordRuleThreadProperties.isFixingAllowed();
     if (sitesWithinDistance.size() > 1) {
       final String fullAddress1 = site1.getString(FULL_ADDRESS);
@@ -1540,33 +1789,23 @@ public class SitePointRule extends AbstractRecordGeometryRule
       Record matchedTransportLine = null;
 
       final Point sitePoint = site.getGeometry();
-      final int startDistance = 100;
-      final int distanceTolerance = TRANSPORT_LINE_DISTANCE_TOLERANCE;
-
-      for (int maxDistance = startDistance; matchedTransportLine == null
-        && maxDistance <= distanceTolerance; maxDistance += 200) {
-        final Predicate<Record> filter = new SitePointClosestTransportLineFilter(sitePoint,
-          maxDistance, structuredNameIds);
-
-        final Collection<Record> closeTransportLines = queryDistance(GbaItnTables.TRANSPORT_LINE,
-          sitePoint, maxDistance, filter);
-        for (final Record transportLine : closeTransportLines) {
-          final LineString line = transportLine.getGeometry();
-          final PointLineStringMetrics metrics = line.getMetrics(sitePoint);
-          Boolean bestMatch = true;
-          if (matchedTransportLine != null) {
-            bestMatch = validateRecordMatchTransportLineStrata(site, civicNumber, transportLine,
-              matchedTransportLine);
-            if (bestMatch == null) {
-              bestMatch = validateRecordMatchTransportLineDistance(site, civicNumber, transportLine,
-                metrics, matchedTransportLine, matchedMetrics);
-            }
-          }
-          if (bestMatch) {
-            matchedMetrics = metrics;
-            matchedTransportLine = transportLine;
+      for (final ClosestTransportLine closeTransportLine : getClosestTransportLines(sitePoint,
+        structuredNameIds)) {
+        final Record transportLine = closeTransportLine.getTransportLine();
+        final PointLineStringMetrics metrics = closeTransportLine.getMetrics();
+        Boolean bestMatch = true;
+        if (matchedTransportLine != null) {
+          bestMatch = validateRecordMatchTransportLineStrata(site, civicNumber, transportLine,
+            matchedTransportLine);
+          if (bestMatch == null) {
+            bestMatch = validateRecordMatchTransportLineDistance(site, civicNumber, transportLine,
+              metrics, matchedTransportLine, matchedMetrics);
           }
         }
+        if (bestMatch) {
+          matchedMetrics = metrics;
+          matchedTransportLine = transportLine;
+        }
       }
 
       Record transportLine;
@@ -1921,6 +2160,11 @@ public class SitePointRule extends AbstractRecordGeometryRule
         if (!newPoint.equals(point)) {
           valid &= addMessage(site, MESSAGE_SITE_POINT_VIRTUAL_LOCATION, newPoint, GEOMETRY, () -> {
             setGeometry(site, newPoint);
+            final SitePointCloseIndex closeIndex = RecordRuleThreadProperties
+              .getProperty(SITE_CLOSE_INDEX);
+            if (closeIndex != null) {
+              closeIndex.updateGeometry(site);
+            }
             moved.setValue(true);
           });
         }
@@ -204,10 +204,11 @@ public class Street implements Comparable<Street>, Comparator<Record> {
             final int civicNumber = sideSite.getInteger(SitePoint.CIVIC_NUMBER);
             if (streetSide.isStreetNumbersContains(civicNumber)) {
               if (!hasTransportLineNumber(civicNumber)) {
-                rule.addMessage(sideSite, SitePointRule.MESSAGE_SITE_POINT_VIRTUAL_MIDDLE_OF_RANGE,
-                  SitePoint.CIVIC_NUMBER, () -> {
+                rule.addStreetAction(() -> rule.addMessage(sideSite,
+                  SitePointRule.MESSAGE_SITE_POINT_VIRTUAL_MIDDLE_OF_RANGE, SitePoint.CIVIC_NUMBER,
+                  () -> {
                     rule.deleteSite(sideSite, "Delete virtual site in middle of range");
-                  });
+                  }));
               }
             }
           }
@@ -684,7 +685,7 @@ public class Street implements Comparable<Street>, Comparator<Record> {
   }
 
   public boolean localityEqual(final SitePointRule rule, final Side side) {
-    final Identifier localityId = rule.getLocalityId();
+    final Identifier localityId = rule.getStreetLocalityId();
     final Identifier sideLocalityId = getLocalityId(side);
     return localityId.equals(sideLocalityId);
   }
@@ -722,17 +723,19 @@ public class Street implements Comparable<Street>, Comparator<Record> {
       data.put("siteRange", siteRange);
       data.put("streetRange", streetRange);
 
-      rule.addMessage(transportLine, messageDescription, data, schemeField);
+      final String fieldName = schemeField;
+      rule.addStreetAction(
+        () -> rule.addMessage(transportLine, messageDescription, data, fieldName));
       i++;
     }
   }
 
   public void logSideCounts(final SitePointRule rule, final int blockNumber, final String prefix,
     final QaMessageDescription leftMessage, final QaMessageDescription rightMessage) {
-    rule.addCount("Info", "Block " + prefix);
+    rule.addStreetAction(() -> rule.addCount("Info", "Block " + prefix));
     if (leftMessage == null) {
       if (rightMessage == null) {
-        rule.addCount("Info", "Block " + prefix + " Matched");
+        rule.addStreetAction(() -> rule.addCount("Info", "Block " + prefix + " Matched"));
       } else {
         logSideCount(rule, blockNumber, prefix, rightMessage, "Right");
       }
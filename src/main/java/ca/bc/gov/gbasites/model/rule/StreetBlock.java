@@ -343,9 +343,9 @@ public class StreetBlock {
           for (final Record site : sites) {
             final String fullAddress = site.getString(SitePoint.FULL_ADDRESS);
             final Map<String, Object> data = Maps.newLinkedHash("fullAddress", fullAddress);
-            rule.addMessage(site,
+            rule.addStreetAction(() -> rule.addMessage(site,
               SitePointRule.MESSAGE_SITE_POINT_TRANSPORT_LINE_DUPLICATE_CIVIC_NUMBER, errorGeometry,
-              data, SitePoint.CIVIC_NUMBER);
+              data, SitePoint.CIVIC_NUMBER));
           }
         }
       }
@@ -355,7 +355,7 @@ public class StreetBlock {
 
   private boolean validateMultipleStreets(final SitePointRule rule) {
     if (isAllSameBlock()) {
-      rule.addCount("Info", "Block Multiple Same");
+      rule.addStreetAction(() -> rule.addCount("Info", "Block Multiple Same"));
       boolean matched = true;
       for (final Street street : this.streets) {
         if (street.validateMultipleSameStreetBlock(rule, this.blockNumber, this.blockRange)) {
@@ -364,11 +364,11 @@ public class StreetBlock {
         }
       }
       if (matched) {
-        rule.addCount("Info", "Block Multiple Same Matched");
+        rule.addStreetAction(() -> rule.addCount("Info", "Block Multiple Same Matched"));
       }
       return matched;
     } else {
-      rule.addCount("Info", "Block Multiple Span");
+      rule.addStreetAction(() -> rule.addCount("Info", "Block Multiple Span"));
       // Debug.println(this);
     }
     return false;
@@ -761,8 +761,9 @@ public class StreetSide {
               .getValue(this.transportLineScheme);
             final Map<String, Object> data = Maps.newLinkedHash("scheme", schemeName);
             SitePointRule.addDataFullAddress(data, site);
-            rule.addMessage(site, SitePointRule.MESSAGE_SITE_POINT_TRANSPORT_LINE_SCHEME_DIFFER,
-              data, SitePoint.CIVIC_NUMBER);
+            rule.addStreetAction(() -> rule.addMessage(site,
+              SitePointRule.MESSAGE_SITE_POINT_TRANSPORT_LINE_SCHEME_DIFFER, data,
+              SitePoint.CIVIC_NUMBER));
             removeSite(site);
           }
         }
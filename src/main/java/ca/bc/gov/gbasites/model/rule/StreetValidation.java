@@ -0,0 +1,184 @@
+package ca.bc.gov.gbasites.model.rule;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jeometry.common.data.identifier.Identifier;
+
+import ca.bc.gov.gba.itn.model.TransportLine;
+import ca.bc.gov.gbasites.model.type.SitePoint;
+
+import com.revolsys.collection.map.Maps;
+import com.revolsys.record.Record;
+import com.revolsys.util.Property;
+
+/**
+ * The transport lines and sites for a structured name in a locality, split into the main street
+ * and the strata (single house number) streets.
+ *
+ * When the street blocks are validated on a street thread the messages and counts can't be added
+ * from that thread. They are recorded as actions and run on the locality thread by
+ * {@link #runActions()} in the order the streets would have been validated on one thread.
+ */
+public class StreetValidation {
+
+  private final List<Runnable> actions = new ArrayList<>();
+
+  private final Identifier localityId;
+
+  private final Set<Integer> mainCivicNumbers = new HashSet<>();
+
+  private final List<Record> mainSites = new ArrayList<>();
+
+  private final List<Record> mainTransportLines = new ArrayList<>();
+
+  private Map<Record, List<Record>> sitesByTransportLine;
+
+  private final Set<Integer> strataCivicNumbers = new TreeSet<>();
+
+  private final Map<Integer, List<Record>> strataSitesByCivicNumber = new TreeMap<>();
+
+  private final Map<Integer, List<Record>> strataTransportLinesByCivicNumber = new TreeMap<>();
+
+  private Map<Integer, StreetBlock> streetBlocksByNumber;
+
+  private final List<Record> streetSites;
+
+  private final List<Record> streetTransportLines;
+
+  private final Identifier structuredNameId;
+
+  public StreetValidation(final Identifier localityId, final Identifier structuredNameId,
+    final List<Record> streetTransportLines, final List<Record> streetSites) {
+    this.localityId = localityId;
+    this.structuredNameId = structuredNameId;
+    this.streetTransportLines = streetTransportLines;
+    this.streetSites = streetSites;
+  }
+
+  public void addAction(final Runnable action) {
+    this.actions.add(action);
+  }
+
+  public Identifier getLocalityId() {
+    return this.localityId;
+  }
+
+  public Set<Integer> getMainCivicNumbers() {
+    return this.mainCivicNumbers;
+  }
+
+  public List<Record> getMainSites() {
+    return this.mainSites;
+  }
+
+  public List<Record> getMainTransportLines() {
+    return this.mainTransportLines;
+  }
+
+  public Map<Record, List<Record>> getSitesByTransportLine() {
+    return this.sitesByTransportLine;
+  }
+
+  public Set<Integer> getStrataCivicNumbers() {
+    return this.strataCivicNumbers;
+  }
+
+  public List<Record> getStrataSites(final Integer civicNumber) {
+    return this.strataSitesByCivicNumber.get(civicNumber);
+  }
+
+  public List<Record> getStrataTransportLines(final Integer civicNumber) {
+    return this.strataTransportLinesByCivicNumber.get(civicNumber);
+  }
+
+  public Map<Integer, StreetBlock> getStreetBlocksByNumber() {
+    return this.streetBlocksByNumber;
+  }
+
+  public List<Record> getStreetSites() {
+    return this.streetSites;
+  }
+
+  public List<Record> getStreetTransportLines() {
+    return this.streetTransportLines;
+  }
+
+  public Identifier getStructuredNameId() {
+    return this.structuredNameId;
+  }
+
+  /**
+   * Split the transport lines and sites that aren't deleted into the main street and the strata
+   * streets for each SINGLE_HOUSE_NUMBER.
+   *
+   * @param transportLines The transport lines that aren't deleted.
+   * @param sites The sites that aren't deleted.
+   */
+  public void initStreets(final Iterable<Record> transportLines, final Iterable<Record> sites) {
+    for (final Record transportLine : transportLines) {
+      final Integer strataCivicNumber = transportLine
+        .getInteger(TransportLine.SINGLE_HOUSE_NUMBER);
+      if (strataCivicNumber == null) {
+        this.mainTransportLines.add(transportLine);
+      } else {
+        if (strataCivicNumber > 0) {
+          this.strataCivicNumbers.add(strataCivicNumber);
+          Maps.addToList(this.strataTransportLinesByCivicNumber, strataCivicNumber,
+            transportLine);
+        }
+      }
+    }
+
+    for (final Record site : sites) {
+      final boolean useInAddressRange = SitePoint.isUseInAddressRange(site);
+      if (useInAddressRange) {
+        final Integer civicNumber = site.getInteger(SitePoint.CIVIC_NUMBER);
+        if (Property.hasValue(civicNumber) && civicNumber >= 0) {
+          if (site.hasValue(SitePoint.UNIT_DESCRIPTOR)
+            && this.strataCivicNumbers.contains(civicNumber)) {
+            Maps.addToList(this.strataSitesByCivicNumber, civicNumber, site);
+          } else {
+            this.mainCivicNumbers.add(civicNumber);
+            this.mainSites.add(site);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return True if the street has sites and the main street blocks need to be validated.
+   */
+  public boolean isValidateBlocks() {
+    return this.streetSites != null;
+  }
+
+  /**
+   * Run the actions recorded on the street thread.
+   */
+  public void runActions() {
+    for (final Runnable action : this.actions) {
+      action.run();
+    }
+    this.actions.clear();
+  }
+
+  public void setSitesByTransportLine(final Map<Record, List<Record>> sitesByTransportLine) {
+    this.sitesByTransportLine = sitesByTransportLine;
+  }
+
+  public void setStreetBlocksByNumber(final Map<Integer, StreetBlock> streetBlocksByNumber) {
+    this.streetBlocksByNumber = streetBlocksByNumber;
+  }
+
+  @Override
+  public String toString() {
+    return this.structuredNameId + " " + this.localityId;
+  }
+}
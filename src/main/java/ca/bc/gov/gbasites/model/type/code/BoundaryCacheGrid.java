@@ -0,0 +1,404 @@
+package ca.bc.gov.gbasites.model.type.code;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jeometry.common.data.identifier.Identifier;
+import org.jeometry.common.logging.Logs;
+
+import ca.bc.gov.gba.core.model.Gba;
+import ca.bc.gov.gba.core.model.codetable.BoundaryCache;
+
+import com.revolsys.geometry.model.BoundingBox;
+import com.revolsys.geometry.model.Geometry;
+import com.revolsys.geometry.model.GeometryFactory;
+import com.revolsys.geometry.model.LinearRing;
+import com.revolsys.geometry.model.Point;
+import com.revolsys.geometry.model.Polygon;
+import com.revolsys.geometry.model.Polygonal;
+import com.revolsys.record.Record;
+
+/**
+ * Grid over the boundaries in a {@link BoundaryCache} used to avoid the point in polygon test for
+ * most points.
+ *
+ * The grid has {@link #FINE_SIZE} metre cells grouped into {@link #COARSE_SIZE} metre coarse
+ * cells. Every cell within {@link #MARGIN} of a boundary edge is marked as an edge cell. No
+ * boundary edge crosses any other cell, so every point in the cell is in the same boundary. The
+ * first lookup in the cell uses the {@link BoundaryCache} and the result is saved in the cell.
+ * Later lookups are one array access. A coarse cell without any edge cells is a single cell. The
+ * points in edge cells always use the {@link BoundaryCache}, so the result is always the same as
+ * {@link BoundaryCache#getBoundaryId(Point)}.
+ *
+ * The grid is built from the boundaries in the {@link BoundaryCache} the first time it is used.
+ * {@link #refreshIfNeeded()} rebuilds the grid if the boundaries were changed or reloaded. One in
+ * {@link #CHECK_INTERVAL} lookups from a saved cell is checked against the {@link BoundaryCache}.
+ * If they differ the error is logged, the {@link BoundaryCache} result is returned and the grid is
+ * rebuilt.
+ */
+public class BoundaryCacheGrid {
+
+  /**
+   * The cells built from the boundaries in the {@link BoundaryCache}. Replaced by a new instance
+   * when the boundaries change.
+   */
+  private static class Cells {
+
+    /**
+     * The boundaries the cells were built from, used to check if the cells are out of date.
+     */
+    private final Map<Identifier, Geometry> boundaryById = new HashMap<>();
+
+    private BoundingBox boundingBox;
+
+    private volatile Identifier[] boundaryIds = new Identifier[0];
+
+    private final Map<Identifier, Integer> boundaryIndexById = new HashMap<>();
+
+    private int coarseColumnCount;
+
+    private int coarseRowCount;
+
+    /**
+     * The cell value for each coarse cell that doesn't have any edge cells.
+     */
+    private final int[] coarseCells;
+
+    /**
+     * The fine cell values for each coarse cell that has an edge cell, null for the other coarse
+     * cells.
+     */
+    private final int[][] fineCells;
+
+    private double minX;
+
+    private double minY;
+
+    private Cells(final BoundaryCache boundaryCache) {
+      final List<Geometry> boundaries = new ArrayList<>();
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      for (final Identifier boundaryId : boundaryCache.getIdentifiers()) {
+        final Geometry geometry = boundaryCache.getBoundary(boundaryId);
+        this.boundaryById.put(boundaryId, geometry);
+        if (geometry != null && !geometry.isEmpty()) {
+          final Geometry boundary = geometry.convertGeometry(GEOMETRY_FACTORY);
+          final BoundingBox boundingBox = boundary.getBoundingBox();
+          minX = Math.min(minX, boundingBox.getMinX());
+          minY = Math.min(minY, boundingBox.getMinY());
+          maxX = Math.max(maxX, boundingBox.getMaxX());
+          maxY = Math.max(maxY, boundingBox.getMaxY());
+          boundaries.add(boundary);
+        }
+      }
+      if (!boundaries.isEmpty()) {
+        this.boundingBox = GEOMETRY_FACTORY.newBoundingBox(minX, minY, maxX, maxY);
+        this.minX = Math.floor((minX - MARGIN) / COARSE_SIZE) * COARSE_SIZE;
+        this.minY = Math.floor((minY - MARGIN) / COARSE_SIZE) * COARSE_SIZE;
+        this.coarseColumnCount = (int)Math.ceil((maxX + MARGIN - this.minX) / COARSE_SIZE) + 1;
+        this.coarseRowCount = (int)Math.ceil((maxY + MARGIN - this.minY) / COARSE_SIZE) + 1;
+      }
+      final int coarseCellCount = this.coarseColumnCount * this.coarseRowCount;
+      this.coarseCells = new int[coarseCellCount];
+      this.fineCells = new int[coarseCellCount][];
+      for (final Geometry boundary : boundaries) {
+        if (boundary instanceof Polygonal) {
+          for (final Polygon polygon : ((Polygonal)boundary).polygons()) {
+            for (final LinearRing ring : polygon.rings()) {
+              addEdgeCells(ring);
+            }
+          }
+        } else {
+          // Not a polygon, use the boundary cache for the whole bounding box
+          final BoundingBox boundingBox = boundary.getBoundingBox();
+          addEdgeCells(boundingBox.getMinX() - MARGIN, boundingBox.getMinY() - MARGIN,
+            boundingBox.getMaxX() + MARGIN, boundingBox.getMaxY() + MARGIN);
+        }
+      }
+    }
+
+    /**
+     * Add the index of the boundary id to the cell value.
+     */
+    synchronized int addBoundaryId(final Identifier boundaryId) {
+      Integer index = this.boundaryIndexById.get(boundaryId);
+      if (index == null) {
+        final Identifier[] boundaryIds = this.boundaryIds;
+        index = boundaryIds.length;
+        final Identifier[] newBoundaryIds = new Identifier[index + 1];
+        System.arraycopy(boundaryIds, 0, newBoundaryIds, 0, index);
+        newBoundaryIds[index] = boundaryId;
+        this.boundaryIndexById.put(boundaryId, index);
+        this.boundaryIds = newBoundaryIds;
+      }
+      return index + 1;
+    }
+
+    /**
+     * Mark the cells within {@link #MARGIN} of the edges of the ring as edge cells.
+     */
+    private void addEdgeCells(final LinearRing ring) {
+      final int vertexCount = ring.getVertexCount();
+      for (int i = 1; i < vertexCount; i++) {
+        final double x1 = ring.getX(i - 1);
+        final double y1 = ring.getY(i - 1);
+        final double x2 = ring.getX(i);
+        final double y2 = ring.getY(i);
+        // Split long segments so each part's bounding box only covers a few cells
+        final double length = Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1));
+        final int partCount = Math.max(1, (int)Math.ceil(length / (FINE_SIZE / 2)));
+        double partX1 = x1;
+        double partY1 = y1;
+        for (int part = 1; part <= partCount; part++) {
+          double partX2;
+          double partY2;
+          if (part == partCount) {
+            partX2 = x2;
+            partY2 = y2;
+          } else {
+            partX2 = x1 + (x2 - x1) * part / partCount;
+            partY2 = y1 + (y2 - y1) * part / partCount;
+          }
+          addEdgeCells(Math.min(partX1, partX2) - MARGIN, Math.min(partY1, partY2) - MARGIN,
+            Math.max(partX1, partX2) + MARGIN, Math.max(partY1, partY2) + MARGIN);
+          partX1 = partX2;
+          partY1 = partY2;
+        }
+      }
+    }
+
+    private void addEdgeCells(final double minX, final double minY, final double maxX,
+      final double maxY) {
+      final int fineColumnCount = this.coarseColumnCount * FINE_PER_COARSE;
+      final int fineRowCount = this.coarseRowCount * FINE_PER_COARSE;
+      final int minColumn = Math.max(0, getFineColumn(minX));
+      final int minRow = Math.max(0, getFineRow(minY));
+      final int maxColumn = Math.min(fineColumnCount - 1, getFineColumn(maxX));
+      final int maxRow = Math.min(fineRowCount - 1, getFineRow(maxY));
+      for (int row = minRow; row <= maxRow; row++) {
+        for (int column = minColumn; column <= maxColumn; column++) {
+          final int coarseIndex = (row / FINE_PER_COARSE) * this.coarseColumnCount
+            + column / FINE_PER_COARSE;
+          int[] cells = this.fineCells[coarseIndex];
+          if (cells == null) {
+            cells = new int[FINE_PER_COARSE * FINE_PER_COARSE];
+            this.fineCells[coarseIndex] = cells;
+          }
+          cells[(row % FINE_PER_COARSE) * FINE_PER_COARSE + column % FINE_PER_COARSE] = EDGE;
+        }
+      }
+    }
+
+    int getFineColumn(final double x) {
+      return (int)Math.floor((x - this.minX) / FINE_SIZE);
+    }
+
+    int getFineRow(final double y) {
+      return (int)Math.floor((y - this.minY) / FINE_SIZE);
+    }
+
+    /**
+     * Check if the boundaries in the {@link BoundaryCache} are the same ones the cells were built
+     * from. Refreshing the {@link BoundaryCache} loads new geometries, so any reloaded, added,
+     * removed or edited boundary makes the cells out of date.
+     */
+    boolean isCurrent(final BoundaryCache boundaryCache) {
+      final Collection<Identifier> boundaryIds = boundaryCache.getIdentifiers();
+      boolean current = boundaryIds.size() == this.boundaryById.size();
+      for (final Iterator<Identifier> iterator = boundaryIds.iterator(); current
+        && iterator.hasNext();) {
+        final Identifier boundaryId = iterator.next();
+        final Geometry geometry = boundaryCache.getBoundary(boundaryId);
+        current = this.boundaryById.containsKey(boundaryId)
+          && this.boundaryById.get(boundaryId) == geometry;
+      }
+      return current;
+    }
+  }
+
+  private static final int CHECK_INTERVAL = 1000;
+
+  private static final int EDGE = -1;
+
+  private static final int UNRESOLVED = 0;
+
+  private static final double FINE_SIZE = 500;
+
+  private static final int FINE_PER_COARSE = 8;
+
+  private static final double COARSE_SIZE = FINE_SIZE * FINE_PER_COARSE;
+
+  private static final double MARGIN = 1;
+
+  private static final GeometryFactory GEOMETRY_FACTORY = Gba.GEOMETRY_FACTORY_2D;
+
+  private static final Map<BoundaryCache, BoundaryCacheGrid> GRID_BY_BOUNDARY_CACHE = new IdentityHashMap<>();
+
+  /**
+   * Get the grid for the boundary cache. The grid is rebuilt if the boundaries changed since it
+   * was last used.
+   *
+   * @param boundaryCache The boundary cache.
+   * @return The grid.
+   */
+  public static BoundaryCacheGrid get(final BoundaryCache boundaryCache) {
+    BoundaryCacheGrid grid;
+    synchronized (GRID_BY_BOUNDARY_CACHE) {
+      grid = GRID_BY_BOUNDARY_CACHE.get(boundaryCache);
+      if (grid == null) {
+        grid = new BoundaryCacheGrid(boundaryCache);
+        GRID_BY_BOUNDARY_CACHE.put(boundaryCache, grid);
+      }
+    }
+    grid.refreshIfNeeded();
+    return grid;
+  }
+
+  private final BoundaryCache boundaryCache;
+
+  private volatile Cells cells;
+
+  private BoundaryCacheGrid(final BoundaryCache boundaryCache) {
+    this.boundaryCache = boundaryCache;
+  }
+
+  /**
+   * Check that the boundary id from the grid is the same as the one from the
+   * {@link BoundaryCache}. If not the grid is out of date so it is discarded and rebuilt on the
+   * next lookup.
+   */
+  private Identifier checkBoundaryId(final Cells cells, final Point point,
+    final Identifier boundaryId) {
+    final Identifier boundaryCacheId = this.boundaryCache.getBoundaryId(point);
+    if (!Objects.equals(boundaryId, boundaryCacheId)) {
+      Logs.error(this, "Grid boundary " + boundaryId + " != BoundaryCache boundary "
+        + boundaryCacheId + " for " + point + ", rebuilding grid");
+      discardCells(cells);
+    }
+    return boundaryCacheId;
+  }
+
+  private synchronized void discardCells(final Cells cells) {
+    if (this.cells == cells) {
+      this.cells = null;
+    }
+  }
+
+  /**
+   * Get the id of the boundary containing the point.
+   *
+   * @param point The point.
+   * @return The boundary id or null if the point isn't in a boundary.
+   */
+  public Identifier getBoundaryId(final Point point) {
+    if (point == null || point.isEmpty() || point.getGeometryFactory()
+      .getHorizontalCoordinateSystemId() != GEOMETRY_FACTORY.getHorizontalCoordinateSystemId()) {
+      return this.boundaryCache.getBoundaryId(point);
+    }
+    final Cells cells = getCells();
+    final int column = cells.getFineColumn(point.getX());
+    final int row = cells.getFineRow(point.getY());
+    final int coarseColumn = column / FINE_PER_COARSE;
+    final int coarseRow = row / FINE_PER_COARSE;
+    if (column < 0 || row < 0 || coarseColumn >= cells.coarseColumnCount
+      || coarseRow >= cells.coarseRowCount) {
+      return this.boundaryCache.getBoundaryId(point);
+    }
+    final int coarseIndex = coarseRow * cells.coarseColumnCount + coarseColumn;
+    int[] cellValues = cells.fineCells[coarseIndex];
+    int cellIndex;
+    if (cellValues == null) {
+      cellValues = cells.coarseCells;
+      cellIndex = coarseIndex;
+    } else {
+      cellIndex = (row % FINE_PER_COARSE) * FINE_PER_COARSE + column % FINE_PER_COARSE;
+    }
+    final int cellValue = cellValues[cellIndex];
+    if (cellValue == EDGE) {
+      return this.boundaryCache.getBoundaryId(point);
+    } else if (cellValue != UNRESOLVED) {
+      final Identifier[] boundaryIds = cells.boundaryIds;
+      if (cellValue <= boundaryIds.length) {
+        final Identifier boundaryId = boundaryIds[cellValue - 1];
+        if (ThreadLocalRandom.current().nextInt(CHECK_INTERVAL) == 0) {
+          return checkBoundaryId(cells, point, boundaryId);
+        } else {
+          return boundaryId;
+        }
+      }
+    }
+    final Identifier boundaryId = this.boundaryCache.getBoundaryId(point);
+    cellValues[cellIndex] = cells.addBoundaryId(boundaryId);
+    return boundaryId;
+  }
+
+  /**
+   * Get the bounding box of all the boundaries. A point outside the bounding box isn't in any
+   * boundary.
+   *
+   * @return The bounding box in BC Albers or null if there are no boundaries.
+   */
+  public BoundingBox getBoundingBox() {
+    return getCells().boundingBox;
+  }
+
+  private Cells getCells() {
+    Cells cells = this.cells;
+    if (cells == null) {
+      synchronized (this) {
+        cells = this.cells;
+        if (cells == null) {
+          cells = new Cells(this.boundaryCache);
+          this.cells = cells;
+        }
+      }
+    }
+    return cells;
+  }
+
+  /**
+   * Refresh the {@link BoundaryCache} if needed and discard the grid if any of the boundaries were
+   * added, removed or changed since the grid was built. The grid is rebuilt on the next lookup.
+   */
+  public void refreshIfNeeded() {
+    this.boundaryCache.refreshIfNeeded();
+    final Cells cells = this.cells;
+    if (cells != null && !cells.isCurrent(this.boundaryCache)) {
+      discardCells(cells);
+    }
+  }
+
+  /**
+   * Set the id and name fields to the id and name of the boundary containing the point.
+   *
+   * @param record The record.
+   * @param point The point.
+   * @param idFieldName The id field.
+   * @param nameFieldName The name field.
+   * @return The boundary id or null if the point isn't in a boundary.
+   */
+  public Identifier setBoundaryIdAndName(final Record record, final Point point,
+    final String idFieldName, final String nameFieldName) {
+    final Identifier boundaryId = getBoundaryId(point);
+    if (boundaryId != null) {
+      final String boundaryName = this.boundaryCache.getValue(boundaryId);
+      record.setValue(idFieldName, boundaryId);
+      record.setValue(nameFieldName, boundaryName);
+    }
+    return boundaryId;
+  }
+
+  @Override
+  public String toString() {
+    return this.boundaryCache.toString();
+  }
+}
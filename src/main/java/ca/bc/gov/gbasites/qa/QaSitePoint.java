@@ -21,13 +21,26 @@ public class QaSitePoint extends AbstractTaskByLocality implements CountNames {
     start(QaSitePoint.class);
   }
 
+  private int streetThreadCount = 4;
+
   public QaSitePoint() {
     super(null, TRANSPORT_LINE_READ, "Transport Line Update", SITE_READ, SITE_VALIDATE,
       "Site Update", "Site Delete", CountNames.ERROR, EXCLUDED);
   }
 
+  /**
+   * @return The number of threads used to validate the street blocks within each locality.
+   */
+  public int getStreetThreadCount() {
+    return this.streetThreadCount;
+  }
+
   @Override
   protected Consumer<Identifier> newLocalityHandler() {
     return new QaSitePointProcesss(this);
   }
+
+  public void setStreetThreadCount(final int streetThreadCount) {
+    this.streetThreadCount = streetThreadCount;
+  }
 }
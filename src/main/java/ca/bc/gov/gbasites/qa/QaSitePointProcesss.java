@@ -2,33 +2,36 @@ package ca.bc.gov.gbasites.qa;
 
 import java.util.List;
 
-import ca.bc.gov.gba.core.model.Gba;
 import ca.bc.gov.gba.core.model.qa.rule.RecordRuleThreadProperties;
-import ca.bc.gov.gba.itn.model.GbaItnTables;
 import ca.bc.gov.gba.process.qa.AbstractTaskByLocalityProcess;
+import ca.bc.gov.gbasites.model.rule.SitePointCloseIndex;
 import ca.bc.gov.gbasites.model.rule.SitePointRule;
 import ca.bc.gov.gbasites.model.type.SiteTables;
 
-import com.revolsys.geometry.index.RecordSpatialIndex;
 import com.revolsys.record.Record;
 import com.revolsys.transaction.Transaction;
 
 public class QaSitePointProcesss extends AbstractTaskByLocalityProcess {
 
+  private final int streetThreadCount;
+
   public QaSitePointProcesss(final QaSitePoint qaDialog) {
     super(qaDialog);
+    this.streetThreadCount = qaDialog.getStreetThreadCount();
     setRules(SiteTables.SITE_POINT);
   }
 
   @Override
   public boolean processLocality() {
     boolean valid = true;
-    // Make sure the transport line index is initialized
-    SitePointRule.getTransportLines();
+    // Make sure the transport lines and index are loaded once for the locality
+    final List<Record> allTransportLines = SitePointRule.getTransportLines();
     final List<Record> sites = SitePointRule.getSites();
-    final RecordSpatialIndex<Record> index = RecordSpatialIndex.quadTree(Gba.GEOMETRY_FACTORY_2D)
-      .addRecords(sites);
-    RecordRuleThreadProperties.setSpatialIndex(SiteTables.SITE_POINT, index);
+    final SitePointCloseIndex closeIndex = new SitePointCloseIndex(sites,
+      SitePointRule.SITE_CLOSE_DISTANCE);
+    RecordRuleThreadProperties.setProperty(SitePointRule.SITE_CLOSE_INDEX, closeIndex);
+    RecordRuleThreadProperties.setProperty(SitePointRule.STREET_THREAD_COUNT,
+      this.streetThreadCount);
 
     valid &= validateRecords(sites);
 
@@ -38,8 +41,6 @@ public class QaSitePointProcesss extends AbstractTaskByLocalityProcess {
       Transaction transaction = gbaRecordStore.newTransaction()) {
       // TODO update records with exclusions
       saveChanges("Site", sites);
-      final List<Record> allTransportLines = RecordRuleThreadProperties.getRecords(null,
-        this.localityId, GbaItnTables.TRANSPORT_LINE, false);
       saveChanges("Transport Line", allTransportLines);
     }
     return valid;
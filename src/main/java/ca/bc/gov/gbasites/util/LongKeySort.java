@@ -0,0 +1,50 @@
+package ca.bc.gov.gbasites.util;
+
+/**
+ * Sort of the positions in an array of long keys, used to sort the parallel primitive arrays in
+ * the compact lookup tables and indexes without creating an object for each entry.
+ */
+public class LongKeySort {
+
+  /**
+   * Stable merge sort of the positions by key, positions with the same key stay in the order they
+   * are in the array.
+   *
+   * @param keys The keys.
+   * @param size The number of keys to sort from the start of the array.
+   * @return The positions in the keys array in key order.
+   */
+  public static int[] sortPositions(final long[] keys, final int size) {
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    int[] buffer = new int[size];
+    for (int width = 1; width < size; width *= 2) {
+      for (int start = 0; start < size; start += 2 * width) {
+        final int middle = Math.min(start + width, size);
+        final int end = Math.min(start + 2 * width, size);
+        int left = start;
+        int right = middle;
+        int target = start;
+        while (left < middle && right < end) {
+          if (keys[order[right]] < keys[order[left]]) {
+            buffer[target++] = order[right++];
+          } else {
+            buffer[target++] = order[left++];
+          }
+        }
+        while (left < middle) {
+          buffer[target++] = order[left++];
+        }
+        while (right < end) {
+          buffer[target++] = order[right++];
+        }
+      }
+      final int[] swap = order;
+      order = buffer;
+      buffer = swap;
+    }
+    return order;
+  }
+}